@@ -0,0 +1,209 @@
+package io.github.coolcrabs.brachyura.bootstrap;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Forwards a task invocation to a brachyura daemon for the project, starting one if needed
+ * Protocol must match BrachyuraDaemon
+ */
+@SuppressWarnings("all")
+class DaemonClient {
+    static final int PROTOCOL = 1;
+
+    static final int OP_RUN = 0;
+    static final int OP_STOP = 1;
+
+    static final int FRAME_OUT = 0;
+    static final int FRAME_ERR = 1;
+    static final int FRAME_EXIT = 2;
+    static final int FRAME_STALE = 3;
+
+    static final long START_TIMEOUT = 60000;
+
+    final Path projectPath;
+    final Path info;
+
+    DaemonClient(Path projectPath) {
+        this.projectPath = projectPath;
+        this.info = projectPath.resolve(".brachyura").resolve("daemon");
+    }
+
+    /**
+     * @return exit code of the task
+     */
+    int run(List<Path> classpath, String[] args) throws Exception {
+        for (int attempt = 0; attempt < 2; attempt++) {
+            Socket socket = connect();
+            if (socket == null) socket = start();
+            try {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                writeHeader(out, OP_RUN);
+                out.writeInt(classpath.size());
+                for (Path p : classpath) {
+                    out.writeUTF(p.toString());
+                }
+                out.writeInt(args.length);
+                for (String arg : args) {
+                    out.writeUTF(arg);
+                }
+                out.writeUTF(System.getProperty("java.home"));
+                List<String> jvmArgs = jvmArgs();
+                out.writeInt(jvmArgs.size());
+                for (String arg : jvmArgs) {
+                    out.writeUTF(arg);
+                }
+                ArrayList<String> properties = new ArrayList<>();
+                for (String name : System.getProperties().stringPropertyNames()) {
+                    if (name.startsWith("brachyura.") && !"brachyura.daemon".equals(name)) properties.add(name);
+                }
+                out.writeInt(properties.size());
+                for (String name : properties) {
+                    out.writeUTF(name);
+                    out.writeUTF(System.getProperty(name));
+                }
+                String offline = System.getenv("BRACHYURA_OFFLINE");
+                out.writeBoolean(offline != null);
+                if (offline != null) out.writeUTF(offline);
+                out.flush();
+                Integer exitcode = readFrames(in);
+                if (exitcode != null) return exitcode;
+                // Daemon is from another brachyura version or jvm and is shutting down
+                Files.deleteIfExists(info);
+            } finally {
+                socket.close();
+            }
+        }
+        throw new RuntimeException("Unable to run task in brachyura daemon");
+    }
+
+    void stop() throws Exception {
+        Socket socket = connect();
+        if (socket == null) {
+            System.out.println("No brachyura daemon running");
+            return;
+        }
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            writeHeader(out, OP_STOP);
+            out.flush();
+            readFrames(new DataInputStream(new BufferedInputStream(socket.getInputStream())));
+        } finally {
+            socket.close();
+        }
+        System.out.println("Stopped brachyura daemon");
+    }
+
+    /**
+     * @return exit code or null if the daemon is stale
+     */
+    static Integer readFrames(DataInputStream in) throws IOException {
+        byte[] buf = new byte[8192];
+        while (true) {
+            int type;
+            try {
+                type = in.readByte();
+            } catch (EOFException e) {
+                throw new IOException("Brachyura daemon disconnected", e);
+            }
+            if (type == FRAME_EXIT) return in.readInt();
+            int len = in.readInt();
+            if (type == FRAME_STALE) return null;
+            PrintStream target = type == FRAME_ERR ? System.err : System.out;
+            while (len > 0) {
+                int read = in.read(buf, 0, Math.min(buf.length, len));
+                if (read == -1) throw new EOFException();
+                target.write(buf, 0, read);
+                len -= read;
+            }
+            target.flush();
+        }
+    }
+
+    void writeHeader(DataOutputStream out, int op) throws IOException {
+        out.writeInt(PROTOCOL);
+        out.writeUTF(readInfo()[1]);
+        out.writeInt(op);
+    }
+
+    String[] readInfo() throws IOException {
+        List<String> lines = Files.readAllLines(info, StandardCharsets.UTF_8);
+        if (lines.size() < 2) throw new IOException("Malformed " + info);
+        return new String[] {lines.get(0).trim(), lines.get(1).trim()};
+    }
+
+    Socket connect() {
+        if (!Files.isRegularFile(info)) return null;
+        try {
+            return new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(readInfo()[0]));
+        } catch (Exception e) {
+            // Daemon died without cleaning up
+            return null;
+        }
+    }
+
+    /**
+     * JVM options the daemon is started with, it's stale once they differ from the client's
+     * Brachyura properties are sent with each request instead and a debugger would fight the client over its port
+     * Must match BrachyuraDaemon
+     */
+    static List<String> jvmArgs() {
+        ArrayList<String> r = new ArrayList<>();
+        for (String arg : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (arg.startsWith("-Dbrachyura.") || arg.startsWith("-agentlib:jdwp") || arg.startsWith("-Xrunjdwp") || "-Xdebug".equals(arg)) continue;
+            r.add(arg);
+        }
+        return r;
+    }
+
+    Socket start() throws Exception {
+        Files.deleteIfExists(info);
+        Files.createDirectories(info.getParent());
+        Path log = info.resolveSibling("daemon.log");
+        System.out.println("Starting brachyura daemon, log in " + log);
+        Path bootstrapJar = Paths.get(Main.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        ArrayList<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmArgs());
+        command.add("-Dbrachyura.daemon=server");
+        command.add("-cp");
+        command.add(bootstrapJar.toString());
+        command.add(Main.class.getName());
+        ProcessBuilder builder = new ProcessBuilder(command);
+        Map<String, String> env = builder.environment();
+        // Already part of the input arguments, the daemon would get them twice
+        env.remove("JAVA_TOOL_OPTIONS");
+        env.remove("JDK_JAVA_OPTIONS");
+        env.remove("_JAVA_OPTIONS");
+        Process process = builder
+            .directory(projectPath.toFile())
+            .redirectErrorStream(true)
+            .redirectOutput(ProcessBuilder.Redirect.appendTo(log.toFile()))
+            .start();
+        process.getOutputStream().close();
+        long deadline = System.currentTimeMillis() + START_TIMEOUT;
+        while (System.currentTimeMillis() < deadline) {
+            Socket socket = connect();
+            if (socket != null) return socket;
+            if (!process.isAlive()) throw new RuntimeException("Brachyura daemon failed to start, see " + log);
+            Thread.sleep(50);
+        }
+        throw new RuntimeException("Timed out waiting for brachyura daemon, see " + log);
+    }
+}
@@ -62,9 +62,27 @@ public class Main {
         for (int i = 0; i < classpath.size(); i++) {
             urls[i] = classpath.get(i).toUri().toURL();
         }
+        String daemon = System.getProperty("brachyura.daemon", System.getenv("BRACHYURA_DAEMON"));
+        if ("stop".equals(daemon)) {
+            new DaemonClient(projectPath).stop();
+            return;
+        }
+        if ("true".equals(daemon)) {
+            System.exit(new DaemonClient(projectPath).run(classpath, args));
+        }
         // https://kostenko.org/blog/2019/06/runtime-class-loading.html
         URLClassLoader classLoader = new URLClassLoader(urls, ClassLoader.getSystemClassLoader());
         Thread.currentThread().setContextClassLoader(classLoader);
+        if ("server".equals(daemon)) {
+            Class server = Class.forName("io.github.coolcrabs.brachyura.project.BrachyuraDaemon", true, classLoader);
+            MethodHandles.publicLookup().findStatic(
+                server,
+                "main",
+                MethodType.methodType(void.class, Path.class, List.class)
+            )
+            .invokeExact(projectPath, classpath);
+            return;
+        }
         Class entry = Class.forName("io.github.coolcrabs.brachyura.project.BrachyuraEntry", true, classLoader);
         MethodHandles.publicLookup().findStatic(
             entry,
@@ -0,0 +1,375 @@
+package io.github.coolcrabs.brachyura.compiler.java;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.Elements;
+import javax.tools.JavaCompiler.CompilationTask;
+import javax.tools.JavaFileObject;
+
+import org.jetbrains.annotations.Nullable;
+import org.tinylog.Logger;
+
+import com.google.gson.Gson;
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.MemberSelectTree;
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.TaskEvent;
+import com.sun.source.util.TaskListener;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.TreePathScanner;
+import com.sun.source.util.Trees;
+
+import io.github.coolcrabs.brachyura.util.MessageDigestUtil;
+import io.github.coolcrabs.brachyura.util.PathUtil;
+import io.github.coolcrabs.brachyura.util.StreamUtil;
+import io.github.coolcrabs.brachyura.util.Util;
+
+/**
+ * Remembers which classes each source file produced and which types it referenced so only changed files and everything
+ * that (transitively) depends on them get recompiled
+ * Annotation processor outputs can't be attributed to a source file, so any non class output forces full rebuilds unless
+ * it was registered with {@link JavaCompilation#mergeOutput}
+ */
+class IncrementalCompilation {
+    static final int VERSION = 2;
+    // On java 8 the tree api is in tools.jar which is usually loaded in a seperate classloader by ToolProvider
+    static final boolean TREE_API = treeApi();
+
+    final Path dir;
+    final Path stateFile;
+    final Path classesDir;
+
+    IncrementalCompilation(Path dir) {
+        this.dir = dir;
+        this.stateFile = dir.resolve("state.json");
+        this.classesDir = dir.resolve("classes");
+    }
+
+    static class State {
+        int version;
+        String key;
+        boolean otherOutputs;
+        HashMap<String, FileState> files = new HashMap<>();
+    }
+
+    static class FileState {
+        String hash;
+        ArrayList<String> outputs = new ArrayList<>();
+        HashSet<String> references = new HashSet<>();
+    }
+
+    @Nullable JavaCompilationResult compile(JavaCompilation c) {
+        try {
+            String key = key(c);
+            HashMap<String, Path> sources = new HashMap<>();
+            HashMap<String, String> hashes = new HashMap<>();
+            for (Path p : c.sourceFiles) {
+                String s = p.toAbsolutePath().normalize().toString();
+                sources.put(s, p);
+                hashes.put(s, hash(p));
+            }
+            State old = load();
+            boolean full = old == null || old.version != VERSION || !key.equals(old.key) || old.otherOutputs;
+            Set<String> dirty = new HashSet<>();
+            Set<String> changedTypes = new HashSet<>();
+            State state = new State();
+            state.version = VERSION;
+            state.key = key;
+            if (full) {
+                dirty.addAll(sources.keySet());
+                if (Files.exists(classesDir)) PathUtil.deleteDirectory(classesDir);
+            } else {
+                for (Map.Entry<String, FileState> e : old.files.entrySet()) {
+                    if (!sources.containsKey(e.getKey())) {
+                        addTypes(changedTypes, e.getValue()); // Removed
+                    } else if (!e.getValue().hash.equals(hashes.get(e.getKey()))) {
+                        dirty.add(e.getKey());
+                        addTypes(changedTypes, e.getValue());
+                    }
+                }
+                for (String s : sources.keySet()) {
+                    if (!old.files.containsKey(s)) dirty.add(s);
+                }
+                // New files can shadow types (for example a class moved to another file)
+                for (String s : dirty) {
+                    if (!old.files.containsKey(s)) changedTypes.add(typeName(sources.get(s)));
+                }
+                boolean changed = true;
+                while (changed) {
+                    changed = false;
+                    for (Map.Entry<String, FileState> e : old.files.entrySet()) {
+                        if (dirty.contains(e.getKey()) || !sources.containsKey(e.getKey())) continue;
+                        for (String ref : e.getValue().references) {
+                            if (changedTypes.contains(ref) || changedTypes.contains(outer(ref))) {
+                                dirty.add(e.getKey());
+                                addTypes(changedTypes, e.getValue());
+                                changed = true;
+                                break;
+                            }
+                        }
+                    }
+                }
+                for (Map.Entry<String, FileState> e : old.files.entrySet()) {
+                    if (dirty.contains(e.getKey()) || !sources.containsKey(e.getKey())) {
+                        for (String out : e.getValue().outputs) {
+                            Files.deleteIfExists(classesDir.resolve(out));
+                        }
+                    } else {
+                        state.files.put(e.getKey(), e.getValue());
+                    }
+                }
+            }
+            // A failed compile leaves no state behind so the next one is a full rebuild
+            Files.deleteIfExists(stateFile);
+            Logger.info("Compiling {} of {} source files{}", dirty.size(), sources.size(), full ? "" : " (incremental)");
+            if (!dirty.isEmpty()) {
+                ArrayList<Path> dirtyFiles = new ArrayList<>(dirty.size());
+                for (String s : dirty) dirtyFiles.add(sources.get(s));
+                ArrayList<Path> classpath = new ArrayList<>(c.classpath);
+                if (!full && Files.isDirectory(classesDir)) classpath.add(0, classesDir);
+                HashMap<String, Set<String>> references = new HashMap<>();
+                boolean[] tracked = {false};
+                BrachyuraJavaFileManager fileManager = c.compile(dirtyFiles, classpath, task -> {
+                    if (TREE_API) tracked[0] = ReferenceCollector.attach(task, references);
+                });
+                if (fileManager == null) return null;
+                try {
+                    for (String s : dirty) state.files.put(s, new FileState());
+                    HashMap<String, BrachyuraJavaFileManager.OutputFile> merged = new HashMap<>();
+                    for (Map.Entry<URI, BrachyuraJavaFileManager.OutputFile> e : fileManager.output.entrySet()) {
+                        String out = e.getKey().getPath().substring(1);
+                        BrachyuraJavaFileManager.OutputFile f = e.getValue();
+                        if (f.getKind() != JavaFileObject.Kind.CLASS && c.mergedOutputs.containsKey(out)) {
+                            merged.put(out, f);
+                            continue;
+                        }
+                        Path target = classesDir.resolve(out);
+                        Files.createDirectories(target.getParent());
+                        try (InputStream in = f.openInputStream()) {
+                            Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+                        }
+                        String source = sourceKey(f.sibling);
+                        FileState fs = source == null ? null : state.files.get(source);
+                        if (f.getKind() == JavaFileObject.Kind.CLASS && fs != null) {
+                            fs.outputs.add(out);
+                        } else {
+                            state.otherOutputs = true;
+                        }
+                    }
+                    if (!merged.isEmpty()) {
+                        for (String s : dirty) addTypes(changedTypes, state.files.get(s));
+                        for (Map.Entry<String, BrachyuraJavaFileManager.OutputFile> e : merged.entrySet()) {
+                            Path target = classesDir.resolve(e.getKey());
+                            Files.createDirectories(target.getParent());
+                            byte[] current;
+                            try (InputStream in = e.getValue().openInputStream()) {
+                                current = StreamUtil.readFullyAsBytes(in);
+                            }
+                            if (!full && Files.isRegularFile(target)) {
+                                current = c.mergedOutputs.get(e.getKey()).merge(Files.readAllBytes(target), current, changedTypes);
+                            }
+                            Files.write(target, current);
+                        }
+                    }
+                    for (String s : dirty) {
+                        FileState fs = state.files.get(s);
+                        fs.hash = hashes.get(s);
+                        Set<String> r = references.get(s);
+                        if (r != null) fs.references.addAll(r);
+                    }
+                    // Without the javac tree api dependencies are unknown
+                    if (!tracked[0]) state.otherOutputs = true;
+                } finally {
+                    fileManager.close();
+                }
+            }
+            save(state);
+            HashMap<String, Path> outputSources = new HashMap<>();
+            for (Map.Entry<String, FileState> e : state.files.entrySet()) {
+                for (String out : e.getValue().outputs) {
+                    outputSources.put(out, sources.get(e.getKey()));
+                }
+            }
+            return new JavaCompilationResult(classesDir, outputSources);
+        } catch (Exception e) {
+            throw Util.sneak(e);
+        }
+    }
+
+    static void addTypes(Set<String> types, FileState fs) {
+        for (String out : fs.outputs) {
+            types.add(out.substring(0, out.length() - ".class".length()).replace('/', '.'));
+        }
+    }
+
+    // Best guess of the top level type a new file declares, from its package declaration and file name
+    static String typeName(Path source) {
+        String name = source.getFileName().toString();
+        name = name.substring(0, name.length() - ".java".length());
+        try (BufferedReader r = PathUtil.newBufferedReader(source)) {
+            String line;
+            while ((line = r.readLine()) != null) {
+                line = line.trim();
+                if (line.startsWith("package ")) {
+                    return line.substring("package ".length(), line.indexOf(';')).trim() + "." + name;
+                }
+            }
+        } catch (Exception e) {
+            // Default package
+        }
+        return name;
+    }
+
+    static String outer(String binaryName) {
+        int i = binaryName.indexOf('$', binaryName.lastIndexOf('.') + 1);
+        return i == -1 ? binaryName : binaryName.substring(0, i);
+    }
+
+    static @Nullable String sourceKey(@Nullable Object fileObject) {
+        if (!(fileObject instanceof JavaFileObject)) return null;
+        URI uri = ((JavaFileObject) fileObject).toUri();
+        if (!"file".equals(uri.getScheme())) return null;
+        return Paths.get(uri).toAbsolutePath().normalize().toString();
+    }
+
+    String key(JavaCompilation c) {
+        MessageDigest md = MessageDigestUtil.messageDigest(MessageDigestUtil.SHA256);
+        MessageDigestUtil.update(md, VERSION);
+        MessageDigestUtil.update(md, System.getProperty("java.version"));
+        for (String o : c.options) {
+            MessageDigestUtil.update(md, o);
+            MessageDigestUtil.update(md, 0);
+        }
+        ArrayList<String> merged = new ArrayList<>(c.mergedOutputs.keySet());
+        Collections.sort(merged);
+        for (String o : merged) {
+            MessageDigestUtil.update(md, o);
+            MessageDigestUtil.update(md, 0);
+        }
+        update(md, c.classpath);
+        update(md, c.sourcePath);
+        return MessageDigestUtil.toHexHash(md.digest());
+    }
+
+    static void update(MessageDigest md, List<Path> paths) {
+        MessageDigestUtil.update(md, paths.size());
+        for (Path p : paths) {
+            MessageDigestUtil.update(md, p.toAbsolutePath().toString());
+            try {
+                if (Files.isRegularFile(p)) {
+                    MessageDigestUtil.update(md, Files.size(p));
+                    MessageDigestUtil.update(md, Files.getLastModifiedTime(p).toMillis());
+                }
+            } catch (Exception e) {
+                throw Util.sneak(e);
+            }
+        }
+    }
+
+    static String hash(Path file) {
+        MessageDigest md = MessageDigestUtil.messageDigest(MessageDigestUtil.SHA256);
+        try {
+            md.update(Files.readAllBytes(file));
+        } catch (Exception e) {
+            throw Util.sneak(e);
+        }
+        return MessageDigestUtil.toHexHash(md.digest());
+    }
+
+    @Nullable State load() {
+        if (!Files.isRegularFile(stateFile)) return null;
+        try (BufferedReader r = PathUtil.newBufferedReader(stateFile)) {
+            return new Gson().fromJson(r, State.class);
+        } catch (Exception e) {
+            Logger.warn("Unable to read incremental compilation state {}", stateFile);
+            Logger.warn(e);
+            return null;
+        }
+    }
+
+    void save(State state) {
+        try (BufferedWriter w = PathUtil.newBufferedWriter(stateFile)) {
+            new Gson().toJson(state, w);
+        } catch (Exception e) {
+            throw Util.sneak(e);
+        }
+    }
+
+    static boolean treeApi() {
+        try {
+            Class.forName("com.sun.source.util.JavacTask", false, IncrementalCompilation.class.getClassLoader());
+            return true;
+        } catch (Throwable t) {
+            return false;
+        }
+    }
+
+    // Only loaded if TREE_API
+    static class ReferenceCollector implements TaskListener {
+        final Trees trees;
+        final Elements elements;
+        final HashMap<String, Set<String>> references;
+
+        static boolean attach(CompilationTask task, HashMap<String, Set<String>> references) {
+            if (!(task instanceof JavacTask)) return false;
+            ((JavacTask) task).addTaskListener(new ReferenceCollector((JavacTask) task, references));
+            return true;
+        }
+
+        ReferenceCollector(JavacTask task, HashMap<String, Set<String>> references) {
+            this.trees = Trees.instance(task);
+            this.elements = task.getElements();
+            this.references = references;
+        }
+
+        @Override
+        public void started(TaskEvent e) {
+            // noop
+        }
+
+        @Override
+        public void finished(TaskEvent e) {
+            if (e.getKind() != TaskEvent.Kind.ANALYZE || e.getTypeElement() == null) return;
+            String source = sourceKey(e.getSourceFile());
+            if (source == null) return;
+            Set<String> r = references.computeIfAbsent(source, k -> new HashSet<>());
+            TreePath path = trees.getPath(e.getTypeElement());
+            if (path == null) return;
+            new TreePathScanner<Void, Void>() {
+                @Override
+                public Void visitIdentifier(IdentifierTree node, Void p) {
+                    add(trees.getElement(getCurrentPath()));
+                    return super.visitIdentifier(node, p);
+                }
+
+                @Override
+                public Void visitMemberSelect(MemberSelectTree node, Void p) {
+                    add(trees.getElement(getCurrentPath()));
+                    return super.visitMemberSelect(node, p);
+                }
+
+                void add(Element el) {
+                    while (el != null && !(el instanceof TypeElement)) el = el.getEnclosingElement();
+                    if (el != null) r.add(elements.getBinaryName((TypeElement) el).toString());
+                }
+            }.scan(path, null);
+        }
+    }
+}
@@ -9,7 +9,10 @@ import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
 
 import javax.tools.JavaCompiler;
 import javax.tools.StandardLocation;
@@ -22,11 +25,13 @@ import org.tinylog.Logger;
 import io.github.coolcrabs.brachyura.util.Util;
 
 public class JavaCompilation {
-    private ArrayList<String> options = new ArrayList<>();
-    private ArrayList<Path> sourceFiles = new ArrayList<>();
-    private ArrayList<Path> sourcePath = new ArrayList<>();
-    private ArrayList<Path> classpath = new ArrayList<>();
+    ArrayList<String> options = new ArrayList<>();
+    ArrayList<Path> sourceFiles = new ArrayList<>();
+    ArrayList<Path> sourcePath = new ArrayList<>();
+    ArrayList<Path> classpath = new ArrayList<>();
     private JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    private @Nullable Path incrementalDir;
+    HashMap<String, OutputMerger> mergedOutputs = new HashMap<>();
 
     public JavaCompilation addOption(String... options) {
         Collections.addAll(this.options, options);
@@ -96,7 +101,32 @@ public class JavaCompilation {
         return this;
     }
 
-    ArrayList<File> bruh(ArrayList<Path> p) {
+    /**
+     * Only recompiles changed source files and their dependents, keeping previous outputs and dependency info in dir
+     */
+    public JavaCompilation incremental(Path dir) {
+        this.incrementalDir = dir;
+        return this;
+    }
+
+    /**
+     * Lets incremental compilation keep going when an annotation processor writes path instead of falling back to full rebuilds
+     * The processor only sees the recompiled files, so merger combines its output with the previous one
+     */
+    public JavaCompilation mergeOutput(String path, OutputMerger merger) {
+        mergedOutputs.put(path, merger);
+        return this;
+    }
+
+    @FunctionalInterface
+    public interface OutputMerger {
+        /**
+         * @param recompiled binary names of the classes that were recompiled or removed, their entries in previous are outdated
+         */
+        byte[] merge(byte[] previous, byte[] current, Set<String> recompiled) throws IOException;
+    }
+
+    ArrayList<File> bruh(List<Path> p) {
         ArrayList<File> r = new ArrayList<>(p.size());
         for (int i = 0; i < p.size(); i++) {
             r.add(p.get(i).toFile());
@@ -105,20 +135,35 @@ public class JavaCompilation {
     }
 
     public @Nullable JavaCompilationResult compile() {
+        if (incrementalDir != null) {
+            return new IncrementalCompilation(incrementalDir).compile(this);
+        }
+        try (BrachyuraJavaFileManager fileManager = compile(sourceFiles, classpath, t -> { })) {
+            if (fileManager != null) {
+                return new JavaCompilationResult(fileManager);
+            }
+            return null;
+        } catch (IOException e) {
+            throw Util.sneak(e);
+        }
+    }
+
+    @Nullable BrachyuraJavaFileManager compile(List<Path> files, List<Path> classpath, Consumer<CompilationTask> taskConsumer) {
         try {
-            try (BrachyuraJavaFileManager fileManager = new BrachyuraJavaFileManager()) {
-                boolean success;
-                fileManager.setLocation(StandardLocation.CLASS_PATH, bruh(classpath));
-                fileManager.setLocation(StandardLocation.SOURCE_PATH, bruh(sourcePath));
-                try (LoggerWriter w = new LoggerWriter()) {
-                    CompilationTask compilationTask = compiler.getTask(w, fileManager, BrachyuraDiagnosticListener.INSTANCE, options, null, fileManager.getJavaFileObjectsFromFiles(bruh(sourceFiles)));
-                    success = compilationTask.call();
-                }
-                if (success) {
-                    return new JavaCompilationResult(fileManager);
-                }
-                return null;
+            BrachyuraJavaFileManager fileManager = new BrachyuraJavaFileManager();
+            boolean success;
+            fileManager.setLocation(StandardLocation.CLASS_PATH, bruh(classpath));
+            fileManager.setLocation(StandardLocation.SOURCE_PATH, bruh(sourcePath));
+            try (LoggerWriter w = new LoggerWriter()) {
+                CompilationTask compilationTask = compiler.getTask(w, fileManager, BrachyuraDiagnosticListener.INSTANCE, options, null, fileManager.getJavaFileObjectsFromFiles(bruh(files)));
+                taskConsumer.accept(compilationTask);
+                success = compilationTask.call();
+            }
+            if (success) {
+                return fileManager;
             }
+            fileManager.close();
+            return null;
         } catch (IOException e) {
             throw Util.sneak(e);
         }
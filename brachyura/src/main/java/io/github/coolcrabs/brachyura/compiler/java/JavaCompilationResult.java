@@ -1,6 +1,7 @@
 package io.github.coolcrabs.brachyura.compiler.java;
 
 import java.net.URI;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.HashMap;
@@ -13,17 +14,33 @@ import org.tinylog.Logger;
 import io.github.coolcrabs.brachyura.processing.ProcessingId;
 import io.github.coolcrabs.brachyura.processing.ProcessingSink;
 import io.github.coolcrabs.brachyura.processing.ProcessingSource;
+import io.github.coolcrabs.brachyura.processing.sources.DirectoryProcessingSource;
 
 public class JavaCompilationResult extends ProcessingSource {
     final BrachyuraJavaFileManager fileManager;
-    final HashMap<ProcessingId, BrachyuraJavaFileManager.OutputFile> files = new HashMap<>(); 
+    final HashMap<ProcessingId, BrachyuraJavaFileManager.OutputFile> files = new HashMap<>();
+    // Incremental compilation outputs on disk
+    final Path outputDir;
+    final Map<String, Path> outputSources;
 
     JavaCompilationResult(BrachyuraJavaFileManager s) {
         this.fileManager = s;
+        this.outputDir = null;
+        this.outputSources = null;
+    }
+
+    JavaCompilationResult(Path outputDir, Map<String, Path> outputSources) {
+        this.fileManager = null;
+        this.outputDir = outputDir;
+        this.outputSources = outputSources;
     }
 
     @Override
     public void getInputs(ProcessingSink sink) {
+        if (outputDir != null) {
+            if (Files.isDirectory(outputDir)) new DirectoryProcessingSource(outputDir).getInputs((in, id) -> sink.sink(in, new ProcessingId(id.path, this)));
+            return;
+        }
         for (Map.Entry<URI, BrachyuraJavaFileManager.OutputFile> entry : fileManager.output.entrySet()) {
             ProcessingId id = new ProcessingId(entry.getKey().getPath().substring(1), this);
             files.put(id, entry.getValue());
@@ -32,6 +49,9 @@ public class JavaCompilationResult extends ProcessingSource {
     }
 
     public Path getSourceFile(ProcessingId id) {
+        if (outputDir != null) {
+            return outputSources.get(id.path);
+        }
         FileObject fileObject = files.get(id).sibling;
         if (fileObject == null) return null;
         URI uri = fileObject.toUri();
@@ -41,5 +61,5 @@ public class JavaCompilationResult extends ProcessingSource {
         }
         return Paths.get(uri);
     }
-    
+
 }
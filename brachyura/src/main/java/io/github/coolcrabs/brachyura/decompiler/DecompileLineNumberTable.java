@@ -1,6 +1,6 @@
 package io.github.coolcrabs.brachyura.decompiler;
 
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -13,7 +13,7 @@ public class DecompileLineNumberTable {
     public static class ClassLineMap {
         final boolean isStupid;
         public final Map<MethodId, MethodLineMap> methods;
-        final Map<Integer, Integer> stupid;
+        final LineRemap stupid;
 
         public ClassLineMap(Map<MethodId, MethodLineMap> methods) {
             this.isStupid = false;
@@ -24,17 +24,14 @@ public class DecompileLineNumberTable {
         public ClassLineMap(int[] stupid) {
             this.isStupid = true;
             this.methods = null;
-            this.stupid = new HashMap<>();
-            for (int i = 0; i < stupid.length; i += 2) {
-                this.stupid.put(stupid[i], stupid[i + 1]);
-            }
+            this.stupid = new LineRemap(stupid);
         }
     }
     
     public static class MethodLineMap {
         final boolean isReplace;
         final List<LineNumberTableEntry> replace;
-        final Map<Integer, Integer> remap;
+        final LineRemap remap;
         
         public MethodLineMap(List<LineNumberTableEntry> replace) {
             this.isReplace = true;
@@ -43,12 +40,87 @@ public class DecompileLineNumberTable {
         }
         
         public MethodLineMap(Map<Integer, Integer> remap) {
+            this(LineRemap.pairs(remap));
+        }
+
+        /**
+         * @param remap pairs of original line, decompiled line
+         */
+        public MethodLineMap(int[] remap) {
             this.isReplace = false;
-            this.remap = remap;
+            this.remap = new LineRemap(remap);
             this.replace = null;
         }
     }
 
+    /**
+     * Sorted int arrays so millions of lines don't each need boxed map entries
+     */
+    public static final class LineRemap {
+        static final int[] EMPTY = new int[0];
+
+        final int[] from;
+        final int[] to;
+
+        /**
+         * @param pairs from, to pairs, the last pair wins if a line appears twice
+         */
+        public LineRemap(int[] pairs) {
+            int count = pairs.length / 2;
+            if (count == 0) {
+                from = to = EMPTY;
+                return;
+            }
+            // Sort by line then pair index so duplicate lines end up next to each other in order
+            long[] order = new long[count];
+            for (int i = 0; i < count; i++) {
+                order[i] = ((long) pairs[i * 2] << 32) | i;
+            }
+            Arrays.sort(order);
+            int[] from0 = new int[count];
+            int[] to0 = new int[count];
+            int size = 0;
+            for (int i = 0; i < count; i++) {
+                int line = (int) (order[i] >> 32);
+                int value = pairs[(int) order[i] * 2 + 1];
+                if (size > 0 && from0[size - 1] == line) {
+                    to0[size - 1] = value;
+                } else {
+                    from0[size] = line;
+                    to0[size] = value;
+                    size++;
+                }
+            }
+            from = size == count ? from0 : Arrays.copyOf(from0, size);
+            to = size == count ? to0 : Arrays.copyOf(to0, size);
+        }
+
+        /**
+         * @return the index of the line or a negative number if it isn't remapped
+         */
+        public int indexOf(int line) {
+            return Arrays.binarySearch(from, line);
+        }
+
+        public int get(int index) {
+            return to[index];
+        }
+
+        public int size() {
+            return from.length;
+        }
+
+        static int[] pairs(Map<Integer, Integer> map) {
+            int[] r = new int[map.size() * 2];
+            int i = 0;
+            for (Map.Entry<Integer, Integer> e : map.entrySet()) {
+                r[i++] = e.getKey();
+                r[i++] = e.getValue();
+            }
+            return r;
+        }
+    }
+
     public static class MethodId {
         public final String name;
         public final String desc;
@@ -1,23 +1,28 @@
 package io.github.coolcrabs.brachyura.decompiler;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
-import java.nio.file.FileSystem;
-import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.SimpleFileVisitor;
-import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
 import java.util.Arrays;
-import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.jetbrains.annotations.Nullable;
 
 import io.github.coolcrabs.brachyura.decompiler.DecompileLineNumberTable.ClassLineMap;
+import io.github.coolcrabs.brachyura.decompiler.DecompileLineNumberTable.LineRemap;
 import io.github.coolcrabs.brachyura.decompiler.DecompileLineNumberTable.MethodId;
+import io.github.coolcrabs.brachyura.processing.ProcessingId;
+import io.github.coolcrabs.brachyura.processing.sinks.ParallelZipProcessingSink;
 import io.github.coolcrabs.brachyura.util.AtomicFile;
-import io.github.coolcrabs.brachyura.util.FileSystemUtil;
-import io.github.coolcrabs.brachyura.util.PathUtil;
+import io.github.coolcrabs.brachyura.util.RandomAccessZipFile;
 import io.github.coolcrabs.brachyura.util.Util;
 
 import org.tinylog.Logger;
@@ -29,101 +34,297 @@ public class LineNumberTableReplacer {
 
     static final String CODE_UTF8 = "Code";
     static final String LINE_NUMBER_TABLE_UTF8 = "LineNumberTable";
-    static final boolean REMAP_DEBUG = Boolean.getBoolean("brachyura.debugLineNumberRemap");
+
+    static boolean remapDebug() {
+        return Boolean.getBoolean("brachyura.debugLineNumberRemap");
+    }
 
     public static void replaceLineNumbers(Path sourceJar, Path targetJar, DecompileLineNumberTable table) {
+        replaceLineNumbers(sourceJar, targetJar, table, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Classes are patched on a pool of threads and written in the order of the source jar
+     */
+    public static void replaceLineNumbers(Path sourceJar, Path targetJar, DecompileLineNumberTable table, int threads) {
+        ExecutorService executor = Util.daemonPool("LineNumberTableReplacer", threads);
         try {
             try (AtomicFile af = new AtomicFile(targetJar)) {
                 Files.deleteIfExists(af.tempPath);
                 try (
-                    FileSystem source = FileSystemUtil.newJarFileSystem(sourceJar);
-                    FileSystem target = FileSystemUtil.newJarFileSystem(af.tempPath);
+                    RandomAccessZipFile source = new RandomAccessZipFile(sourceJar);
+                    ParallelZipProcessingSink target = new ParallelZipProcessingSink(af.tempPath, threads, false, -1);
                 ) {
-                    Files.walkFileTree(source.getPath("/"), new SimpleFileVisitor<Path>() {
-                        @Override
-                        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-                            if (file.toString().endsWith(".class")) {
-                                int lineNumberConstIndex = -1;
-                                ClassFile c;
-                                try (DataInputStream in = new DataInputStream(PathUtil.inputStream(file))) {
-                                    c = readClassFile(in);
+                    ArrayDeque<String> pendingFiles = new ArrayDeque<>();
+                    ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+                    int maxPending = Math.max(1, threads) * 8;
+                    for (RandomAccessZipFile.Entry entry : source.entries()) {
+                        if (entry.isDirectory()) continue;
+                        String file = entry.getName();
+                        if (source.getEntry(file) != entry) continue; // Duplicate
+                        byte[] bytes = source.readAllBytes(entry);
+                        pendingFiles.add(file);
+                        if (file.endsWith(".class")) {
+                            pending.add(executor.submit(() -> replaceLineNumbers(file, bytes, table)));
+                        } else {
+                            pending.add(CompletableFuture.completedFuture(bytes));
+                        }
+                        while (pending.size() > maxPending || (!pending.isEmpty() && pending.peek().isDone())) {
+                            sink(target, pendingFiles.poll(), pending.poll());
+                        }
+                    }
+                    while (!pending.isEmpty()) {
+                        sink(target, pendingFiles.poll(), pending.poll());
+                    }
+                }
+                af.commit();
+            }
+        } catch (Exception e) {
+            throw Util.sneak(e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    static void sink(ParallelZipProcessingSink target, String file, Future<byte[]> bytes) throws InterruptedException {
+        byte[] b;
+        try {
+            b = bytes.get();
+        } catch (ExecutionException e) {
+            throw Util.sneak(e.getCause());
+        }
+        target.sink(() -> new ByteArrayInputStream(b), new ProcessingId(file, null));
+    }
+
+    static byte[] replaceLineNumbers(String file, byte[] bytes, DecompileLineNumberTable table) throws IOException {
+        if (!remapDebug()) {
+            byte[] r = patchLineNumbers(bytes, table);
+            if (r != null) return r;
+        }
+        return rewriteLineNumbers(file, bytes, table);
+    }
+
+    /**
+     * Remaps line numbers directly in the class bytes, the tables keep their size so nothing else moves
+     * @return the class itself if it has no line map, or null if a table is replaced and the class has to be rewritten
+     */
+    static @Nullable byte[] patchLineNumbers(byte[] bytes, DecompileLineNumberTable table) {
+        ClassBytes c = new ClassBytes(bytes);
+        ClassLineMap mmap = table.classes.get(c.utf8(c.u2(c.cpOffsets[c.u2(c.thisClassOffset)] + 1)));
+        if (mmap == null) return bytes;
+        byte[] r = null;
+        int codeIndex = c.findUtf8(CODE_UTF8);
+        int lineNumberTableIndex = c.findUtf8(LINE_NUMBER_TABLE_UTF8);
+        int offset = c.thisClassOffset + 4;
+        offset += 2 + c.u2(offset) * 2; // Interfaces
+        offset = c.skipMembers(offset);
+        int methodCount = c.u2(offset);
+        offset += 2;
+        for (int i = 0; i < methodCount; i++) {
+            DecompileLineNumberTable.MethodLineMap mln = mmap.isStupid ? null : mmap.methods.get(new MethodId(c.utf8(c.u2(offset + 2)), c.utf8(c.u2(offset + 4))));
+            if (mln != null && mln.isReplace) return null;
+            int attributeCount = c.u2(offset + 6);
+            offset += 8;
+            for (int j = 0; j < attributeCount; j++) {
+                int length = c.s4(offset + 2);
+                if (c.u2(offset) == codeIndex && (mmap.isStupid || mln != null)) {
+                    LineRemap remap = mmap.isStupid ? mmap.stupid : mln.remap;
+                    int codeOffset = offset + 10 + c.s4(offset + 10);
+                    codeOffset += 4;
+                    codeOffset += 2 + c.u2(codeOffset) * 8; // Exception table
+                    int codeAttributeCount = c.u2(codeOffset);
+                    codeOffset += 2;
+                    for (int k = 0; k < codeAttributeCount; k++) {
+                        if (c.u2(codeOffset) == lineNumberTableIndex) {
+                            int lineCount = c.u2(codeOffset + 6);
+                            for (int l = 0; l < lineCount; l++) {
+                                int lineOffset = codeOffset + 8 + l * 4 + 2;
+                                int index = remap.indexOf((short) c.u2(lineOffset));
+                                if (index >= 0) {
+                                    int rmp = remap.get(index);
+                                    if (r == null) r = bytes.clone();
+                                    r[lineOffset] = (byte) (rmp >>> 8);
+                                    r[lineOffset + 1] = (byte) rmp;
                                 }
-                                String cName = ((ConstantUtf8)cpEntry(c.constantPool, ((ConstantClass) cpEntry(c.constantPool, c.thisClass)).nameIndex)).data;
-                                ClassLineMap mmap = table.classes.get(cName);
-                                if (mmap != null) {
-                                    for (Method method : c.methods) {
-                                        MethodId mid = new MethodId(((ConstantUtf8) cpEntry(c.constantPool, method.nameIndex)).data, ((ConstantUtf8) cpEntry(c.constantPool, method.descriptorIndex)).data);
-                                        DecompileLineNumberTable.MethodLineMap mln = mmap.isStupid ? null : mmap.methods.get(mid);
-                                        for (Attribute attr : method.attributes) {
-                                            if (attr instanceof AttributeCode) {
-                                                AttributeCode ac = (AttributeCode) attr;
-                                                if (mln != null && mln.isReplace) {
-                                                    AttributeLineNumberTable lnAttr = null;
-                                                    boolean foundFirstLnTable = false;
-                                                    for (int i = 0; i < ac.attributes.length; i++) {
-                                                        if (ac.attributes[i] instanceof AttributeLineNumberTable) {
-                                                            if (foundFirstLnTable) {
-                                                                ((AttributeLineNumberTable)ac.attributes[i]).lineNumberTable = new LineNumberTableEntry[0];
-                                                            } else {
-                                                                lnAttr = (AttributeLineNumberTable) ac.attributes[i];
-                                                                foundFirstLnTable = true;
-                                                            }
-                                                        }
-                                                    }
-                                                    if (!foundFirstLnTable) {
-                                                        ac.attributes = Arrays.copyOf(ac.attributes, ac.attributes.length + 1);
-                                                        ac.attributes[ac.attributes.length - 1] = lnAttr = new AttributeLineNumberTable();
-                                                        if (lineNumberConstIndex == -1) {
-                                                            lineNumberConstIndex = getOrCreateUtf8Const(LINE_NUMBER_TABLE_UTF8, c);
-                                                        }
-                                                    }
-
-                                                    lnAttr.lineNumberTable = mln.replace.toArray(new LineNumberTableEntry[mln.replace.size()]); 
-                                                } else {
-                                                    for (int i = 0; i < ac.attributes.length; i++) {
-                                                        if (ac.attributes[i] instanceof AttributeLineNumberTable) {
-                                                            if (!mmap.isStupid && mln == null) {
-                                                                if (REMAP_DEBUG) Logger.info("Missing method map in {} {}", file, cpEntry(c.constantPool, method.nameIndex));
-                                                                continue;
-                                                            }
-                                                            Map<Integer, Integer> remap = mmap.isStupid ? mmap.stupid : mln.remap;
-                                                            LineNumberTableEntry[] lnt = ((AttributeLineNumberTable)ac.attributes[i]).lineNumberTable;
-                                                            for (int j = 0; j < lnt.length; j++) {
-                                                                Integer rmp = remap.get((int)lnt[j].lineNumber);
-                                                                if (rmp != null) {
-                                                                    if (REMAP_DEBUG) Logger.info("Remapping {} {} in {} {}", lnt[j].lineNumber, rmp, file, cpEntry(c.constantPool, method.nameIndex));
-                                                                    lnt[j] = new LineNumberTableEntry(lnt[j].startPc, rmp);
-                                                                } else {
-                                                                    if (REMAP_DEBUG) Logger.info("Missing remap {} in {} {}", lnt[j].lineNumber, file, cpEntry(c.constantPool, method.nameIndex));
-                                                                }
-                                                            }
-                                                        }
-                                                    }
-                                                }
-                                            }
-                                        }
+                            }
+                        }
+                        codeOffset += 6 + c.s4(codeOffset + 2);
+                    }
+                }
+                offset += 6 + length;
+            }
+        }
+        return r == null ? bytes : r;
+    }
+
+    static byte[] rewriteLineNumbers(String file, byte[] bytes, DecompileLineNumberTable table) throws IOException {
+        boolean debug = remapDebug();
+        int lineNumberConstIndex = -1;
+        ClassFile c;
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            c = readClassFile(in);
+        }
+        String cName = ((ConstantUtf8)cpEntry(c.constantPool, ((ConstantClass) cpEntry(c.constantPool, c.thisClass)).nameIndex)).data;
+        ClassLineMap mmap = table.classes.get(cName);
+        if (mmap != null) {
+            for (Method method : c.methods) {
+                MethodId mid = new MethodId(((ConstantUtf8) cpEntry(c.constantPool, method.nameIndex)).data, ((ConstantUtf8) cpEntry(c.constantPool, method.descriptorIndex)).data);
+                DecompileLineNumberTable.MethodLineMap mln = mmap.isStupid ? null : mmap.methods.get(mid);
+                for (Attribute attr : method.attributes) {
+                    if (attr instanceof AttributeCode) {
+                        AttributeCode ac = (AttributeCode) attr;
+                        if (mln != null && mln.isReplace) {
+                            AttributeLineNumberTable lnAttr = null;
+                            boolean foundFirstLnTable = false;
+                            for (int i = 0; i < ac.attributes.length; i++) {
+                                if (ac.attributes[i] instanceof AttributeLineNumberTable) {
+                                    if (foundFirstLnTable) {
+                                        ((AttributeLineNumberTable)ac.attributes[i]).lineNumberTable = new LineNumberTableEntry[0];
+                                    } else {
+                                        lnAttr = (AttributeLineNumberTable) ac.attributes[i];
+                                        foundFirstLnTable = true;
                                     }
                                 }
-                                Path outPath = target.getPath(file.toString());
-                                try (DataOutputStream out = new DataOutputStream(PathUtil.outputStream(outPath))) {
-                                    writeClassFile(out, c);
+                            }
+                            if (!foundFirstLnTable) {
+                                ac.attributes = Arrays.copyOf(ac.attributes, ac.attributes.length + 1);
+                                ac.attributes[ac.attributes.length - 1] = lnAttr = new AttributeLineNumberTable();
+                                if (lineNumberConstIndex == -1) {
+                                    lineNumberConstIndex = getOrCreateUtf8Const(LINE_NUMBER_TABLE_UTF8, c);
+                                }
+                            }
+
+                            lnAttr.lineNumberTable = mln.replace.toArray(new LineNumberTableEntry[mln.replace.size()]); 
+                        } else {
+                            for (int i = 0; i < ac.attributes.length; i++) {
+                                if (ac.attributes[i] instanceof AttributeLineNumberTable) {
+                                    if (!mmap.isStupid && mln == null) {
+                                        if (debug) Logger.info("Missing method map in {} {}", file, cpEntry(c.constantPool, method.nameIndex));
+                                        continue;
+                                    }
+                                    LineRemap remap = mmap.isStupid ? mmap.stupid : mln.remap;
+                                    LineNumberTableEntry[] lnt = ((AttributeLineNumberTable)ac.attributes[i]).lineNumberTable;
+                                    for (int j = 0; j < lnt.length; j++) {
+                                        int index = remap.indexOf(lnt[j].lineNumber);
+                                        if (index >= 0) {
+                                            int rmp = remap.get(index);
+                                            if (debug) Logger.info("Remapping {} {} in {} {}", lnt[j].lineNumber, rmp, file, cpEntry(c.constantPool, method.nameIndex));
+                                            lnt[j] = new LineNumberTableEntry(lnt[j].startPc, rmp);
+                                        } else {
+                                            if (debug) Logger.info("Missing remap {} in {} {}", lnt[j].lineNumber, file, cpEntry(c.constantPool, method.nameIndex));
+                                        }
+                                    }
                                 }
-                            } else {
-                                Path targetPath = target.getPath(file.toString());
-                                Files.createDirectories(targetPath.getParent());
-                                Files.copy(file, targetPath);
                             }
-                            return FileVisitResult.CONTINUE;
                         }
-                    });
+                    }
                 }
-                af.commit();
             }
-        } catch (Exception e) {
-            throw Util.sneak(e);
         }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length + 64);
+        try (DataOutputStream out0 = new DataOutputStream(out)) {
+            writeClassFile(out0, c);
+        }
+        return out.toByteArray();
     }
-    
+
+    /**
+     * Offsets into a class file without parsing it
+     */
+    static class ClassBytes {
+        final byte[] bytes;
+        final int[] cpOffsets; // Offset of each constant's tag by index
+        final int thisClassOffset;
+
+        ClassBytes(byte[] bytes) {
+            this.bytes = bytes;
+            int cpCount = u2(8);
+            cpOffsets = new int[cpCount];
+            int offset = 10;
+            for (int i = 1; i < cpCount; i++) {
+                cpOffsets[i] = offset;
+                int tag = bytes[offset];
+                switch (tag) {
+                    case 1:
+                        offset += 3 + u2(offset + 1);
+                        break;
+                    case 7:
+                    case 8:
+                    case 16:
+                    case 19:
+                    case 20:
+                        offset += 3;
+                        break;
+                    case 15:
+                        offset += 4;
+                        break;
+                    case 3:
+                    case 4:
+                    case 9:
+                    case 10:
+                    case 11:
+                    case 12:
+                    case 17:
+                    case 18:
+                        offset += 5;
+                        break;
+                    case 5:
+                    case 6:
+                        offset += 9;
+                        ++i;
+                        break;
+                    default:
+                        throw new UnsupportedOperationException("" + tag);
+                }
+            }
+            thisClassOffset = offset + 2;
+        }
+
+        int u2(int offset) {
+            return ((bytes[offset] & 0xFF) << 8) | (bytes[offset + 1] & 0xFF);
+        }
+
+        int s4(int offset) {
+            return (u2(offset) << 16) | u2(offset + 2);
+        }
+
+        String utf8(int index) {
+            int offset = cpOffsets[index] + 1;
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, offset, 2 + u2(offset)))) {
+                return in.readUTF();
+            } catch (IOException e) {
+                throw Util.sneak(e);
+            }
+        }
+
+        int findUtf8(String ascii) {
+            outer:
+            for (int i = 1; i < cpOffsets.length; i++) {
+                int offset = cpOffsets[i];
+                if (offset == 0 || bytes[offset] != 1 || u2(offset + 1) != ascii.length()) continue;
+                for (int j = 0; j < ascii.length(); j++) {
+                    if (bytes[offset + 3 + j] != ascii.charAt(j)) continue outer;
+                }
+                return i;
+            }
+            return -1;
+        }
+
+        // Skips the fields
+        int skipMembers(int offset) {
+            int count = u2(offset);
+            offset += 2;
+            for (int i = 0; i < count; i++) {
+                int attributeCount = u2(offset + 6);
+                offset += 8;
+                for (int j = 0; j < attributeCount; j++) {
+                    offset += 6 + s4(offset + 2);
+                }
+            }
+            return offset;
+        }
+    }
+
     static int getOrCreateUtf8Const(String constant, ClassFile clazz) {
         for (int i = 0; i < clazz.constantPool.length; i++) {
             Constant c = clazz.constantPool[i];
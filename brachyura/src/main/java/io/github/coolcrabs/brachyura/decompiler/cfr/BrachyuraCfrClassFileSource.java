@@ -17,26 +17,43 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 import org.benf.cfr.reader.api.ClassFileSource;
 import org.benf.cfr.reader.bytecode.analysis.parse.utils.Pair;
 import org.jetbrains.annotations.Nullable;
 import org.tinylog.Logger;
 
-import io.github.coolcrabs.brachyura.util.FileSystemUtil;
 import io.github.coolcrabs.brachyura.util.JvmUtil;
+import io.github.coolcrabs.brachyura.util.RandomAccessZipFile;
 import io.github.coolcrabs.brachyura.util.PathUtil;
 import io.github.coolcrabs.brachyura.util.StreamUtil;
 
+/**
+ * Classes of the jar being decompiled, its classpath and the JDK
+ * Recently used class bytes are kept in memory up to a total size, the rest are read again from their jar when needed
+ */
 class BrachyuraCfrClassFileSource implements ClassFileSource, Closeable {
-    private final Map<String, Path> allClasses = new HashMap<>();
-    private final ConcurrentHashMap<String, byte[]> classmap = new ConcurrentHashMap<>();
-    private final List<FileSystem> toClose = new ArrayList<>();
+    private final Map<String, ClassBytes> allClasses = new HashMap<>();
+    // Access ordered, guarded by itself
+    private final LinkedHashMap<String, byte[]> classmap = new LinkedHashMap<>(16, 0.75f, true);
+    private final long maxCachedBytes;
+    private long cachedBytes;
+    private final List<Closeable> toClose = new ArrayList<>();
+    private final Map<String, Long> mainClassSizes = new HashMap<>();
 
     public BrachyuraCfrClassFileSource(Path mainJar, List<Path> classpath, List<String> mainClassesOut) throws IOException {
+        this(mainJar, classpath, mainClassesOut, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param maxCachedBytes total size of class files kept in memory
+     */
+    public BrachyuraCfrClassFileSource(Path mainJar, List<Path> classpath, List<String> mainClassesOut, long maxCachedBytes) throws IOException {
+        this.maxCachedBytes = maxCachedBytes;
         loadJar(mainJar, mainClassesOut);
         for (Path path : classpath) {
             loadJar(path, null);
@@ -44,26 +61,19 @@ class BrachyuraCfrClassFileSource implements ClassFileSource, Closeable {
         loadRt();
     }
 
-    private void loadJar(Path path, @Nullable List<String> classesOut) throws IOException {
-        FileSystem fileSystem = FileSystemUtil.newJarFileSystem(path);
-        toClose.add(fileSystem);
-        loadJar(fileSystem, classesOut);
-    }
-
-    private void loadJar(FileSystem fileSystem, @Nullable List<String> classesOut) throws IOException {
-        Files.walkFileTree(fileSystem.getPath("/"), new SimpleFileVisitor<Path>() {
-            @Override
-            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
-                String path = file.toString().substring(1);
-                if (path.endsWith(".class")) {
-                    allClasses.put(path, file);
-                    if (classesOut != null) {
-                        classesOut.add(path);
-                    }
+    private void loadJar(Path path, @Nullable List<String> classesOut) {
+        RandomAccessZipFile zip = new RandomAccessZipFile(path);
+        toClose.add(zip);
+        for (RandomAccessZipFile.Entry entry : zip.entries()) {
+            String name = entry.getName();
+            if (name.endsWith(".class") && zip.getEntry(name) == entry) {
+                allClasses.put(name, () -> zip.readAllBytes(entry));
+                if (classesOut != null) {
+                    classesOut.add(name);
+                    mainClassSizes.put(name, entry.getSize());
                 }
-                return FileVisitResult.CONTINUE;
             }
-        });
+        }
     }
 
     private void loadRt() throws IOException {
@@ -79,14 +89,7 @@ class BrachyuraCfrClassFileSource implements ClassFileSource, Closeable {
         for (String jar : jars) {
             Path path = Paths.get(jar);
             if (Files.exists(path)) { // ??? whatever sunrsasign.jar is claims to be on bootstrap classpath but doesn't exist
-                FileSystem fs;
-                try {
-                    fs = FileSystems.getFileSystem(new URI("jar:file", null, path.toUri().getPath(), ""));
-                } catch (Exception e) {
-                    fs = FileSystemUtil.newJarFileSystem(path);
-                    toClose.add(fs);
-                }
-                loadJar(fs, null);
+                loadJar(path, null);
             }
         }
     }
@@ -98,13 +101,25 @@ class BrachyuraCfrClassFileSource implements ClassFileSource, Closeable {
             public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
                 String clazz = file.subpath(2, file.getNameCount()).toString();
                 if (clazz.endsWith(".class") && !"module-info.class".equals(clazz)) {
-                    allClasses.put(clazz, file);
+                    allClasses.put(clazz, () -> {
+                        try (InputStream inputStream = PathUtil.inputStream(file)) {
+                            return StreamUtil.readFullyAsBytes(inputStream);
+                        }
+                    });
                 }
                 return FileVisitResult.CONTINUE;
             }
         });
     }
 
+    /**
+     * @return the uncompressed size of a class from the main jar
+     */
+    public long getMainClassSize(String path) {
+        Long r = mainClassSizes.get(path);
+        return r == null ? 0 : r;
+    }
+
     @Override
     public void informAnalysisRelativePathDetail(String usePath, String classFilePath) {
         //noop
@@ -127,31 +142,57 @@ class BrachyuraCfrClassFileSource implements ClassFileSource, Closeable {
             return new Pair<>(null, path);
         }
 
-        byte[] content = classmap.computeIfAbsent(path, p -> {
-            try {
-                Path path2 = allClasses.get(path);
-                if (path2 != null) {
-                    try (InputStream inputStream = PathUtil.inputStream(path2)) {
-                        return StreamUtil.readFullyAsBytes(inputStream);
-                    }
-                } else {
-                    Logger.warn("Unable to find " + path);
-                    return null;
-                }
-            } catch (Exception e) {
+        byte[] content;
+        synchronized (classmap) {
+            content = classmap.get(path);
+        }
+        if (content == null) {
+            // Read outside the lock, two threads racing for the same class both get equal bytes
+            content = read(path);
+            if (content != null) cache(path, content);
+        }
+        return new Pair<>(content, path);
+    }
+
+    private @Nullable byte[] read(String path) {
+        try {
+            ClassBytes bytes = allClasses.get(path);
+            if (bytes != null) {
+                return bytes.read();
+            } else {
                 Logger.warn("Unable to find " + path);
-                Logger.warn(e);
                 return null;
             }
-        });
-        return new Pair<>(content, path);
+        } catch (Exception e) {
+            Logger.warn("Unable to find " + path);
+            Logger.warn(e);
+            return null;
+        }
+    }
+
+    private void cache(String path, byte[] content) {
+        synchronized (classmap) {
+            byte[] prev = classmap.put(path, content);
+            if (prev != null) cachedBytes -= prev.length;
+            cachedBytes += content.length;
+            // Least recently used first, never drop what was just read
+            Iterator<byte[]> it = classmap.values().iterator();
+            while (cachedBytes > maxCachedBytes && classmap.size() > 1) {
+                cachedBytes -= it.next().length;
+                it.remove();
+            }
+        }
     }
-        
 
     @Override
     public void close() throws IOException {
-        for (FileSystem fileSystem : toClose) {
-            fileSystem.close();
+        for (Closeable c : toClose) {
+            c.close();
         }
     }
+
+    @FunctionalInterface
+    private interface ClassBytes {
+        byte[] read() throws IOException;
+    }
 }
@@ -9,6 +9,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -29,7 +30,6 @@ import io.github.coolcrabs.brachyura.decompiler.DecompileLineNumberTable.MethodI
 import io.github.coolcrabs.brachyura.util.FileSystemUtil;
 import io.github.coolcrabs.brachyura.util.PathUtil;
 import io.github.coolcrabs.brachyura.util.Util;
-import java.util.HashMap;
 import java.util.Iterator;
 
 class BrachyuraCfrOutputSinkFactory implements OutputSinkFactory, Closeable {
@@ -37,6 +37,8 @@ class BrachyuraCfrOutputSinkFactory implements OutputSinkFactory, Closeable {
     private final DecompileLineNumberTable decompileLineNumberTable;
     private final LineNumberMappingSink lineNumberMappingSink;
     private final @Nullable DecompiledSink decompiledSink;
+    // Set while a class that should be cached is analysed
+    final ThreadLocal<CfrClassCache.Entry> recording = new ThreadLocal<>();
 
     public BrachyuraCfrOutputSinkFactory(@Nullable Path outputJar, DecompileLineNumberTable mapping, boolean replace) {
         if (outputJar != null) {
@@ -51,6 +53,38 @@ class BrachyuraCfrOutputSinkFactory implements OutputSinkFactory, Closeable {
         lineNumberMappingSink = new LineNumberMappingSink(replace);
     }
 
+    /**
+     * Writes out what the sinks got when the cached class was analysed
+     */
+    void replay(CfrClassCache.Entry entry) {
+        if (decompiledSink != null) {
+            for (int i = 0; i < entry.sources.size(); i++) {
+                decompiledSink.write(entry.sourcePaths.get(i), entry.sources.get(i));
+            }
+        }
+        for (int i = 0; i < entry.lineMaps.size(); i++) {
+            putLineMap(entry.lineMapClasses.get(i), entry.lineMapNames.get(i), entry.lineMapDescs.get(i), entry.lineMaps.get(i));
+        }
+    }
+
+    // Pairs of pc, line if replacing otherwise pairs of original line, decompiled line
+    void putLineMap(String className, String methodName, String methodDesc, int[] lineMap) {
+        Map<MethodId, DecompileLineNumberTable.MethodLineMap> a = decompileLineNumberTable.classes.computeIfAbsent(
+            className,
+            k -> new ClassLineMap(new ConcurrentHashMap<>())
+        ).methods;
+        MethodId id = new MethodId(methodName, methodDesc);
+        if (lineNumberMappingSink.replace) {
+            List<LineNumberTableEntry> newLineNumbers = new ArrayList<>(lineMap.length / 2);
+            for (int i = 0; i < lineMap.length; i += 2) {
+                newLineNumbers.add(new LineNumberTableEntry(lineMap[i], lineMap[i + 1]));
+            }
+            a.put(id, new DecompileLineNumberTable.MethodLineMap(newLineNumbers));
+        } else {
+            a.put(id, new DecompileLineNumberTable.MethodLineMap(lineMap));
+        }
+    }
+
     @Override
     public List<SinkClass> getSupportedSinks(SinkType sinkType, Collection<SinkClass> available) {
         ArrayList<SinkClass> result = new ArrayList<>();
@@ -91,7 +125,7 @@ class BrachyuraCfrOutputSinkFactory implements OutputSinkFactory, Closeable {
         }
     }
 
-    private static class DecompiledSink implements Sink<SinkReturns.Decompiled> {
+    private class DecompiledSink implements Sink<SinkReturns.Decompiled> {
         final FileSystem fileSystem;
         DecompiledSink(FileSystem fileSystem) {
             this.fileSystem = fileSystem;
@@ -100,15 +134,26 @@ class BrachyuraCfrOutputSinkFactory implements OutputSinkFactory, Closeable {
         @Override
         public void write(Decompiled sinkable) {
             if (sinkable.getClassName().indexOf('$') < 0) { // skip inner classes because they are included in the parent source file 
-                try {
-                    Path path = fileSystem.getPath("/" + sinkable.getPackageName().replace('.', '/') + "/" + sinkable.getClassName() + ".java");
-                    Files.createDirectories(path.getParent());
-                    try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.CREATE)) {
-                        writer.write(sinkable.getJava());
-                    }
-                } catch (IOException e) {
-                    throw Util.sneak(e);
+                String path = "/" + sinkable.getPackageName().replace('.', '/') + "/" + sinkable.getClassName() + ".java";
+                String java = sinkable.getJava();
+                CfrClassCache.Entry entry = recording.get();
+                if (entry != null) {
+                    entry.sourcePaths.add(path);
+                    entry.sources.add(java);
+                }
+                write(path, java);
+            }
+        }
+
+        void write(String file, String java) {
+            try {
+                Path path = fileSystem.getPath(file);
+                Files.createDirectories(path.getParent());
+                try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.CREATE)) {
+                    writer.write(java);
                 }
+            } catch (IOException e) {
+                throw Util.sneak(e);
             }
         }
     }
@@ -122,22 +167,21 @@ class BrachyuraCfrOutputSinkFactory implements OutputSinkFactory, Closeable {
         
         @Override
         public void write(LineNumberMapping sinkable) {
-            Map<MethodId, DecompileLineNumberTable.MethodLineMap> a = decompileLineNumberTable.classes.computeIfAbsent(
-                sinkable.className().replace('.', '/'),
-                k -> new ClassLineMap(new ConcurrentHashMap<>())
-            ).methods;
-            MethodId id = new MethodId(sinkable.methodName(), sinkable.methodDescriptor());
+            int[] lineMap;
             if (replace) {
-                List<LineNumberTableEntry> newLineNumbers = new ArrayList<>();
+                lineMap = new int[sinkable.getMappings().size() * 2];
+                int i = 0;
                 for (Map.Entry<Integer, Integer> entry : sinkable.getMappings().entrySet()) {
-                    newLineNumbers.add(new LineNumberTableEntry(entry.getKey(), entry.getValue()));
+                    lineMap[i++] = entry.getKey();
+                    lineMap[i++] = entry.getValue();
                 }
-                a.put(id, new DecompileLineNumberTable.MethodLineMap(newLineNumbers));
             } else {
                 // Bruh
-                HashMap<Integer, Integer> remap = new HashMap<>();
+                Map<Integer, Integer> classFileMappings = sinkable.getClassFileMappings();
+                lineMap = new int[classFileMappings.size() * 2];
+                int i = 0;
                 finish: {
-                    Iterator<Map.Entry<Integer, Integer>> origOff2Line = sinkable.getClassFileMappings().entrySet().iterator();
+                    Iterator<Map.Entry<Integer, Integer>> origOff2Line = classFileMappings.entrySet().iterator();
                     Iterator<Map.Entry<Integer, Integer>> decompOff2Line = sinkable.getMappings().entrySet().iterator();
                     if (!decompOff2Line.hasNext()) break finish;
                     Map.Entry<Integer, Integer> currDecomp = decompOff2Line.next();
@@ -155,12 +199,22 @@ class BrachyuraCfrOutputSinkFactory implements OutputSinkFactory, Closeable {
                                 break;
                             }
                         }
-                        remap.put(origOff2LineE.getValue(), currDecomp.getValue());
+                        // Later offsets on the same line win like they did with a map
+                        lineMap[i++] = origOff2LineE.getValue();
+                        lineMap[i++] = currDecomp.getValue();
                     }
                 }
-                a.put(id, new DecompileLineNumberTable.MethodLineMap(remap));
+                if (i < lineMap.length) lineMap = Arrays.copyOf(lineMap, i);
+            }
+            String className = sinkable.className().replace('.', '/');
+            CfrClassCache.Entry entry = recording.get();
+            if (entry != null) {
+                entry.lineMapClasses.add(className);
+                entry.lineMapNames.add(sinkable.methodName());
+                entry.lineMapDescs.add(sinkable.methodDescriptor());
+                entry.lineMaps.add(lineMap);
             }
-            
+            putLineMap(className, sinkable.methodName(), sinkable.methodDescriptor(), lineMap);
         }
     }
 
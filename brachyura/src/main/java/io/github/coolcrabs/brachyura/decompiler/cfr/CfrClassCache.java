@@ -0,0 +1,251 @@
+package io.github.coolcrabs.brachyura.decompiler.cfr;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.ClassReader;
+import org.tinylog.Logger;
+
+import io.github.coolcrabs.brachyura.util.AtomicFile;
+import io.github.coolcrabs.brachyura.util.MessageDigestUtil;
+import io.github.coolcrabs.brachyura.util.Util;
+import net.fabricmc.mappingio.tree.MappingTree;
+import net.fabricmc.mappingio.tree.MappingTree.ClassMapping;
+import net.fabricmc.mappingio.tree.MappingTree.FieldMapping;
+import net.fabricmc.mappingio.tree.MappingTree.MethodMapping;
+
+/**
+ * Decompiled sources and line maps of single classes stored by content
+ * A class is keyed by its bytes, the bytes of its nested classes, the bytes of every class they reference and their javadoc
+ * so a mappings change only decompiles the classes it actually touched
+ */
+class CfrClassCache {
+    static final int VERSION = 0;
+    // Every mappings version leaves an entry per class behind, so entries no run has read for this long are deleted
+    static long maxAge() {
+        return TimeUnit.DAYS.toMillis(Long.getLong("brachyura.cfrClassCacheDays", 30));
+    }
+
+    final Path dir;
+    final BrachyuraCfrClassFileSource source;
+    final NavigableSet<String> mainClasses;
+    final byte[] commonKey;
+    final @Nullable MappingTree tree;
+    final int namespace;
+    final ConcurrentHashMap<String, byte[]> digests = new ConcurrentHashMap<>();
+    static final byte[] MISSING = new byte[0];
+
+    CfrClassCache(Path dir, BrachyuraCfrClassFileSource source, Collection<String> mainClasses, String decompilerKey, @Nullable MappingTree tree, int namespace) {
+        this.dir = dir;
+        this.source = source;
+        this.mainClasses = new TreeSet<>(mainClasses);
+        this.tree = tree;
+        this.namespace = namespace;
+        MessageDigest md = MessageDigestUtil.messageDigest(MessageDigestUtil.SHA256);
+        MessageDigestUtil.update(md, VERSION);
+        MessageDigestUtil.update(md, decompilerKey);
+        MessageDigestUtil.update(md, tree == null ? 0 : 1);
+        this.commonKey = md.digest();
+    }
+
+    /**
+     * @param clazz class file path like in {@link BrachyuraCfrClassFileSource}
+     */
+    String key(String clazz) {
+        MessageDigest md = MessageDigestUtil.messageDigest(MessageDigestUtil.SHA256);
+        md.update(commonKey);
+        // Nested classes end up in the same source file
+        ArrayList<String> unit = new ArrayList<>();
+        unit.add(clazz);
+        String prefix = clazz.substring(0, clazz.length() - ".class".length()) + "$";
+        unit.addAll(mainClasses.subSet(prefix, true, prefix + Character.MAX_VALUE, true));
+        TreeSet<String> references = new TreeSet<>();
+        for (String c : unit) {
+            byte[] bytes = bytes(c);
+            MessageDigestUtil.update(md, c);
+            MessageDigestUtil.update(md, bytes.length);
+            md.update(bytes);
+            if (bytes.length > 0) references(bytes, references);
+            if (tree != null) javadoc(md, c);
+        }
+        for (String r : references) {
+            MessageDigestUtil.update(md, r);
+            md.update(digest(r));
+        }
+        return MessageDigestUtil.toHexHash(md.digest());
+    }
+
+    byte[] bytes(String clazz) {
+        try {
+            byte[] r = source.getClassFileContent(clazz).getFirst();
+            return r == null ? MISSING : r;
+        } catch (IOException e) {
+            throw Util.sneak(e);
+        }
+    }
+
+    byte[] digest(String clazz) {
+        return digests.computeIfAbsent(clazz, k -> MessageDigestUtil.messageDigest(MessageDigestUtil.SHA256).digest(bytes(k)));
+    }
+
+    static void references(byte[] bytes, Collection<String> out) {
+        ClassReader reader = new ClassReader(bytes);
+        char[] buffer = new char[reader.getMaxStringLength()];
+        for (int i = 1; i < reader.getItemCount(); i++) {
+            int offset = reader.getItem(i);
+            // CONSTANT_Class
+            if (offset > 0 && reader.readByte(offset - 1) == 7) {
+                String name = reader.readUTF8(offset, buffer);
+                int start = 0;
+                while (start < name.length() && name.charAt(start) == '[') start++;
+                if (start > 0) {
+                    if (name.charAt(start) != 'L') continue; // Primitive array
+                    name = name.substring(start + 1, name.length() - 1);
+                }
+                out.add(name + ".class");
+            }
+        }
+    }
+
+    void javadoc(MessageDigest md, String clazz) {
+        ClassMapping c = tree.getClass(clazz.substring(0, clazz.length() - ".class".length()), namespace);
+        if (c == null) return;
+        MessageDigestUtil.update(md, c.getComment());
+        for (MethodMapping m : c.getMethods()) {
+            if (m.getComment() == null) continue;
+            MessageDigestUtil.update(md, m.getName(namespace));
+            MessageDigestUtil.update(md, m.getDesc(namespace));
+            MessageDigestUtil.update(md, m.getComment());
+        }
+        for (FieldMapping f : c.getFields()) {
+            if (f.getComment() == null) continue;
+            MessageDigestUtil.update(md, f.getName(namespace));
+            MessageDigestUtil.update(md, f.getDesc(namespace));
+            MessageDigestUtil.update(md, f.getComment());
+        }
+    }
+
+    @Nullable Entry read(String key) {
+        Path file = dir.resolve(key);
+        if (!Files.isRegularFile(file)) return null;
+        Entry r;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            r = Entry.read(in);
+        } catch (Exception e) {
+            Logger.warn("Unable to read decompiled class {}", file);
+            Logger.warn(e);
+            return null;
+        }
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // Only used for pruning
+        }
+        return r;
+    }
+
+    /**
+     * Deletes entries that weren't read or written in {@link #maxAge()}
+     */
+    static void prune(Path dir) {
+        long cutoff = System.currentTimeMillis() - maxAge();
+        int deleted = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path p : stream) {
+                try {
+                    BasicFileAttributes attributes = Files.readAttributes(p, BasicFileAttributes.class);
+                    if (attributes.isRegularFile() && attributes.lastModifiedTime().toMillis() < cutoff) {
+                        Files.delete(p);
+                        deleted++;
+                    }
+                } catch (IOException e) {
+                    // Deleted by another process or in use, try again next time
+                }
+            }
+        } catch (IOException e) {
+            Logger.warn("Unable to prune decompiled classes in {}", dir);
+            Logger.warn(e);
+        }
+        if (deleted > 0) Logger.info("(CFR) Pruned {} unused decompiled classes", deleted);
+    }
+
+    void write(String key, Entry entry) {
+        try (AtomicFile atomicFile = new AtomicFile(dir.resolve(key))) {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(atomicFile.tempPath)))) {
+                entry.write(out);
+            }
+            atomicFile.commit();
+        } catch (Exception e) {
+            throw Util.sneak(e);
+        }
+    }
+
+    /**
+     * Everything CFR sent to the sinks while analysing one class
+     */
+    static class Entry {
+        final ArrayList<String> sourcePaths = new ArrayList<>();
+        final ArrayList<String> sources = new ArrayList<>();
+        final ArrayList<String> lineMapClasses = new ArrayList<>();
+        final ArrayList<String> lineMapNames = new ArrayList<>();
+        final ArrayList<String> lineMapDescs = new ArrayList<>();
+        final ArrayList<int[]> lineMaps = new ArrayList<>();
+
+        static Entry read(DataInputStream in) throws IOException {
+            Entry r = new Entry();
+            int sourceCount = in.readInt();
+            for (int i = 0; i < sourceCount; i++) {
+                r.sourcePaths.add(in.readUTF());
+                byte[] java = new byte[in.readInt()];
+                in.readFully(java);
+                r.sources.add(new String(java, StandardCharsets.UTF_8));
+            }
+            int lineMapCount = in.readInt();
+            for (int i = 0; i < lineMapCount; i++) {
+                r.lineMapClasses.add(in.readUTF());
+                r.lineMapNames.add(in.readUTF());
+                r.lineMapDescs.add(in.readUTF());
+                int[] lineMap = new int[in.readInt()];
+                for (int j = 0; j < lineMap.length; j++) lineMap[j] = in.readInt();
+                r.lineMaps.add(lineMap);
+            }
+            return r;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(sources.size());
+            for (int i = 0; i < sources.size(); i++) {
+                out.writeUTF(sourcePaths.get(i));
+                byte[] java = sources.get(i).getBytes(StandardCharsets.UTF_8);
+                out.writeInt(java.length);
+                out.write(java);
+            }
+            out.writeInt(lineMaps.size());
+            for (int i = 0; i < lineMaps.size(); i++) {
+                out.writeUTF(lineMapClasses.get(i));
+                out.writeUTF(lineMapNames.get(i));
+                out.writeUTF(lineMapDescs.get(i));
+                int[] lineMap = lineMaps.get(i);
+                out.writeInt(lineMap.length);
+                for (int v : lineMap) out.writeInt(v);
+            }
+        }
+    }
+}
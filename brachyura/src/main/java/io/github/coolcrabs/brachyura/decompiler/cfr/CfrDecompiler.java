@@ -1,14 +1,18 @@
 package io.github.coolcrabs.brachyura.decompiler.cfr;
 
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.benf.cfr.reader.api.CfrDriver;
 import org.benf.cfr.reader.util.CfrVersionInfo;
@@ -17,6 +21,8 @@ import org.tinylog.Logger;
 import io.github.coolcrabs.brachyura.decompiler.BrachyuraDecompiler;
 import io.github.coolcrabs.brachyura.decompiler.DecompileLineNumberTable;
 import io.github.coolcrabs.brachyura.decompiler.LineNumberTableReplacer;
+import io.github.coolcrabs.brachyura.util.JvmUtil;
+import io.github.coolcrabs.brachyura.util.PathUtil;
 import io.github.coolcrabs.brachyura.util.Util;
 import net.fabricmc.mappingio.tree.MappingTree;
 import net.fabricmc.mappingio.tree.MemoryMappingTree;
@@ -24,6 +30,7 @@ import net.fabricmc.mappingio.tree.MemoryMappingTree;
 public class CfrDecompiler extends BrachyuraDecompiler {
     private static final Map<String, String> CFR_OPTIONS = new HashMap<>();
     private static final String VERSION;
+    private static final int SLOWEST_LOGGED = 10;
 
     static {
         CFR_OPTIONS.put("trackbytecodeloc", "true");
@@ -36,6 +43,11 @@ public class CfrDecompiler extends BrachyuraDecompiler {
 
     private final int threadCount;
     private final boolean replaceLineNumbers;
+    private final long memoryBudget;
+    Path classCacheDir = PathUtil.cachePath().resolve("decompiledclasses");
+    boolean shareClassFiles = true;
+    // Classes taken from the class cache in the last run
+    volatile int reused;
     
     public CfrDecompiler() {
         this(false);
@@ -55,8 +67,19 @@ public class CfrDecompiler extends BrachyuraDecompiler {
      * @param replaceLineNumbers should be false for MC because of Mixin bugs :(
      */
     public CfrDecompiler(int threadCount, boolean replaceLineNumbers) {
+        // Bytes, 0 keeps everything CFR parses around and only bounds the class bytes cache by the heap size
+        this(threadCount, replaceLineNumbers, Long.getLong("brachyura.cfrMemoryBudget", 0));
+    }
+
+    /**
+     * Creates a new CFR instance which caches less to fit in a smaller heap
+     * @param memoryBudget rough size in bytes of the class files kept in memory, split between raw and parsed classpath classes,
+     * runs CFR with lomem if positive
+     */
+    public CfrDecompiler(int threadCount, boolean replaceLineNumbers, long memoryBudget) {
         this.threadCount = threadCount;
         this.replaceLineNumbers = replaceLineNumbers;
+        this.memoryBudget = memoryBudget;
     }
 
     @Override
@@ -66,13 +89,26 @@ public class CfrDecompiler extends BrachyuraDecompiler {
             ArrayList<String> classes = new ArrayList<>();
             DecompileLineNumberTable lineNumbers = new DecompileLineNumberTable();
             try (
-                BrachyuraCfrClassFileSource cfrClassFileSource = new BrachyuraCfrClassFileSource(jar, classpath, classes);
+                BrachyuraCfrClassFileSource cfrClassFileSource = new BrachyuraCfrClassFileSource(jar, classpath, classes, memoryBudget > 0 ? memoryBudget / 2 : Runtime.getRuntime().maxMemory() / 8);
                 BrachyuraCfrOutputSinkFactory cfrOutputSinkFactory = new BrachyuraCfrOutputSinkFactory(r.sourcesJar, lineNumbers, replaceLineNumbers);
             ) {
                 CfrDriver.Builder cfrDriver = new CfrDriver.Builder();
-                cfrDriver.withOptions(CFR_OPTIONS);
+                if (memoryBudget > 0) {
+                    HashMap<String, String> options = new HashMap<>(CFR_OPTIONS);
+                    options.put("lomem", "true");
+                    // Parsed classes are weighed by their constant pool
+                    options.put("lomemsharedbytes", String.valueOf(Math.min(memoryBudget / 2, Integer.MAX_VALUE)));
+                    cfrDriver.withOptions(options);
+                } else {
+                    cfrDriver.withOptions(CFR_OPTIONS);
+                }
                 cfrDriver.withClassFileSource(cfrClassFileSource);
                 cfrDriver.withOutputSink(cfrOutputSinkFactory);
+                // Classpath classes are only ever looked at, so parse them once for every thread instead of once per class
+                if (shareClassFiles) {
+                    HashSet<String> mainClasses = new HashSet<>(classes);
+                    cfrDriver.withClassFileSharing(path -> !mainClasses.contains(path));
+                }
                 if (tree != null) {
                     if (namespace >= 0 && tree instanceof MemoryMappingTree) {
                         ((MemoryMappingTree)tree).setIndexByDstNames(true);
@@ -80,20 +116,51 @@ public class CfrDecompiler extends BrachyuraDecompiler {
                     cfrDriver.withJavadocProvider(new MappingTreeJavadocProvider(tree, namespace));
                 }
                 CfrDriver cfrDriver2 = cfrDriver.build();
-                // Split decompilation into multiple threads
-                ExecutorService executor = Executors.newFixedThreadPool(threadCount);
-                for (String className : classes) {
-                    executor.execute(() -> {
+                Files.createDirectories(classCacheDir);
+                CfrClassCache cache = new CfrClassCache(classCacheDir, cfrClassFileSource, classes, getName() + "-" + getVersion() + "-J" + JvmUtil.CURRENT_JAVA_VERSION, tree, namespace);
+                AtomicInteger cached = new AtomicInteger();
+                // Biggest classes first so a huge class picked up late doesn't leave the other threads idle at the end
+                String[] order = classes.toArray(new String[0]);
+                long[] cost = estimateCost(order, cfrClassFileSource);
+                Integer[] indices = new Integer[order.length];
+                for (int i = 0; i < indices.length; i++) indices[i] = i;
+                Arrays.sort(indices, (a, b) -> Long.compare(cost[b], cost[a]));
+                long[] durations = new long[order.length];
+                ForkJoinPool pool = new ForkJoinPool(threadCount);
+                for (int index : indices) {
+                    String className = order[index];
+                    pool.execute(() -> {
+                        long start = System.nanoTime();
                         try {
-                            cfrDriver2.analyse(Collections.singletonList(className));
+                            String key = cache.key(className);
+                            CfrClassCache.Entry entry = cache.read(key);
+                            if (entry != null) {
+                                cfrOutputSinkFactory.replay(entry);
+                                cached.incrementAndGet();
+                                return;
+                            }
+                            entry = new CfrClassCache.Entry();
+                            cfrOutputSinkFactory.recording.set(entry);
+                            try {
+                                cfrDriver2.analyse(Collections.singletonList(className));
+                            } finally {
+                                cfrOutputSinkFactory.recording.remove();
+                            }
+                            cache.write(key, entry);
                         } catch (Exception e) {
                             Logger.error("Exception Decompiling " + className);
                             Logger.error(e);
+                        } finally {
+                            durations[index] = System.nanoTime() - start;
                         }
                     });
                 }
-                executor.shutdown();
-                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+                pool.shutdown();
+                pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+                logSlowest(order, durations);
+                reused = cached.get();
+                Logger.info("(CFR) Reused {} of {} decompiled classes", reused, classes.size());
+                CfrClassCache.prune(classCacheDir);
                 Logger.info("(CFR) Linemapping {}", jar.getFileName());
                 LineNumberTableReplacer.replaceLineNumbers(jar, r.jar, lineNumbers);
             }
@@ -102,6 +169,39 @@ public class CfrDecompiler extends BrachyuraDecompiler {
         }
     }
 
+    /**
+     * Class file size including nested classes, CFR decompiles those along with the outer class
+     */
+    static long[] estimateCost(String[] classes, BrachyuraCfrClassFileSource source) {
+        TreeMap<String, Long> sizes = new TreeMap<>();
+        for (String c : classes) sizes.put(c, source.getMainClassSize(c));
+        long[] r = new long[classes.length];
+        for (int i = 0; i < classes.length; i++) {
+            String prefix = classes[i].substring(0, classes[i].length() - ".class".length()) + "$";
+            long cost = sizes.get(classes[i]);
+            for (long nested : sizes.subMap(prefix, prefix + Character.MAX_VALUE).values()) cost += nested;
+            r[i] = cost;
+        }
+        return r;
+    }
+
+    static void logSlowest(String[] classes, long[] durations) {
+        Integer[] indices = new Integer[classes.length];
+        for (int i = 0; i < indices.length; i++) indices[i] = i;
+        Arrays.sort(indices, (a, b) -> Long.compare(durations[b], durations[a]));
+        StringBuilder slowest = new StringBuilder();
+        for (int i = 0; i < Math.min(SLOWEST_LOGGED, indices.length); i++) {
+            if (i > 0) slowest.append(", ");
+            slowest.append(classes[indices[i]]).append(' ').append(durations[indices[i]] / 1000000).append("ms");
+        }
+        Logger.info("(CFR) Slowest classes: {}", slowest);
+        if (Boolean.getBoolean("brachyura.debugDecompileTimes")) {
+            for (int i = 0; i < classes.length; i++) {
+                Logger.info("(CFR) {} took {}ms", classes[i], durations[i] / 1000000);
+            }
+        }
+    }
+
     @Override
     public String getName() {
         return "BrachyuraCFR" + (replaceLineNumbers ? "-replace" : "-remap");
@@ -0,0 +1,7 @@
+package io.github.coolcrabs.brachyura.exception;
+
+public class OfflineException extends RuntimeException {
+    public OfflineException(String url) {
+        super("Unable to fetch " + url + " in offline mode");
+    }
+}
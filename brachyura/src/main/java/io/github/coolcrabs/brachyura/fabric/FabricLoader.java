@@ -2,6 +2,7 @@ package io.github.coolcrabs.brachyura.fabric;
 
 import java.io.Reader;
 import java.nio.file.Files;
+import java.util.List;
 
 import com.google.gson.Gson;
 
@@ -9,6 +10,7 @@ import io.github.coolcrabs.brachyura.dependency.FileDependency;
 import io.github.coolcrabs.brachyura.dependency.JavaJarDependency;
 import io.github.coolcrabs.brachyura.maven.Maven;
 import io.github.coolcrabs.brachyura.maven.MavenId;
+import io.github.coolcrabs.brachyura.maven.MavenResolver;
 import io.github.coolcrabs.brachyura.util.Util;
 
 public class FabricLoader {
@@ -25,21 +27,16 @@ public class FabricLoader {
             try (Reader jsonReader = Files.newBufferedReader(jsonFile.file)) {
                 floaderMeta = new Gson().fromJson(jsonReader, FloaderMeta.class);
             }
-            clientDeps = new JavaJarDependency[floaderMeta.libraries.client.length];
-            for (int i = 0; i < floaderMeta.libraries.client.length; i++) {
-                FloaderMeta.Dep dep = floaderMeta.libraries.client[i];
-                clientDeps[i] = Maven.getMavenJarDep(dep.url, new MavenId(dep.name));
-            }
-            commonDeps = new JavaJarDependency[floaderMeta.libraries.common.length];
-            for (int i = 0; i < floaderMeta.libraries.common.length; i++) {
-                FloaderMeta.Dep dep = floaderMeta.libraries.common[i];
-                commonDeps[i] = Maven.getMavenJarDep(dep.url, new MavenId(dep.name));
-            }
-            serverDeps = new JavaJarDependency[floaderMeta.libraries.server.length];
-            for (int i = 0; i < floaderMeta.libraries.server.length; i++) {
-                FloaderMeta.Dep dep = floaderMeta.libraries.server[i];
-                serverDeps[i] = Maven.getMavenJarDep(dep.url, new MavenId(dep.name));
-            }
+            MavenResolver resolver = new MavenResolver();
+            for (FloaderMeta.Dep dep : floaderMeta.libraries.client) resolver.add(dep.url, new MavenId(dep.name));
+            for (FloaderMeta.Dep dep : floaderMeta.libraries.common) resolver.add(dep.url, new MavenId(dep.name));
+            for (FloaderMeta.Dep dep : floaderMeta.libraries.server) resolver.add(dep.url, new MavenId(dep.name));
+            List<JavaJarDependency> deps = resolver.resolve();
+            int client = floaderMeta.libraries.client.length;
+            int common = floaderMeta.libraries.common.length;
+            clientDeps = deps.subList(0, client).toArray(new JavaJarDependency[0]);
+            commonDeps = deps.subList(client, client + common).toArray(new JavaJarDependency[0]);
+            serverDeps = deps.subList(client + common, deps.size()).toArray(new JavaJarDependency[0]);
         } catch (Exception e) {
             throw Util.sneak(e);
         }
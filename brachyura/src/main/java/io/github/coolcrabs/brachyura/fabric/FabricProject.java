@@ -8,6 +8,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -26,8 +28,10 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
@@ -55,12 +59,15 @@ import io.github.coolcrabs.brachyura.ide.IdeProject.RunConfig.RunConfigBuilder;
 import io.github.coolcrabs.brachyura.mappings.MappingHasher;
 import io.github.coolcrabs.brachyura.mappings.MappingHelper;
 import io.github.coolcrabs.brachyura.mappings.Namespaces;
+import io.github.coolcrabs.brachyura.mappings.tinyremapper.IncrementalRemapper;
 import io.github.coolcrabs.brachyura.mappings.tinyremapper.Jsr2JetbrainsMappingProvider;
 import io.github.coolcrabs.brachyura.mappings.tinyremapper.MappingTreeMappingProvider;
 import io.github.coolcrabs.brachyura.mappings.tinyremapper.RemapperProcessor;
 import io.github.coolcrabs.brachyura.mappings.tinyremapper.TinyRemapperHelper;
 import io.github.coolcrabs.brachyura.maven.Maven;
 import io.github.coolcrabs.brachyura.maven.MavenId;
+import io.github.coolcrabs.brachyura.maven.MavenResolver;
+import io.github.coolcrabs.brachyura.maven.PomResolver;
 import io.github.coolcrabs.brachyura.minecraft.Minecraft;
 import io.github.coolcrabs.brachyura.minecraft.VersionMeta;
 import io.github.coolcrabs.brachyura.mixin.BrachyuraMixinCompileExtensions;
@@ -70,13 +77,16 @@ import io.github.coolcrabs.brachyura.processing.ProcessingSink;
 import io.github.coolcrabs.brachyura.processing.ProcessingSource;
 import io.github.coolcrabs.brachyura.processing.Processor;
 import io.github.coolcrabs.brachyura.processing.ProcessorChain;
+import io.github.coolcrabs.brachyura.processing.StreamingProcessor;
 import io.github.coolcrabs.brachyura.processing.sinks.AtomicZipProcessingSink;
+import io.github.coolcrabs.brachyura.processing.sinks.ParallelZipProcessingSink;
 import io.github.coolcrabs.brachyura.processing.sinks.ZipProcessingSink;
 import io.github.coolcrabs.brachyura.processing.sources.DirectoryProcessingSource;
 import io.github.coolcrabs.brachyura.processing.sources.ProcessingSponge;
 import io.github.coolcrabs.brachyura.processing.sources.ZipProcessingSource;
 import io.github.coolcrabs.brachyura.project.Task;
 import io.github.coolcrabs.brachyura.project.java.BaseJavaProject;
+import io.github.coolcrabs.brachyura.project.java.BuildCache;
 import io.github.coolcrabs.brachyura.project.java.SimpleJavaProject;
 import io.github.coolcrabs.brachyura.util.AtomicDirectory;
 import io.github.coolcrabs.brachyura.util.AtomicFile;
@@ -110,6 +120,7 @@ public abstract class FabricProject extends BaseJavaProject {
     public abstract String getMcVersion();
     public final Lazy<MappingTree> mappings = new Lazy<>(this::createMappings);
     public abstract MappingTree createMappings();
+    public final Lazy<String> mappingsHash = new Lazy<>(() -> MappingHasher.hashSha256(mappings.get()));
     public abstract FabricLoader getLoader();
     public String getMavenGroup() {
         return null;
@@ -172,6 +183,15 @@ public abstract class FabricProject extends BaseJavaProject {
             add(Maven.getMavenJarDep(repo, id), flags);
         }
 
+        /**
+         * Adds id and everything its pom depends on at runtime
+         */
+        public void addMavenTransitive(String repo, MavenId id, ModDependencyFlag... flags) {
+            for (JavaJarDependency dep : new PomResolver(repo).resolve(id)) {
+                add(dep, flags);
+            }
+        }
+
         public void add(JavaJarDependency jarDependency, ModDependencyFlag... flags) {
             if (flags.length == 0) throw new UnsupportedOperationException("Must have atleast one dependency flag");
             EnumSet<ModDependencyFlag> flags2 = EnumSet.of(flags[0], flags); // Bruh
@@ -313,7 +333,7 @@ public abstract class FabricProject extends BaseJavaProject {
     public Path writeMappings4FabricStuff() {
         try {
             MappingTree mappingTree = mappings.get();
-            String hash = MappingHasher.hashSha256(mappingTree);
+            String hash = mappingsHash.get();
             Path result = getLocalBrachyuraPath().resolve("mappings-cache").resolve(hash).resolve("mappings").resolve("mappings.tiny"); // floader hardcoded path as it asumes you are using a yarn jar as mapping root of truth
             if (!Files.isRegularFile(result)) {
                 try (AtomicFile atomicFile = new AtomicFile(result)) {
@@ -368,47 +388,151 @@ public abstract class FabricProject extends BaseJavaProject {
     public JavaJarDependency build() {
         try {
             String mixinOut = "mixinmapout.tiny";
-            JavaCompilationResult compilation = new JavaCompilation()
-                .addOption(JvmUtil.compileArgs(JvmUtil.CURRENT_JAVA_VERSION, getJavaVersion()))
-                .addOption(
-                    "-AbrachyuraInMap=" + writeMappings4FabricStuff().toAbsolutePath().toString(),
-                    "-AbrachyuraOutMap=" + mixinOut, // Remaps shadows etc
-                    "-AbrachyuraInNamespace=" + Namespaces.NAMED,
-                    "-AbrachyuraOutNamespace=" + Namespaces.INTERMEDIARY,
-                    "-AoutRefMapFile=" + getModId() + "-refmap.json", // Remaps annotations
-                    "-AdefaultObfuscationEnv=brachyura"
-                )
-                .addClasspath(getCompileDependencies())
-                .addSourceDir(getSrcDir())
-                .compile();
-            ProcessingSponge compilationOutput = new ProcessingSponge();
-            compilation.getInputs(compilationOutput);
-            MemoryMappingTree compmappings = new MemoryMappingTree(true);
-            mappings.get().accept(new MappingSourceNsSwitch(compmappings, Namespaces.NAMED));
-            ProcessingEntry mixinMappings = compilationOutput.popEntry(mixinOut);
-            if (mixinMappings != null) {
-                try (Reader reader = new InputStreamReader(mixinMappings.in.get())) {
-                    // For easier debugging a seperate tree is made here
-                    MemoryMappingTree mixinMappingsTree = new MemoryMappingTree();
-                    MappingReader.read(reader, MappingFormat.TINY_2, mixinMappingsTree);
-                    mixinMappingsTree.accept(compmappings);
+            String refmap = getModId() + "-refmap.json";
+            List<String> compileOptions = new ArrayList<>();
+            Collections.addAll(compileOptions, JvmUtil.compileArgs(JvmUtil.CURRENT_JAVA_VERSION, getJavaVersion()));
+            Collections.addAll(compileOptions,
+                "-AbrachyuraInMap=" + writeMappings4FabricStuff().toAbsolutePath().toString(),
+                "-AbrachyuraOutMap=" + mixinOut, // Remaps shadows etc
+                "-AbrachyuraInNamespace=" + Namespaces.NAMED,
+                "-AbrachyuraOutNamespace=" + Namespaces.INTERMEDIARY,
+                "-AoutRefMapFile=" + refmap, // Remaps annotations
+                "-AdefaultObfuscationEnv=brachyura"
+            );
+            List<Path> compileDependencies = getCompileDependencies();
+            BuildCache cache = new BuildCache(getLocalBrachyuraPath().resolve("buildcache"));
+            // Mappings are covered by the hashed path in -AbrachyuraInMap
+            String compileKey = BuildCache.key()
+                .add(String.valueOf(JvmUtil.CURRENT_JAVA_VERSION))
+                .add(compileOptions)
+                .addFiles(compileDependencies)
+                .addDir(getSrcDir())
+                .get();
+            List<Path> jij = new ArrayList<>();
+            for (ModDependency modDependency : modDependencies.get()) {
+                if (modDependency.flags.contains(ModDependencyFlag.JIJ)) jij.add(modDependency.jarDependency.jar);
+            }
+            String buildKey = BuildCache.key()
+                .add(compileKey)
+                .addFiles(jij)
+                .addDir(getResourcesDir())
+                .addClass(getClass())
+                .get();
+            if (cache.isUpToDate(getBuildJarPath(), buildKey)) {
+                Logger.info("{} is up to date", getBuildJarPath().getFileName());
+                return new JavaJarDependency(getBuildJarPath(), null, getId());
+            }
+            ProcessingSource classes = cache.get(compileKey);
+            if (classes == null) {
+                // The mixin ap only sees recompiled files, so its outputs are merged with the previous ones
+                JavaCompilationResult compilation = new JavaCompilation()
+                    .addOption(compileOptions.toArray(new String[compileOptions.size()]))
+                    .addClasspath(compileDependencies)
+                    .addSourceDir(getSrcDir())
+                    .mergeOutput(refmap, FabricProject::mergeRefmap)
+                    .mergeOutput(mixinOut, FabricProject::mergeMixinMappings)
+                    .incremental(getBuildDir().resolve("incremental"))
+                    .compile();
+                ProcessingSponge compilationOutput = new ProcessingSponge();
+                compilation.getInputs(compilationOutput);
+                MemoryMappingTree compmappings = new MemoryMappingTree(true);
+                mappings.get().accept(new MappingSourceNsSwitch(compmappings, Namespaces.NAMED));
+                ProcessingEntry mixinMappings = compilationOutput.popEntry(mixinOut);
+                String mixinMappingsString = "";
+                if (mixinMappings != null) {
+                    try (InputStream in = mixinMappings.in.get()) {
+                        mixinMappingsString = new String(StreamUtil.readFullyAsBytes(in), StandardCharsets.UTF_8);
+                    }
+                    try (Reader reader = new StringReader(mixinMappingsString)) {
+                        // For easier debugging a seperate tree is made here
+                        MemoryMappingTree mixinMappingsTree = new MemoryMappingTree();
+                        MappingReader.read(reader, MappingFormat.TINY_2, mixinMappingsTree);
+                        mixinMappingsTree.accept(compmappings);
+                    }
                 }
+                // Mappings are covered by the hashed path in -AbrachyuraInMap, sources aren't part of it so edits only remap what they affect
+                String remapKey = BuildCache.key()
+                    .add(compileOptions)
+                    .addFiles(compileDependencies)
+                    .add(mixinMappingsString)
+                    .get();
+                ProcessingSource remapped = new IncrementalRemapper(getBuildDir().resolve("incrementalremap")).remap(
+                    compilationOutput,
+                    remapKey,
+                    TinyRemapper.newRemapper().withMappings(new MappingTreeMappingProvider(compmappings, Namespaces.NAMED, Namespaces.INTERMEDIARY)),
+                    compileDependencies
+                );
+                classes = cache.put(compileKey, remapped);
             }
-            ProcessingSponge trout = new ProcessingSponge();
-            new ProcessorChain(
-                new RemapperProcessor(TinyRemapper.newRemapper().withMappings(new MappingTreeMappingProvider(compmappings, Namespaces.NAMED, Namespaces.INTERMEDIARY)), getCompileDependencies())
-            ).apply(trout, compilationOutput);
             try (AtomicZipProcessingSink out = new AtomicZipProcessingSink(getBuildJarPath())) {
                 resourcesProcessingChain().apply(out, new DirectoryProcessingSource(getResourcesDir()));
-                trout.getInputs(out);
+                classes.getInputs(out);
                 out.commit();
             }
+            cache.markUpToDate(getBuildJarPath(), buildKey);
             return new JavaJarDependency(getBuildJarPath(), null, getId());
         } catch (Exception e) {
             throw Util.sneak(e);
         }
     }
 
+    /**
+     * Replaces the refmap entries of recompiled mixins with the ones the mixin ap just wrote
+     */
+    static byte[] mergeRefmap(byte[] previous, byte[] current, Set<String> recompiled) {
+        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+        JsonObject result = gson.fromJson(new String(previous, StandardCharsets.UTF_8), JsonObject.class);
+        JsonObject currentRefmap = gson.fromJson(new String(current, StandardCharsets.UTF_8), JsonObject.class);
+        mergeRefmapMixins(refmapChild(result, "mappings"), currentRefmap.get("mappings"), recompiled);
+        JsonObject data = refmapChild(result, "data");
+        for (Map.Entry<String, JsonElement> e : data.entrySet()) {
+            if (e.getValue().isJsonObject()) mergeRefmapMixins(e.getValue().getAsJsonObject(), null, recompiled);
+        }
+        JsonElement currentData = currentRefmap.get("data");
+        if (currentData != null && currentData.isJsonObject()) {
+            for (Map.Entry<String, JsonElement> e : currentData.getAsJsonObject().entrySet()) {
+                mergeRefmapMixins(refmapChild(data, e.getKey()), e.getValue(), recompiled);
+            }
+        }
+        return gson.toJson(result).getBytes(StandardCharsets.UTF_8);
+    }
+
+    static JsonObject refmapChild(JsonObject parent, String name) {
+        JsonElement r = parent.get(name);
+        if (r == null || !r.isJsonObject()) {
+            r = new JsonObject();
+            parent.add(name, r);
+        }
+        return r.getAsJsonObject();
+    }
+
+    // Mixins are keyed by internal name
+    static void mergeRefmapMixins(JsonObject previous, @Nullable JsonElement current, Set<String> recompiled) {
+        previous.entrySet().removeIf(e -> recompiled.contains(e.getKey().replace('/', '.')));
+        if (current != null && current.isJsonObject()) {
+            for (Map.Entry<String, JsonElement> e : current.getAsJsonObject().entrySet()) {
+                previous.add(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    /**
+     * Union of both, entries of removed mixins are kept but they only map minecraft members the same way the mappings do
+     */
+    static byte[] mergeMixinMappings(byte[] previous, byte[] current, Set<String> recompiled) throws IOException {
+        MemoryMappingTree tree = new MemoryMappingTree();
+        for (byte[] b : new byte[][] {previous, current}) {
+            try (Reader reader = new InputStreamReader(new ByteArrayInputStream(b), StandardCharsets.UTF_8)) {
+                MappingReader.read(reader, MappingFormat.TINY_2, tree);
+            }
+        }
+        StringWriter w = new StringWriter();
+        try (Tiny2Writer tiny2Writer = new Tiny2Writer(w, false)) {
+            tree.accept(tiny2Writer);
+        }
+        return w.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
     public enum FMJRefmapApplier implements Processor {
         INSTANCE;
 
@@ -456,7 +580,7 @@ public abstract class FabricProject extends BaseJavaProject {
         }
     }
 
-    public static class FmjJijApplier implements Processor {
+    public static class FmjJijApplier implements StreamingProcessor {
         final List<Path> jij;
 
         public FmjJijApplier(List<Path> jij) {
@@ -464,39 +588,37 @@ public abstract class FabricProject extends BaseJavaProject {
         }
 
         @Override
-        public void process(Collection<ProcessingEntry> inputs, ProcessingSink sink) throws IOException {
-            for (ProcessingEntry e : inputs) {
-                if (!jij.isEmpty() && "fabric.mod.json".equals(e.id.path)) {
-                    Gson gson = new GsonBuilder().setPrettyPrinting().setLenient().create();
-                    JsonObject fabricModJson;
-                    try (BufferedReader reader = new BufferedReader(new InputStreamReader(e.in.get(), StandardCharsets.UTF_8))) {
-                        fabricModJson = gson.fromJson(reader, JsonObject.class);
-                    }
-                    JsonArray jars = new JsonArray();
-                    fabricModJson.add("jars", jars);
-                    List<String> used = new ArrayList<>();
-                    for (Path jar : jij) {
-                        String path = "META-INF/jars/" + jar.getFileName();
-                        int a = 0;
-                        while (used.contains(path)) {
-                            path = "META-INF/jars/" + a + jar.getFileName();
-                            a++;
-                        }
-                        JsonObject o = new JsonObject();
-                        o.addProperty("file", path);
-                        jars.add(o);
-                        used.add(path);
-                        sink.sink(() -> PathUtil.inputStream(jar), new ProcessingId(path, e.id.source));
+        public void process(ProcessingEntry e, ProcessingSink sink) throws IOException {
+            if (!jij.isEmpty() && "fabric.mod.json".equals(e.id.path)) {
+                Gson gson = new GsonBuilder().setPrettyPrinting().setLenient().create();
+                JsonObject fabricModJson;
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(e.in.get(), StandardCharsets.UTF_8))) {
+                    fabricModJson = gson.fromJson(reader, JsonObject.class);
+                }
+                JsonArray jars = new JsonArray();
+                fabricModJson.add("jars", jars);
+                List<String> used = new ArrayList<>();
+                for (Path jar : jij) {
+                    String path = "META-INF/jars/" + jar.getFileName();
+                    int a = 0;
+                    while (used.contains(path)) {
+                        path = "META-INF/jars/" + a + jar.getFileName();
+                        a++;
                     }
-                    sink.sink(() -> GsonUtil.toIs(fabricModJson, gson), e.id);
-                } else {
-                    sink.sink(e.in, e.id);
+                    JsonObject o = new JsonObject();
+                    o.addProperty("file", path);
+                    jars.add(o);
+                    used.add(path);
+                    sink.sink(() -> PathUtil.inputStream(jar), new ProcessingId(path, e.id.source));
                 }
+                sink.sink(() -> GsonUtil.toIs(fabricModJson, gson), e.id);
+            } else {
+                sink.sink(e.in, e.id);
             }
         }
     }
 
-    public static class AccessWidenerRemapper implements Processor {
+    public static class AccessWidenerRemapper implements StreamingProcessor {
         final MappingTree mappings;
         final int namespace;
 
@@ -506,44 +628,43 @@ public abstract class FabricProject extends BaseJavaProject {
         }
 
         @Override
-        public void process(Collection<ProcessingEntry> inputs, ProcessingSink sink) throws IOException {
-            for (ProcessingEntry entry : inputs) {
-                if (entry.id.path.endsWith(".accesswidener")) {
-                    try (BufferedReader r = new BufferedReader(new InputStreamReader(entry.in.get()))) {
-                        // TODO this is dumb
-                        r.mark(20);
-                        int v = AccessWidenerReader.readVersion(r);
-                        r.reset();
-                        AccessWidenerWriter w = new AccessWidenerWriter(v);
-                        AccessWidenerNamespaceChanger nc = new AccessWidenerNamespaceChanger(w, mappings, namespace, entry.id.path);
-                        new AccessWidenerReader(nc).read(r);
-                        sink.sink(() -> new ByteArrayInputStream(w.write()), entry.id);
-                    }
-                } else {
-                    sink.sink(entry.in, entry.id);
+        public void process(ProcessingEntry entry, ProcessingSink sink) throws IOException {
+            if (entry.id.path.endsWith(".accesswidener")) {
+                try (BufferedReader r = new BufferedReader(new InputStreamReader(entry.in.get()))) {
+                    // TODO this is dumb
+                    r.mark(20);
+                    int v = AccessWidenerReader.readVersion(r);
+                    r.reset();
+                    AccessWidenerWriter w = new AccessWidenerWriter(v);
+                    AccessWidenerNamespaceChanger nc = new AccessWidenerNamespaceChanger(w, mappings, namespace, entry.id.path);
+                    new AccessWidenerReader(nc).read(r);
+                    sink.sink(() -> new ByteArrayInputStream(w.write()), entry.id);
                 }
+            } else {
+                sink.sink(entry.in, entry.id);
             }
-            
         }
     }
 
     // https://github.com/FabricMC/fabric-loom/blob/dev/0.11/src/main/java/net/fabricmc/loom/build/nesting/IncludedJarFactory.java
-    public static class FmjGenerator implements Processor {
+    public static class FmjGenerator implements StreamingProcessor {
         final Map<ProcessingSource, MavenId> map;
+        final HashSet<ProcessingSource> fmj = new HashSet<>();
 
         public FmjGenerator(Map<ProcessingSource, MavenId> map) {
             this.map = map;
         }
 
         @Override
-        public void process(Collection<ProcessingEntry> inputs, ProcessingSink sink) throws IOException {
-            HashSet<ProcessingSource> fmj = new HashSet<>();
-            for (ProcessingEntry e : inputs) {
-                if ("fabric.mod.json".equals(e.id.path)) {
-                    fmj.add(e.id.source);
-                }
-                sink.sink(e.in, e.id);
+        public void process(ProcessingEntry e, ProcessingSink sink) throws IOException {
+            if ("fabric.mod.json".equals(e.id.path)) {
+                fmj.add(e.id.source);
             }
+            sink.sink(e.in, e.id);
+        }
+
+        @Override
+        public void finish(ProcessingSink sink) throws IOException {
             for (Map.Entry<ProcessingSource, MavenId> e : map.entrySet()) {
                 if (!fmj.contains(e.getKey())) {
                     Logger.info("Generating fmj for {}", e.getValue());
@@ -565,6 +686,7 @@ public abstract class FabricProject extends BaseJavaProject {
                     sink.sink(() -> GsonUtil.toIs(jsonObject, gson), new ProcessingId("fabric.mod.json", e.getKey()));
                 }
             }
+            fmj.clear();
         }
     }
 
@@ -639,8 +761,12 @@ public abstract class FabricProject extends BaseJavaProject {
                 result.add((JavaJarDependency) dependency);
             }
         }
-        result.add(Maven.getMavenJarDep(FabricMaven.URL, FabricMaven.devLaunchInjector("0.2.1+build.8")));
-        result.add(Maven.getMavenJarDep(Maven.MAVEN_CENTRAL, new MavenId("net.minecrell", "terminalconsoleappender", "1.2.0")));
+        result.addAll(
+            new MavenResolver()
+                .add(FabricMaven.URL, FabricMaven.devLaunchInjector("0.2.1+build.8"))
+                .add(Maven.MAVEN_CENTRAL, new MavenId("net.minecrell", "terminalconsoleappender", "1.2.0"))
+                .resolve()
+        );
         result.add(decompiledJar.get());
         for (ModDependency d : remappedModDependencies.get()) {
             if (d.flags.contains(ModDependencyFlag.RUNTIME)) result.add(d.jarDependency);
@@ -667,47 +793,70 @@ public abstract class FabricProject extends BaseJavaProject {
         class RemapInfo {
             ModDependency source;
             ModDependency target;
+            Path dir;
+            AtomicDirectory output;
         }
         try {
             List<ModDependency> unmapped = modDependencies.get();
             if (unmapped == null || unmapped.isEmpty()) return Collections.emptyList();
-            List<RemapInfo> remapinfo = new ArrayList<>(unmapped.size());
-            List<ModDependency> remapped = new ArrayList<>(unmapped.size());
-            MessageDigest dephasher = MessageDigestUtil.messageDigest(MessageDigestUtil.SHA256);
-            dephasher.update((byte) 5); // Bump this if the logic changes
-            for (ModDependency dep : unmapped) {
-                hashDep(dephasher, dep);
-            }
+            // Everything a remapped mod depends on besides the mod itself
+            MessageDigest commonhasher = MessageDigestUtil.messageDigest(MessageDigestUtil.SHA256);
+            commonhasher.update((byte) 7); // Bump this if the logic changes
             for (JavaJarDependency dep : mcClasspath.get()) {
-                hashDep(dephasher, dep);
+                hashDep(commonhasher, dep);
             }
-            dephasher.update(namedJar.get().mappingHash.getBytes(StandardCharsets.UTF_8));
-            dephasher.update(intermediaryjar.get().mappingHash.getBytes(StandardCharsets.UTF_8));
-            MessageDigestUtil.update(dephasher, TinyRemapperHelper.VERSION);
-            String dephash = MessageDigestUtil.toHexHash(dephasher.digest());
+            commonhasher.update(namedJar.get().mappingHash.getBytes(StandardCharsets.UTF_8));
+            commonhasher.update(intermediaryjar.get().mappingHash.getBytes(StandardCharsets.UTF_8));
+            MessageDigestUtil.update(commonhasher, TinyRemapperHelper.VERSION);
+            byte[] commonhash = commonhasher.digest();
             Path depdir = getLocalBrachyuraPath().resolve("deps");
-            Path resultdir = depdir.resolve(dephash);
+            Path indexdir = getLocalBrachyuraPath().resolve("depindex");
+            List<byte[]> modhashes = new ArrayList<>(unmapped.size());
+            List<ModDependencyIndex> indices = new ArrayList<>(unmapped.size());
+            HashSet<String> liveIndices = new HashSet<>();
             for (ModDependency u : unmapped) {
+                MessageDigest modhasher = MessageDigestUtil.messageDigest(MessageDigestUtil.SHA256);
+                hashDep(modhasher, u);
+                byte[] modhash = modhasher.digest();
+                modhashes.add(modhash);
+                String indexName = MessageDigestUtil.toHexHash(modhash) + ".json";
+                liveIndices.add(indexName);
+                indices.add(ModDependencyIndex.cached(indexdir.resolve(indexName), u.jarDependency.jar));
+            }
+            // Other mods are only in a key if the mod references them, so bumping one mod doesn't remap unrelated ones
+            String[] dephashes = ModDependencyIndex.keys(commonhash, modhashes, indices);
+            List<RemapInfo> remapinfo = new ArrayList<>(unmapped.size());
+            List<RemapInfo> stale = new ArrayList<>();
+            List<ModDependency> remapped = new ArrayList<>(unmapped.size());
+            HashSet<String> live = new HashSet<>();
+            for (int i = 0; i < unmapped.size(); i++) {
+                ModDependency u = unmapped.get(i);
+                String dephash = dephashes[i];
                 RemapInfo ri = new RemapInfo();
                 remapinfo.add(ri);
                 ri.source = u;
+                ri.dir = depdir.resolve(dephash);
                 ri.target = new ModDependency(
                     new JavaJarDependency(
-                        resultdir.resolve(
+                        ri.dir.resolve(
                             u.jarDependency.jar.getFileName().toString()
                         ),
-                        u.jarDependency.sourcesJar == null ? null : resultdir.resolve(u.jarDependency.jar.getFileName().toString().replace(".jar", "-sources.jar")),
+                        u.jarDependency.sourcesJar == null ? null : ri.dir.resolve(u.jarDependency.jar.getFileName().toString().replace(".jar", "-sources.jar")),
                         u.jarDependency.mavenId
                     ),
                     u.flags
                 );
                 remapped.add(ri.target);
+                if (live.add(dephash) && !Files.isDirectory(ri.dir)) stale.add(ri);
             }
-            if (!Files.isDirectory(resultdir)) {
-                if (Files.isDirectory(depdir)) {
-                    PathUtil.deleteDirectoryChildren(depdir);
-                }
-                try (AtomicDirectory a = new AtomicDirectory(resultdir)) {
+            if (!stale.isEmpty()) {
+                try (CloseableArrayList outputs = new CloseableArrayList()) {
+                    HashSet<Path> staleJars = new HashSet<>();
+                    for (RemapInfo ri : stale) {
+                        ri.output = new AtomicDirectory(ri.dir);
+                        outputs.add(ri.output);
+                        staleJars.add(ri.source.jarDependency.jar);
+                    }
                     TinyRemapper.Builder tr = TinyRemapper.newRemapper()
                         .withMappings(new MappingTreeMappingProvider(mappings.get(), Namespaces.INTERMEDIARY, Namespaces.NAMED))
                         .renameInvalidLocals(false);
@@ -716,18 +865,22 @@ public abstract class FabricProject extends BaseJavaProject {
                     for (JavaJarDependency dep : mcClasspath.get()) {
                         cp.add(dep.jar);
                     }
+                    // Up to date mods are still needed for the class hierarchy of the stale ones
+                    for (RemapInfo ri : remapinfo) {
+                        if (!staleJars.contains(ri.source.jarDependency.jar)) cp.add(ri.source.jarDependency.jar);
+                    }
                     HashMap<ProcessingSource, ZipProcessingSink> b = new HashMap<>();
                     HashMap<ProcessingSource, MavenId> c = new HashMap<>();
                     try (CloseableArrayList toClose = new CloseableArrayList()) {
-                        for (RemapInfo ri : remapinfo) {
+                        for (RemapInfo ri : stale) {
                             ZipProcessingSource s = new ZipProcessingSource(ri.source.jarDependency.jar);
                             toClose.add(s);
-                            ZipProcessingSink si = new ZipProcessingSink(a.tempPath.resolve(ri.target.jarDependency.jar.getFileName()));
+                            ZipProcessingSink si = new ZipProcessingSink(ri.output.tempPath.resolve(ri.target.jarDependency.jar.getFileName()));
                             toClose.add(si);
                             b.put(s, si);
                             c.put(s, ri.source.jarDependency.mavenId);
                         }
-                        Logger.info("Remapping {} mods", b.size());
+                        Logger.info("Remapping {} of {} mods", b.size(), unmapped.size());
                         new ProcessorChain(
                             new RemapperProcessor(tr, cp),
                             new AccessWidenerRemapper(mappings.get(), mappings.get().getNamespaceId(Namespaces.NAMED)),
@@ -737,22 +890,68 @@ public abstract class FabricProject extends BaseJavaProject {
                             b.keySet()
                         );
                     }
-                    FindReplaceSourceRemapper sourceRemapper = new FindReplaceSourceRemapper(mappings.get(), mappings.get().getNamespaceId(Namespaces.INTERMEDIARY), mappings.get().getNamespaceId(Namespaces.NAMED));
-                    for (ModDependency u : unmapped) { 
-                        if (u.jarDependency.sourcesJar != null) {
-                            Path target = a.tempPath.resolve(u.jarDependency.jar.getFileName().toString().replace(".jar", "-sources.jar"));
-                            sourceRemapper.remapSourcesJar(u.jarDependency.sourcesJar, target);
+                    ArrayList<Path[]> sourcesJars = new ArrayList<>();
+                    for (RemapInfo ri : stale) {
+                        if (ri.source.jarDependency.sourcesJar != null) {
+                            sourcesJars.add(new Path[] {ri.source.jarDependency.sourcesJar, ri.output.tempPath.resolve(ri.target.jarDependency.sourcesJar.getFileName())});
                         }
                     }
-                    a.commit();
+                    remapSourcesJars(sourcesJars);
+                    for (RemapInfo ri : stale) {
+                        ri.output.commit();
+                    }
                 }
             }
+            // Drop remapped mods that are no longer depended on
+            deleteUnused(depdir, live);
+            deleteUnused(indexdir, liveIndices);
             return remapped;
         } catch (Exception e) {
             throw Util.sneak(e);
         }
     }
 
+    /**
+     * Best effort, a file can still be open (which blocks deleting it on windows) and is retried next time
+     */
+    static void deleteUnused(Path dir, Set<String> live) {
+        if (!Files.isDirectory(dir)) return;
+        try (Stream<Path> s = Files.list(dir)) {
+            for (Path p : (Iterable<Path>) s::iterator) {
+                if (live.contains(p.getFileName().toString())) continue;
+                try {
+                    if (Files.isDirectory(p)) {
+                        PathUtil.deleteDirectory(p);
+                    } else {
+                        Files.delete(p);
+                    }
+                } catch (Exception e) {
+                    Logger.warn("Unable to delete unused {}", p);
+                    Logger.warn(e);
+                }
+            }
+        } catch (IOException e) {
+            Logger.warn("Unable to list {}", dir);
+            Logger.warn(e);
+        }
+    }
+
+    /**
+     * Remaps each {source, target} pair, the files of every jar are spread over one shared pool
+     */
+    void remapSourcesJars(List<Path[]> jars) {
+        if (jars.isEmpty()) return;
+        FindReplaceSourceRemapper sourceRemapper = new FindReplaceSourceRemapper(mappings.get(), mappings.get().getNamespaceId(Namespaces.INTERMEDIARY), mappings.get().getNamespaceId(Namespaces.NAMED));
+        ExecutorService executor = Util.daemonPool("SourceRemapper", Runtime.getRuntime().availableProcessors());
+        try {
+            for (Path[] jar : jars) {
+                sourceRemapper.remapSourcesJar(jar[0], jar[1], executor);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     public void hashDep(MessageDigest md, ModDependency dep) {
         hashDep(md, dep.jarDependency);
         for (ModDependencyFlag flag : dep.flags) {
@@ -784,8 +983,26 @@ public abstract class FabricProject extends BaseJavaProject {
     }
 
     public final Lazy<MappingTree> intermediary = new Lazy<>(this::createIntermediary);
+    // What the default createIntermediary read, its hash is only trusted if nothing else could have touched the tree
+    private volatile @Nullable Intermediary readIntermediary;
     public MappingTree createIntermediary() {
-        return Intermediary.ofMaven(FabricMaven.URL, FabricMaven.intermediary(getMcVersion())).tree;
+        Intermediary r = Intermediary.ofMaven(FabricMaven.URL, FabricMaven.intermediary(getMcVersion()));
+        readIntermediary = r;
+        return r.tree;
+    }
+    public final Lazy<String> intermediaryHash = new Lazy<>(() -> {
+        MappingTree tree = intermediary.get();
+        Intermediary read = readIntermediary;
+        if (read != null && read.tree == tree && read.hash != null && !overridesCreateIntermediary()) return read.hash;
+        return MappingHasher.hashSha256(tree);
+    });
+
+    boolean overridesCreateIntermediary() {
+        try {
+            return getClass().getMethod("createIntermediary").getDeclaringClass() != FabricProject.class;
+        } catch (NoSuchMethodException e) {
+            throw Util.sneak(e);
+        }
     }
 
     public Path getMergedJar() {
@@ -830,7 +1047,7 @@ public abstract class FabricProject extends BaseJavaProject {
     public final Lazy<RemappedJar> intermediaryjar = new Lazy<>(this::createIntermediaryJar);
     public RemappedJar createIntermediaryJar() {
             Path mergedJar = getMergedJar();
-            String intermediaryHash = MappingHasher.hashSha256(intermediary.get());
+            String intermediaryHash = this.intermediaryHash.get();
             Path result = fabricCache().resolve("intermediary").resolve(getMcVersion() + TinyRemapperHelper.getFileVersionTag() + "intermediary-" + intermediaryHash + ".jar");
             if (!Files.isRegularFile(result)) {
                 try (AtomicFile atomicFile = new AtomicFile(result)) {
@@ -845,7 +1062,8 @@ public abstract class FabricProject extends BaseJavaProject {
     public RemappedJar createNamedJar() {
         Path intermediaryJar2 = intermediaryjar.get().jar;
         MessageDigest md = MessageDigestUtil.messageDigest(MessageDigestUtil.SHA256);
-        MappingHasher.hash(md, intermediary.get(), mappings.get());
+        MessageDigestUtil.update(md, intermediaryHash.get());
+        MessageDigestUtil.update(md, mappingsHash.get());
         if (getAw() != null) AccessWidenerHasher.hash(md, getAw());
         String mappingHash = MessageDigestUtil.toHexHash(md.digest());
         Path result = fabricCache().resolve("named").resolve(getMcVersion() + TinyRemapperHelper.getFileVersionTag() + "named-" + mappingHash + ".jar");
@@ -888,7 +1106,7 @@ public abstract class FabricProject extends BaseJavaProject {
         }
         try (
             ZipProcessingSource source = new ZipProcessingSource(inputJar);
-            ZipProcessingSink sink = new ZipProcessingSink(outputJar)
+            ParallelZipProcessingSink sink = new ParallelZipProcessingSink(outputJar, Runtime.getRuntime().availableProcessors(), true, ParallelZipProcessingSink.REPRODUCIBLE_TIME)
         ) {
             new ProcessorChain(new RemapperProcessor(remapperBuilder, classpath)).apply(sink, source);
         }
@@ -5,6 +5,9 @@ import java.nio.file.Path;
 import java.util.Collections;
 import java.util.Map;
 
+import org.jetbrains.annotations.Nullable;
+
+import io.github.coolcrabs.brachyura.mappings.BinaryMappings;
 import io.github.coolcrabs.brachyura.mappings.Namespaces;
 import io.github.coolcrabs.brachyura.maven.Maven;
 import io.github.coolcrabs.brachyura.maven.MavenId;
@@ -18,18 +21,21 @@ import net.fabricmc.mappingio.tree.MemoryMappingTree;
 
 public class Intermediary {
     public final MappingTree tree;
+    // MappingHasher hash of tree as read, stale once tree is modified
+    public final @Nullable String hash;
 
     private static final Map<String, String> intermediaryNamespaces = Collections.singletonMap("official", Namespaces.OBF);
 
-    private Intermediary(MappingTree tree) {
+    private Intermediary(MappingTree tree, @Nullable String hash) {
         this.tree = tree;
+        this.hash = hash;
     }
 
     public static Intermediary ofV1(Path file) {
         try {
             MemoryMappingTree tree = new MemoryMappingTree();
-            MappingReader.read(file, MappingFormat.TINY, new MappingNsRenamer(tree, intermediaryNamespaces));
-            return new Intermediary(tree);
+            String hash = BinaryMappings.readCached("intermediary-v1", tree, v -> MappingReader.read(file, MappingFormat.TINY, new MappingNsRenamer(v, intermediaryNamespaces)), file);
+            return new Intermediary(tree, hash);
         } catch (Exception e) {
             throw Util.sneak(e);
         }
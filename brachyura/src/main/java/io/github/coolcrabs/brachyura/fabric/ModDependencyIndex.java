@@ -0,0 +1,117 @@
+package io.github.coolcrabs.brachyura.fabric;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.tinylog.Logger;
+
+import com.google.gson.Gson;
+
+import io.github.coolcrabs.brachyura.mappings.tinyremapper.IncrementalRemapper;
+import io.github.coolcrabs.brachyura.processing.sources.ZipProcessingSource;
+import io.github.coolcrabs.brachyura.util.AtomicFile;
+import io.github.coolcrabs.brachyura.util.MessageDigestUtil;
+import io.github.coolcrabs.brachyura.util.PathUtil;
+import io.github.coolcrabs.brachyura.util.StreamUtil;
+import io.github.coolcrabs.brachyura.util.Util;
+
+/**
+ * Classes a mod jar contains and the classes it references, to tell which other mods end up in its class hierarchy when
+ * remapping it
+ */
+class ModDependencyIndex {
+    static final int VERSION = 0;
+
+    int version;
+    HashSet<String> classes = new HashSet<>();
+    HashSet<String> references = new HashSet<>();
+
+    static ModDependencyIndex of(Path jar) {
+        ModDependencyIndex r = new ModDependencyIndex();
+        r.version = VERSION;
+        try (ZipProcessingSource source = new ZipProcessingSource(jar)) {
+            source.getInputs((in, id) -> {
+                if (!id.path.endsWith(".class")) return;
+                r.classes.add(id.path.substring(0, id.path.length() - ".class".length()));
+                try (InputStream is = in.get()) {
+                    r.references.addAll(IncrementalRemapper.references(StreamUtil.readFullyAsBytes(is)));
+                } catch (Exception e) {
+                    throw Util.sneak(e);
+                }
+            });
+        }
+        r.references.removeAll(r.classes);
+        return r;
+    }
+
+    /**
+     * Reads the index of jar from file or creates it there, file has to change whenever jar does
+     */
+    static ModDependencyIndex cached(Path file, Path jar) {
+        if (Files.isRegularFile(file)) {
+            try (BufferedReader r = PathUtil.newBufferedReader(file)) {
+                ModDependencyIndex index = new Gson().fromJson(r, ModDependencyIndex.class);
+                if (index != null && index.version == VERSION) return index;
+            } catch (Exception e) {
+                Logger.warn("Unable to read mod index {}", file);
+                Logger.warn(e);
+            }
+        }
+        ModDependencyIndex index = of(jar);
+        try (AtomicFile atomicFile = new AtomicFile(file)) {
+            try (BufferedWriter w = PathUtil.newBufferedWriter(atomicFile.tempPath)) {
+                new Gson().toJson(index, w);
+            }
+            atomicFile.commit();
+        } catch (Exception e) {
+            throw Util.sneak(e);
+        }
+        return index;
+    }
+
+    /**
+     * Keys each mod by its own hash and the hashes of the other mods it (transitively) references, those are on the
+     * remapper classpath for its hierarchy while unrelated mods can change without remapping it
+     */
+    static String[] keys(byte[] commonHash, List<byte[]> modHashes, List<ModDependencyIndex> indices) {
+        int count = modHashes.size();
+        HashMap<String, Integer> owners = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            for (String c : indices.get(i).classes) owners.putIfAbsent(c, i);
+        }
+        List<HashSet<Integer>> direct = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            HashSet<Integer> d = new HashSet<>();
+            for (String ref : indices.get(i).references) {
+                Integer owner = owners.get(ref);
+                if (owner != null && owner != i) d.add(owner);
+            }
+            direct.add(d);
+        }
+        String[] r = new String[count];
+        for (int i = 0; i < count; i++) {
+            TreeSet<Integer> reached = new TreeSet<>();
+            ArrayDeque<Integer> queue = new ArrayDeque<>(direct.get(i));
+            while (!queue.isEmpty()) {
+                int m = queue.pop();
+                if (m != i && reached.add(m)) queue.addAll(direct.get(m));
+            }
+            MessageDigest md = MessageDigestUtil.messageDigest(MessageDigestUtil.SHA256);
+            md.update(commonHash);
+            md.update(modHashes.get(i));
+            for (int m : reached) md.update(modHashes.get(m));
+            r[i] = MessageDigestUtil.toHexHash(md.digest());
+        }
+        return r;
+    }
+}
@@ -4,8 +4,11 @@ import java.io.FileNotFoundException;
 import java.nio.file.FileSystem;
 import java.nio.file.Path;
 
+import org.jetbrains.annotations.Nullable;
+
 import io.github.coolcrabs.brachyura.dependency.FileDependency;
 import io.github.coolcrabs.brachyura.exception.UnreachableException;
+import io.github.coolcrabs.brachyura.mappings.BinaryMappings;
 import io.github.coolcrabs.brachyura.mappings.Namespaces;
 import io.github.coolcrabs.brachyura.maven.Maven;
 import io.github.coolcrabs.brachyura.maven.MavenId;
@@ -20,16 +23,19 @@ import net.fabricmc.mappingio.tree.MemoryMappingTree;
 public class Yarn {
     // Either obf-named or intermediary-named
     public final MappingTree tree;
+    // MappingHasher hash of tree as read, stale once tree is modified
+    public final @Nullable String hash;
 
-    private Yarn(MappingTree tree) {
+    private Yarn(MappingTree tree, @Nullable String hash) {
         this.tree = tree;
+        this.hash = hash;
     }
 
     public static Yarn ofV2(Path file) {
         try {
             MemoryMappingTree tree = new MemoryMappingTree(true);
-            MappingReader.read(file, MappingFormat.TINY_2, tree);
-            return new Yarn(tree);
+            String hash = BinaryMappings.readCached("yarn-v2", tree, v -> MappingReader.read(file, MappingFormat.TINY_2, v), file);
+            return new Yarn(tree, hash);
         } catch (Exception e) {
             throw Util.sneak(e);
         }
@@ -39,7 +45,7 @@ public class Yarn {
         try {
             MemoryMappingTree tree = new MemoryMappingTree(true);
             EnigmaReader.read(dir, Namespaces.OBF, Namespaces.NAMED, tree);
-            return new Yarn(tree);
+            return new Yarn(tree, null);
         } catch (Exception e) {
             throw Util.sneak(e);
         }
@@ -0,0 +1,413 @@
+package io.github.coolcrabs.brachyura.mappings;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import org.tinylog.Logger;
+
+import io.github.coolcrabs.brachyura.util.AtomicFile;
+import io.github.coolcrabs.brachyura.util.MessageDigestUtil;
+import io.github.coolcrabs.brachyura.util.PathUtil;
+import io.github.coolcrabs.brachyura.util.Util;
+import net.fabricmc.mappingio.MappedElementKind;
+import net.fabricmc.mappingio.MappingVisitor;
+import net.fabricmc.mappingio.tree.MappingTree;
+import net.fabricmc.mappingio.tree.MemoryMappingTree;
+
+/**
+ * Compact binary mappings that load without any text parsing
+ * All strings are interned into a single table and every element is a fixed width record of int string indexes
+ * Files are memory mapped and replayed into a visitor, each distinct string is only decoded once
+ *
+ * Layout (big endian ints):
+ * header: magic, version, stringCount, treeHash, srcNamespace, dstCount, dstNamespaces[dstCount], classCount
+ * strings: offsets[stringCount + 1] into the utf8 data that follows
+ * class: srcName, dstNames[dstCount], comment, memberCount, then its members
+ * member: kind (0 field, 1 method), srcName, srcDesc, dstNames[dstCount], comment, childCount, then its children
+ * child: kind (0 arg, 1 var), argPosition/lvtRowIndex, lvIndex, startOpIdx, srcName, dstNames[dstCount], comment
+ * Absent strings are -1
+ */
+public class BinaryMappings {
+    private BinaryMappings() { }
+
+    static final int MAGIC = 0x42524D50; // BRMP
+    static final int VERSION = 1;
+    static final int HEADER = 6;
+
+    static final int FIELD = 0;
+    static final int METHOD = 1;
+    static final int ARG = 0;
+    static final int VAR = 1;
+
+    @FunctionalInterface
+    public interface Source {
+        void read(MappingVisitor visitor) throws Exception;
+    }
+
+    /**
+     * Fills tree from the binary cache of the given inputs, or from source on a miss after which the cache is written
+     * The {@link MappingHasher} hash of the tree is stored alongside so it is only computed once per set of inputs
+     * @param kind distinguishes different readers of the same files, change it when the reader output changes
+     * @return the {@link MappingHasher} hash of tree as read, it no longer applies once tree is modified
+     */
+    public static String readCached(String kind, MemoryMappingTree tree, Source source, Path... inputs) {
+        Path cacheFile = cacheFile(kind, inputs);
+        try {
+            if (Files.isRegularFile(cacheFile)) {
+                ByteBuffer buffer = map(cacheFile);
+                if (isValid(buffer)) {
+                    Reader reader = new Reader(buffer);
+                    reader.accept(tree);
+                    return reader.stringAt(12);
+                }
+                Logger.warn("Ignoring invalid mapping cache {}", cacheFile);
+            }
+            source.read(tree);
+            String hash = MappingHasher.hashSha256(tree);
+            write(tree, hash, cacheFile);
+            return hash;
+        } catch (Exception e) {
+            throw Util.sneak(e);
+        }
+    }
+
+    static Path cacheFile(String kind, Path... inputs) {
+        MessageDigest md = MessageDigestUtil.messageDigest(MessageDigestUtil.SHA256);
+        MessageDigestUtil.update(md, VERSION);
+        MessageDigestUtil.update(md, kind);
+        byte[] buffer = new byte[8192];
+        try {
+            for (Path input : inputs) {
+                MessageDigestUtil.update(md, Files.size(input));
+                try (InputStream in = Files.newInputStream(input)) {
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        md.update(buffer, 0, read);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            throw Util.sneak(e);
+        }
+        return PathUtil.resolveAndCreateDir(PathUtil.cachePath(), "mappings").resolve(MessageDigestUtil.toHexHash(md.digest()) + ".brmp");
+    }
+
+    public static void write(MappingTree tree, Path file) {
+        write(tree, MappingHasher.hashSha256(tree), file);
+    }
+
+    static void write(MappingTree tree, String hash, Path file) {
+        try {
+            Writer writer = new Writer();
+            writer.hash = writer.string(hash);
+            tree.accept(writer);
+            try (AtomicFile atomicFile = new AtomicFile(file)) {
+                try (OutputStream out = Files.newOutputStream(atomicFile.tempPath)) {
+                    writer.write(out);
+                }
+                atomicFile.commit();
+            }
+        } catch (Exception e) {
+            throw Util.sneak(e);
+        }
+    }
+
+    public static void read(Path file, MappingVisitor visitor) {
+        try {
+            ByteBuffer buffer = map(file);
+            if (!isValid(buffer)) throw new IOException("Not a binary mapping file " + file);
+            new Reader(buffer).accept(visitor);
+        } catch (Exception e) {
+            throw Util.sneak(e);
+        }
+    }
+
+    static ByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // Mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    static boolean isValid(ByteBuffer buffer) {
+        return buffer.capacity() >= HEADER * 4 && buffer.getInt(0) == MAGIC && buffer.getInt(4) == VERSION;
+    }
+
+    static class Reader {
+        final ByteBuffer buffer;
+        final int stringCount;
+        final int offsetsStart;
+        final int dataStart;
+        final String[] strings;
+        final int dstCount;
+        final int classesStart;
+
+        Reader(ByteBuffer buffer) {
+            this.buffer = buffer;
+            this.stringCount = buffer.getInt(8);
+            this.dstCount = buffer.getInt(20);
+            this.offsetsStart = (HEADER + dstCount + 1) * 4;
+            this.dataStart = offsetsStart + (stringCount + 1) * 4;
+            this.classesStart = dataStart + buffer.getInt(offsetsStart + stringCount * 4);
+            this.strings = new String[stringCount];
+        }
+
+        String string(int index) {
+            if (index < 0) return null;
+            String r = strings[index];
+            if (r == null) {
+                int start = buffer.getInt(offsetsStart + index * 4);
+                int end = buffer.getInt(offsetsStart + index * 4 + 4);
+                byte[] bytes = new byte[end - start];
+                ByteBuffer dup = buffer.duplicate();
+                dup.position(dataStart + start);
+                dup.get(bytes);
+                r = new String(bytes, StandardCharsets.UTF_8);
+                strings[index] = r;
+            }
+            return r;
+        }
+
+        String stringAt(int pos) {
+            return string(buffer.getInt(pos));
+        }
+
+        void accept(MappingVisitor visitor) throws IOException {
+            int classCount = buffer.getInt((HEADER + dstCount) * 4);
+            do {
+                if (visitor.visitHeader()) {
+                    ArrayList<String> dstNamespaces = new ArrayList<>(dstCount);
+                    for (int i = 0; i < dstCount; i++) {
+                        dstNamespaces.add(stringAt((HEADER + i) * 4));
+                    }
+                    visitor.visitNamespaces(stringAt(16), dstNamespaces);
+                }
+                if (visitor.visitContent()) {
+                    int pos = classesStart;
+                    for (int i = 0; i < classCount; i++) {
+                        pos = acceptClass(visitor, pos);
+                    }
+                }
+            } while (!visitor.visitEnd());
+        }
+
+        int acceptClass(MappingVisitor visitor, int pos) throws IOException {
+            int memberCount = buffer.getInt(pos + (2 + dstCount) * 4);
+            int membersStart = pos + (3 + dstCount) * 4;
+            boolean content = false;
+            if (visitor.visitClass(stringAt(pos))) {
+                content = acceptElement(visitor, MappedElementKind.CLASS, pos + 4);
+            }
+            int memberPos = membersStart;
+            for (int i = 0; i < memberCount; i++) {
+                memberPos = acceptMember(visitor, memberPos, content);
+            }
+            return memberPos;
+        }
+
+        int acceptMember(MappingVisitor visitor, int pos, boolean visit) throws IOException {
+            int childCount = buffer.getInt(pos + (4 + dstCount) * 4);
+            int childWidth = (6 + dstCount) * 4;
+            int childrenStart = pos + (5 + dstCount) * 4;
+            int end = childrenStart + childCount * childWidth;
+            if (!visit) return end;
+            if (buffer.getInt(pos) == FIELD) {
+                if (visitor.visitField(stringAt(pos + 4), stringAt(pos + 8))) {
+                    acceptElement(visitor, MappedElementKind.FIELD, pos + 12);
+                }
+                return end;
+            }
+            if (visitor.visitMethod(stringAt(pos + 4), stringAt(pos + 8)) && acceptElement(visitor, MappedElementKind.METHOD, pos + 12)) {
+                for (int i = 0; i < childCount; i++) {
+                    int childPos = childrenStart + i * childWidth;
+                    int a = buffer.getInt(childPos + 4);
+                    int lvIndex = buffer.getInt(childPos + 8);
+                    String srcName = stringAt(childPos + 16);
+                    if (buffer.getInt(childPos) == ARG) {
+                        if (visitor.visitMethodArg(a, lvIndex, srcName)) {
+                            acceptElement(visitor, MappedElementKind.METHOD_ARG, childPos + 20);
+                        }
+                    } else {
+                        if (visitor.visitMethodVar(a, lvIndex, buffer.getInt(childPos + 12), srcName)) {
+                            acceptElement(visitor, MappedElementKind.METHOD_VAR, childPos + 20);
+                        }
+                    }
+                }
+            }
+            return end;
+        }
+
+        /**
+         * @param pos start of the dst names followed by the comment
+         */
+        boolean acceptElement(MappingVisitor visitor, MappedElementKind kind, int pos) throws IOException {
+            for (int i = 0; i < dstCount; i++) {
+                String dstName = stringAt(pos + i * 4);
+                if (dstName != null) visitor.visitDstName(kind, i, dstName);
+            }
+            if (!visitor.visitElementContent(kind)) return false;
+            String comment = stringAt(pos + dstCount * 4);
+            if (comment != null) visitor.visitComment(kind, comment);
+            return true;
+        }
+    }
+
+    static class Writer implements MappingVisitor {
+        final HashMap<String, Integer> stringIndexes = new HashMap<>();
+        final ArrayList<String> strings = new ArrayList<>();
+        int[] records = new int[1024];
+        int size = 0;
+        int hash = -1;
+        int srcNamespace;
+        int[] dstNamespaces;
+        int dstCount;
+        int classCount = 0;
+        int classPos = -1;
+        int memberPos = -1;
+        int childPos = -1;
+
+        int string(String string) {
+            if (string == null) return -1;
+            Integer r = stringIndexes.get(string);
+            if (r == null) {
+                r = strings.size();
+                strings.add(string);
+                stringIndexes.put(string, r);
+            }
+            return r;
+        }
+
+        int record(int width) {
+            int pos = size;
+            size += width;
+            if (size > records.length) records = Arrays.copyOf(records, Math.max(size, records.length * 2));
+            Arrays.fill(records, pos, size, -1);
+            return pos;
+        }
+
+        @Override
+        public void visitNamespaces(String srcNamespace, List<String> dstNamespaces) throws IOException {
+            this.srcNamespace = string(srcNamespace);
+            this.dstCount = dstNamespaces.size();
+            this.dstNamespaces = new int[dstCount];
+            for (int i = 0; i < dstCount; i++) this.dstNamespaces[i] = string(dstNamespaces.get(i));
+        }
+
+        @Override
+        public boolean visitClass(String srcName) throws IOException {
+            classPos = record(3 + dstCount);
+            records[classPos] = string(srcName);
+            records[classPos + 2 + dstCount] = 0;
+            classCount++;
+            memberPos = -1;
+            childPos = -1;
+            return true;
+        }
+
+        boolean member(int kind, String srcName, String srcDesc) {
+            memberPos = record(5 + dstCount);
+            records[memberPos] = kind;
+            records[memberPos + 1] = string(srcName);
+            records[memberPos + 2] = string(srcDesc);
+            records[memberPos + 4 + dstCount] = 0;
+            records[classPos + 2 + dstCount]++;
+            childPos = -1;
+            return true;
+        }
+
+        @Override
+        public boolean visitField(String srcName, String srcDesc) throws IOException {
+            return member(FIELD, srcName, srcDesc);
+        }
+
+        @Override
+        public boolean visitMethod(String srcName, String srcDesc) throws IOException {
+            return member(METHOD, srcName, srcDesc);
+        }
+
+        boolean child(int kind, int a, int lvIndex, int startOpIdx, String srcName) {
+            childPos = record(6 + dstCount);
+            records[childPos] = kind;
+            records[childPos + 1] = a;
+            records[childPos + 2] = lvIndex;
+            records[childPos + 3] = startOpIdx;
+            records[childPos + 4] = string(srcName);
+            records[memberPos + 4 + dstCount]++;
+            return true;
+        }
+
+        @Override
+        public boolean visitMethodArg(int argPosition, int lvIndex, String srcName) throws IOException {
+            return child(ARG, argPosition, lvIndex, -1, srcName);
+        }
+
+        @Override
+        public boolean visitMethodVar(int lvtRowIndex, int lvIndex, int startOpIdx, String srcName) throws IOException {
+            return child(VAR, lvtRowIndex, lvIndex, startOpIdx, srcName);
+        }
+
+        /**
+         * @return index of the first dst name of the element, its comment follows the dst names
+         */
+        int element(MappedElementKind kind) {
+            switch (kind) {
+                case CLASS:
+                    return classPos + 1;
+                case FIELD:
+                case METHOD:
+                    return memberPos + 3;
+                default:
+                    return childPos + 5;
+            }
+        }
+
+        @Override
+        public void visitDstName(MappedElementKind targetKind, int namespace, String name) throws IOException {
+            records[element(targetKind) + namespace] = string(name);
+        }
+
+        @Override
+        public void visitComment(MappedElementKind targetKind, String comment) throws IOException {
+            records[element(targetKind) + dstCount] = string(comment);
+        }
+
+        void write(OutputStream out) throws IOException {
+            byte[][] encoded = new byte[strings.size()][];
+            int dataLength = 0;
+            for (int i = 0; i < encoded.length; i++) {
+                encoded[i] = strings.get(i).getBytes(StandardCharsets.UTF_8);
+                dataLength += encoded[i].length;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((HEADER + dstCount + 1 + encoded.length + 1 + size) * 4 + dataLength);
+            buffer.putInt(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putInt(encoded.length);
+            buffer.putInt(hash);
+            buffer.putInt(srcNamespace);
+            buffer.putInt(dstCount);
+            for (int i : dstNamespaces) buffer.putInt(i);
+            buffer.putInt(classCount);
+            int offset = 0;
+            for (byte[] b : encoded) {
+                buffer.putInt(offset);
+                offset += b.length;
+            }
+            buffer.putInt(offset);
+            for (byte[] b : encoded) buffer.put(b);
+            for (int i = 0; i < size; i++) buffer.putInt(records[i]);
+            out.write(buffer.array());
+        }
+    }
+}
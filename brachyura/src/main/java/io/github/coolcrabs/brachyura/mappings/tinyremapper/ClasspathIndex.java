@@ -0,0 +1,151 @@
+package io.github.coolcrabs.brachyura.mappings.tinyremapper;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.InputStream;
+import java.lang.ref.SoftReference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.tinylog.Logger;
+
+import io.github.coolcrabs.brachyura.processing.ProcessingId;
+import io.github.coolcrabs.brachyura.processing.ProcessingSink;
+import io.github.coolcrabs.brachyura.processing.ProcessingSource;
+import io.github.coolcrabs.brachyura.processing.sources.ZipProcessingSource;
+import io.github.coolcrabs.brachyura.util.AtomicFile;
+import io.github.coolcrabs.brachyura.util.MessageDigestUtil;
+import io.github.coolcrabs.brachyura.util.PathUtil;
+import io.github.coolcrabs.brachyura.util.StreamUtil;
+import io.github.coolcrabs.brachyura.util.Util;
+
+/**
+ * The classes of a classpath jar reduced to what tiny remapper reads from them, the class hierarchy and member signatures without any code
+ * Indexes are stored on disk per jar and kept in memory so repeated remaps skip reading and parsing the same library classes
+ */
+public class ClasspathIndex extends ProcessingSource {
+    static final int VERSION = 0;
+    static final ConcurrentHashMap<String, SoftReference<ClasspathIndex>> loaded = new ConcurrentHashMap<>();
+
+    final String[] paths;
+    final byte[][] classes;
+
+    ClasspathIndex(String[] paths, byte[][] classes) {
+        this.paths = paths;
+        this.classes = classes;
+    }
+
+    public static ClasspathIndex of(Path jar) {
+        String key = key(jar);
+        SoftReference<ClasspathIndex> ref = loaded.get(key);
+        ClasspathIndex r = ref == null ? null : ref.get();
+        if (r == null) {
+            Path cacheFile = PathUtil.resolveAndCreateDir(PathUtil.cachePath(), "classpathindex").resolve(key + ".bin");
+            if (Files.isRegularFile(cacheFile)) r = read(cacheFile);
+            if (r == null) {
+                r = create(jar);
+                write(r, cacheFile);
+            }
+            loaded.put(key, new SoftReference<>(r));
+        }
+        return r;
+    }
+
+    @Override
+    public void getInputs(ProcessingSink sink) {
+        for (int i = 0; i < paths.length; i++) {
+            String path = paths[i];
+            byte[] bytes = classes[i];
+            sink.sink(() -> new ByteArrayInputStream(bytes), new ProcessingId(path, this));
+        }
+    }
+
+    static String key(Path jar) {
+        try {
+            MessageDigest md = MessageDigestUtil.messageDigest(MessageDigestUtil.SHA256);
+            MessageDigestUtil.update(md, VERSION);
+            MessageDigestUtil.update(md, jar.toAbsolutePath().toString());
+            BasicFileAttributes attr = Files.readAttributes(jar, BasicFileAttributes.class);
+            MessageDigestUtil.update(md, attr.size());
+            MessageDigestUtil.update(md, attr.lastModifiedTime().toMillis());
+            return MessageDigestUtil.toHexHash(md.digest());
+        } catch (Exception e) {
+            throw Util.sneak(e);
+        }
+    }
+
+    static ClasspathIndex create(Path jar) {
+        ArrayList<String> paths = new ArrayList<>();
+        ArrayList<byte[]> classes = new ArrayList<>();
+        try (ZipProcessingSource source = new ZipProcessingSource(jar)) {
+            source.getInputs((in, id) -> {
+                if (!id.path.endsWith(".class")) return;
+                byte[] bytes;
+                try (InputStream is = in.get()) {
+                    bytes = StreamUtil.readFullyAsBytes(is);
+                } catch (Exception e) {
+                    throw Util.sneak(e);
+                }
+                paths.add(id.path);
+                classes.add(strip(bytes));
+            });
+        }
+        return new ClasspathIndex(paths.toArray(new String[0]), classes.toArray(new byte[0][]));
+    }
+
+    static byte[] strip(byte[] bytes) {
+        try {
+            ClassWriter writer = new ClassWriter(0);
+            new ClassReader(bytes).accept(writer, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+            return writer.toByteArray();
+        } catch (Exception e) {
+            // Let tiny remapper deal with whatever this is
+            return bytes;
+        }
+    }
+
+    static ClasspathIndex read(Path file) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != VERSION) return null;
+            int count = in.readInt();
+            String[] paths = new String[count];
+            byte[][] classes = new byte[count][];
+            for (int i = 0; i < count; i++) {
+                paths[i] = in.readUTF();
+                classes[i] = new byte[in.readInt()];
+                in.readFully(classes[i]);
+            }
+            return new ClasspathIndex(paths, classes);
+        } catch (Exception e) {
+            Logger.warn("Unable to read classpath index {}", file);
+            Logger.warn(e);
+            return null;
+        }
+    }
+
+    static void write(ClasspathIndex index, Path file) {
+        try (AtomicFile atomicFile = new AtomicFile(file)) {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(atomicFile.tempPath)))) {
+                out.writeInt(VERSION);
+                out.writeInt(index.paths.length);
+                for (int i = 0; i < index.paths.length; i++) {
+                    out.writeUTF(index.paths[i]);
+                    out.writeInt(index.classes[i].length);
+                    out.write(index.classes[i]);
+                }
+            }
+            atomicFile.commit();
+        } catch (Exception e) {
+            throw Util.sneak(e);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package io.github.coolcrabs.brachyura.mappings.tinyremapper;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Type;
+import org.tinylog.Logger;
+
+import com.google.gson.Gson;
+
+import io.github.coolcrabs.brachyura.processing.ProcessingEntry;
+import io.github.coolcrabs.brachyura.processing.ProcessingId;
+import io.github.coolcrabs.brachyura.processing.ProcessingSink;
+import io.github.coolcrabs.brachyura.processing.ProcessingSource;
+import io.github.coolcrabs.brachyura.processing.sources.DirectoryProcessingSource;
+import io.github.coolcrabs.brachyura.util.MessageDigestUtil;
+import io.github.coolcrabs.brachyura.util.PathUtil;
+import io.github.coolcrabs.brachyura.util.StreamUtil;
+import io.github.coolcrabs.brachyura.util.Util;
+import net.fabricmc.tinyremapper.TinyRemapper;
+
+/**
+ * Remaps only the classes that changed since the last run and keeps the previous output of the others
+ * Members are mapped through the class hierarchy, so classes that (transitively) reference a changed class are remapped too
+ * and everything else is given to tiny remapper as classpath
+ * Everything besides the inputs that affects the output (mappings, classpath) has to be in the key, changing it remaps all
+ * Class names are expected to stay the same, which holds for a mod's own classes
+ */
+public class IncrementalRemapper {
+    static final int VERSION = 0;
+
+    final Path dir;
+    final Path stateFile;
+    final Path outputDir;
+
+    public IncrementalRemapper(Path dir) {
+        this.dir = dir;
+        this.stateFile = dir.resolve("state.json");
+        this.outputDir = dir.resolve("out");
+    }
+
+    static class State {
+        int version;
+        String key;
+        HashMap<String, String> hashes = new HashMap<>();
+    }
+
+    public ProcessingSource remap(ProcessingSource input, String key, TinyRemapper.Builder builder, List<Path> classpath) {
+        try {
+            HashMap<String, byte[]> entries = new HashMap<>();
+            input.getInputs((in, id) -> {
+                try (InputStream i = in.get()) {
+                    entries.put(id.path, StreamUtil.readFullyAsBytes(i));
+                } catch (Exception e) {
+                    throw Util.sneak(e);
+                }
+            });
+            State old = load();
+            boolean full = old == null || old.version != VERSION || !key.equals(old.key) || !Files.isDirectory(outputDir);
+            State state = new State();
+            state.version = VERSION;
+            state.key = key;
+            Set<String> changed = new HashSet<>();
+            Set<String> changedClasses = new HashSet<>();
+            for (Map.Entry<String, byte[]> e : entries.entrySet()) {
+                String hash = hash(e.getValue());
+                state.hashes.put(e.getKey(), hash);
+                if (full || !hash.equals(old.hashes.get(e.getKey()))) changed.add(e.getKey());
+            }
+            if (full) {
+                if (Files.exists(outputDir)) PathUtil.deleteDirectory(outputDir);
+            } else {
+                for (String path : old.hashes.keySet()) {
+                    if (!entries.containsKey(path)) {
+                        Files.deleteIfExists(outputDir.resolve(path));
+                        if (path.endsWith(".class")) changedClasses.add(className(path));
+                    }
+                }
+            }
+            for (String path : changed) {
+                if (path.endsWith(".class")) changedClasses.add(className(path));
+            }
+            if (!full && !changedClasses.isEmpty()) {
+                HashMap<String, Set<String>> references = new HashMap<>();
+                for (Map.Entry<String, byte[]> e : entries.entrySet()) {
+                    if (e.getKey().endsWith(".class") && !changed.contains(e.getKey())) references.put(e.getKey(), references(e.getValue()));
+                }
+                boolean added = true;
+                while (added) {
+                    added = false;
+                    for (Map.Entry<String, Set<String>> e : references.entrySet()) {
+                        if (changed.contains(e.getKey())) continue;
+                        for (String ref : e.getValue()) {
+                            if (changedClasses.contains(ref)) {
+                                changed.add(e.getKey());
+                                changedClasses.add(className(e.getKey()));
+                                added = true;
+                                break;
+                            }
+                        }
+                    }
+                }
+            }
+            // A failed remap leaves no state behind so the next one remaps everything
+            Files.deleteIfExists(stateFile);
+            ProcessingSink out = (in, id) -> {
+                try {
+                    Path target = outputDir.resolve(id.path);
+                    Files.createDirectories(target.getParent());
+                    try (InputStream i = in.get()) {
+                        Files.copy(i, target, StandardCopyOption.REPLACE_EXISTING);
+                    }
+                } catch (Exception e) {
+                    throw Util.sneak(e);
+                }
+            };
+            ArrayList<ProcessingEntry> toRemap = new ArrayList<>();
+            ArrayList<ProcessingEntry> unchanged = new ArrayList<>();
+            int classCount = 0;
+            for (Map.Entry<String, byte[]> e : entries.entrySet()) {
+                byte[] bytes = e.getValue();
+                ProcessingEntry entry = new ProcessingEntry(() -> new ByteArrayInputStream(bytes), new ProcessingId(e.getKey(), input));
+                if (e.getKey().endsWith(".class")) {
+                    classCount++;
+                    (changed.contains(e.getKey()) ? toRemap : unchanged).add(entry);
+                } else if (changed.contains(e.getKey())) {
+                    out.sink(entry.in, entry.id);
+                }
+            }
+            Logger.info("Remapping {} of {} classes{}", toRemap.size(), classCount, full ? "" : " (incremental)");
+            if (!toRemap.isEmpty()) {
+                new RemapperProcessor(builder, classpath)
+                    .addClasspath(new ProcessingSource() {
+                        @Override
+                        public void getInputs(ProcessingSink sink) {
+                            for (ProcessingEntry e : unchanged) sink.sink(e.in, e.id);
+                        }
+                    })
+                    .process(toRemap, out);
+            }
+            Files.createDirectories(outputDir);
+            save(state);
+            return new DirectoryProcessingSource(outputDir);
+        } catch (Exception e) {
+            throw Util.sneak(e);
+        }
+    }
+
+    static String className(String path) {
+        return path.substring(0, path.length() - ".class".length());
+    }
+
+    /**
+     * @return internal names of every class in the constant pool, which includes the owners of all referenced members
+     */
+    public static Set<String> references(byte[] bytes) {
+        ClassReader reader = new ClassReader(bytes);
+        char[] buf = new char[reader.getMaxStringLength()];
+        HashSet<String> r = new HashSet<>();
+        for (int i = 1; i < reader.getItemCount(); i++) {
+            int offset = reader.getItem(i);
+            if (offset == 0 || reader.readByte(offset - 1) != 7) continue; // CONSTANT_Class
+            Type type = Type.getObjectType(reader.readUTF8(offset, buf));
+            if (type.getSort() == Type.ARRAY) type = type.getElementType();
+            if (type.getSort() == Type.OBJECT) r.add(type.getInternalName());
+        }
+        return r;
+    }
+
+    static String hash(byte[] bytes) {
+        MessageDigest md = MessageDigestUtil.messageDigest(MessageDigestUtil.SHA256);
+        md.update(bytes);
+        return MessageDigestUtil.toHexHash(md.digest());
+    }
+
+    @Nullable State load() {
+        if (!Files.isRegularFile(stateFile)) return null;
+        try (BufferedReader r = PathUtil.newBufferedReader(stateFile)) {
+            return new Gson().fromJson(r, State.class);
+        } catch (Exception e) {
+            Logger.warn("Unable to read incremental remap state {}", stateFile);
+            Logger.warn(e);
+            return null;
+        }
+    }
+
+    void save(State state) {
+        try (BufferedWriter w = PathUtil.newBufferedWriter(stateFile)) {
+            new Gson().toJson(state, w);
+        } catch (Exception e) {
+            throw Util.sneak(e);
+        }
+    }
+}
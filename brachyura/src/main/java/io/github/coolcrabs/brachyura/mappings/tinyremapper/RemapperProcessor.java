@@ -28,6 +28,7 @@ import java.nio.file.attribute.FileAttributeView;
 import java.nio.file.attribute.FileTime;
 import java.nio.file.attribute.UserPrincipalLookupService;
 import java.nio.file.spi.FileSystemProvider;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
@@ -36,15 +37,16 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 
 import io.github.coolcrabs.brachyura.mappings.tinyremapper.RemapperProcessor.BruhFileSystemProvider.BruhFileSystem.BruhPath;
-import io.github.coolcrabs.brachyura.mappings.tinyremapper.TinyRemapperHelper.JarType;
 import io.github.coolcrabs.brachyura.processing.ProcessingEntry;
 import io.github.coolcrabs.brachyura.processing.ProcessingId;
 import io.github.coolcrabs.brachyura.processing.ProcessingSink;
 import io.github.coolcrabs.brachyura.processing.ProcessingSource;
 import io.github.coolcrabs.brachyura.processing.Processor;
 import io.github.coolcrabs.brachyura.util.StreamUtil;
+import io.github.coolcrabs.brachyura.util.Util;
 import net.fabricmc.tinyremapper.InputTag;
 import net.fabricmc.tinyremapper.TinyRemapper;
 import net.fabricmc.tinyremapper.TinyRemapper.Builder;
@@ -53,31 +55,56 @@ import net.fabricmc.tinyremapper.TinyRemapper.Builder;
 public class RemapperProcessor implements Processor {
     TinyRemapper.Builder builder;
     List<Path> classpath;
+    List<ProcessingSource> classpathSources = new ArrayList<>();
 
     public RemapperProcessor(Builder builder, List<Path> classpath) {
         this.builder = builder;
         this.classpath = classpath;
     }
 
+    /**
+     * Adds classes that aren't remapped but are needed for their hierarchy, like the unchanged classes of an incremental build
+     */
+    public RemapperProcessor addClasspath(ProcessingSource source) {
+        classpathSources.add(source);
+        return this;
+    }
+
     @Override
     public void process(Collection<ProcessingEntry> inputs, ProcessingSink sink) throws IOException {
         BruhFileSystemProvider bruh = new BruhFileSystemProvider();
         TinyRemapper remapper = builder.build();
         try {
             for (Path j : classpath) {
-                TinyRemapperHelper.readJar(remapper, j, JarType.CLASSPATH);
+                ClasspathIndex index = ClasspathIndex.of(j);
+                Path[] classes = new Path[index.paths.length];
+                for (int i = 0; i < classes.length; i++) {
+                    byte[] bytes = index.classes[i];
+                    classes[i] = bruh.child.createPath(index.paths[i], () -> bytes);
+                }
+                remapper.readClassPath(classes);
             }
-            HashMap<ProcessingSource, InputTag> tags = new HashMap<>();
-            for (ProcessingEntry e : inputs) {
-                tags.computeIfAbsent(e.id.source, k -> remapper.createInputTag());
+            for (ProcessingSource source : classpathSources) {
+                List<Path> classes = new ArrayList<>();
+                source.getInputs((in, id) -> {
+                    if (id.path.endsWith(".class")) classes.add(bruh.child.createPath(new ProcessingEntry(in, id)));
+                });
+                remapper.readClassPath(classes.toArray(new Path[classes.size()]));
             }
+            HashMap<ProcessingSource, InputTag> tags = new HashMap<>();
+            HashMap<InputTag, List<Path>> inputClasses = new HashMap<>();
             for (ProcessingEntry e : inputs) {
+                InputTag tag = tags.computeIfAbsent(e.id.source, k -> remapper.createInputTag());
                 if (e.id.path.endsWith(".class")) {
-                    remapper.readInputs(tags.get(e.id.source), bruh.child.createPath(e));
+                    inputClasses.computeIfAbsent(tag, k -> new ArrayList<>()).add(bruh.child.createPath(e));
                 } else {
                     sink.sink(e.in, e.id);
                 }
             }
+            // Whole sources at once so tr reads and inflates their classes on its own threads
+            for (Map.Entry<InputTag, List<Path>> entry : inputClasses.entrySet()) {
+                remapper.readInputs(entry.getKey(), entry.getValue().toArray(new Path[entry.getValue().size()]));
+            }
             for (Map.Entry<ProcessingSource, InputTag> entry : tags.entrySet()) {
                 remapper.apply((path, bytes) -> sink.sink(() -> new ByteArrayInputStream(bytes), new ProcessingId(path + ".class", entry.getKey())), entry.getValue());
             }
@@ -162,13 +189,25 @@ public class RemapperProcessor implements Processor {
             }
 
             BruhPath createPath(ProcessingEntry e) {
+                return createPath(e.id.path, () -> {
+                    try (InputStream in = e.in.get()) {
+                        return StreamUtil.readFullyAsBytes(in);
+                    } catch (IOException ex) {
+                        throw Util.sneak(ex);
+                    }
+                });
+            }
+
+            BruhPath createPath(String path, Supplier<byte[]> bytes) {
                 BruhPath result = new BruhPath();
-                result.entry = e;
+                result.path = path;
+                result.bytes = bytes;
                 return result;
             }
     
             class BruhPath implements Path {
-                ProcessingEntry entry;
+                String path;
+                Supplier<byte[]> bytes;
     
                 @Override
                 public FileSystem getFileSystem() {
@@ -326,7 +365,7 @@ public class RemapperProcessor implements Processor {
 
                 @Override
                 public String toString() {
-                    return entry.id.path;
+                    return path;
                 }
                 
             }
@@ -359,9 +398,7 @@ public class RemapperProcessor implements Processor {
         @Override
         public SeekableByteChannel newByteChannel(Path path, Set<? extends OpenOption> options,
                 FileAttribute<?>... attrs) throws IOException {
-            try (InputStream in = ((BruhPath)path).entry.in.get()) {
-                return new SeekableInMemoryByteChannel(StreamUtil.readFullyAsBytes(in));
-            }
+            return new SeekableInMemoryByteChannel(((BruhPath)path).bytes.get());
         }
 
         @Override
@@ -501,7 +538,7 @@ public class RemapperProcessor implements Processor {
 
         @Override
         public InputStream newInputStream(Path path, OpenOption... options) throws IOException {
-            return ((BruhPath)path).entry.in.get();
+            return new ByteArrayInputStream(((BruhPath)path).bytes.get());
         }
     }
 
@@ -47,9 +47,8 @@ public class Maven {
     private static Dependency getMavenDep(String mavenRepo, MavenId dep, String extension, boolean isJavaJar, boolean allowDownload) {
         try {
             URI mavenRepoUri = new URI(addTrailSlash(mavenRepo));
-            String mavenRepoHash = toHexHash(messageDigest(SHA256).digest((mavenRepoUri.getHost() + mavenRepoUri.getPath()).getBytes(StandardCharsets.UTF_8)));
-            Path repoPath = mavenCache().resolve(mavenRepoHash);
-            String relativeDownload = "./" + dep.groupId.replace('.', '/') + "/" + dep.artifactId + "/" + dep.version + "/" + dep.artifactId + "-" + dep.version + extension;
+            Path repoPath = repoPath(mavenRepoUri);
+            String relativeDownload = relative(dep, extension);
             Path downloadPath = repoPath.resolve(relativeDownload);
             if (!Files.isRegularFile(downloadPath)) {
                 if (allowDownload) {
@@ -59,16 +58,16 @@ public class Maven {
                 }
             }
             if (isJavaJar) {
-                String nosourcesRelative = "./" + dep.groupId.replace('.', '/') + "/" + dep.artifactId + "/" + dep.version + "/" + dep.artifactId + "-" + dep.version + ".nosources";
+                String nosourcesRelative = relative(dep, ".nosources");
                 Path nosources = repoPath.resolve(nosourcesRelative);
                 boolean sources = false;
                 Path sourcesPath = null;
                 if (!Files.isRegularFile(nosources)) {
-                    String sourcesRelativeDownload = "./" + dep.groupId.replace('.', '/') + "/" + dep.artifactId + "/" + dep.version + "/" + dep.artifactId + "-" + dep.version + "-sources.jar";
+                    String sourcesRelativeDownload = relative(dep, "-sources.jar");
                     sourcesPath = repoPath.resolve(sourcesRelativeDownload);
                     if (Files.isRegularFile(sourcesPath)) {
                         sources = true;
-                    } else {
+                    } else if (!NetUtil.isOffline()) { // Sources may exist, so no marker
                         if (!allowDownload) return null;
                         try {
                             download(sourcesPath, sourcesRelativeDownload, mavenRepoUri);
@@ -111,6 +110,15 @@ public class Maven {
         PathUtil.moveAtoB(tempPath, path);
     }
 
+    static Path repoPath(URI mavenRepoUri) {
+        String mavenRepoHash = toHexHash(messageDigest(SHA256).digest((mavenRepoUri.getHost() + mavenRepoUri.getPath()).getBytes(StandardCharsets.UTF_8)));
+        return mavenCache().resolve(mavenRepoHash);
+    }
+
+    static String relative(MavenId dep, String suffix) {
+        return "./" + dep.groupId.replace('.', '/') + "/" + dep.artifactId + "/" + dep.version + "/" + dep.artifactId + "-" + dep.version + suffix;
+    }
+
     static String addTrailSlash(String string) {
         return string.endsWith("/") ? string : string + "/";
     }
@@ -0,0 +1,188 @@
+package io.github.coolcrabs.brachyura.maven;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.jetbrains.annotations.Nullable;
+import org.tinylog.Logger;
+
+import io.github.coolcrabs.brachyura.dependency.JavaJarDependency;
+import io.github.coolcrabs.brachyura.exception.IncorrectHashException;
+import io.github.coolcrabs.brachyura.util.MessageDigestUtil;
+import io.github.coolcrabs.brachyura.util.NetUtil;
+import io.github.coolcrabs.brachyura.util.PathUtil;
+import io.github.coolcrabs.brachyura.util.StreamUtil;
+import io.github.coolcrabs.brachyura.util.Util;
+
+/**
+ * Resolves a batch of jars like {@link Maven#getMavenJarDep} but downloads every missing jar, sources jar and checksum at once
+ */
+public class MavenResolver {
+    static final int THREADS = 8;
+
+    final ArrayList<Request> requests = new ArrayList<>();
+
+    public MavenResolver add(String mavenRepo, MavenId id) {
+        requests.add(new Request(mavenRepo, id));
+        return this;
+    }
+
+    public MavenResolver addAll(String mavenRepo, Collection<MavenId> ids) {
+        for (MavenId id : ids) add(mavenRepo, id);
+        return this;
+    }
+
+    /**
+     * @return a jar for every added id in the order they were added
+     */
+    public List<JavaJarDependency> resolve() {
+        ExecutorService executor = Util.daemonPool("MavenResolver", THREADS);
+        HashMap<Path, Fetch> fetches = new HashMap<>();
+        try {
+            ArrayList<Pending> pending = new ArrayList<>(requests.size());
+            for (Request r : requests) {
+                URI repo = new URI(Maven.addTrailSlash(r.mavenRepo));
+                Path repoPath = Maven.repoPath(repo);
+                Pending p = new Pending(r.id, repoPath.resolve(Maven.relative(r.id, ".jar")), repoPath.resolve(Maven.relative(r.id, "-sources.jar")), repoPath.resolve(Maven.relative(r.id, ".nosources")));
+                if (!Files.isRegularFile(p.jar)) {
+                    p.jarFetch = fetches.computeIfAbsent(p.jar, k -> new Fetch(executor, repo, Maven.relative(r.id, ".jar"), k));
+                }
+                if (!Files.isRegularFile(p.nosources) && !Files.isRegularFile(p.sources) && !NetUtil.isOffline()) {
+                    p.sourcesFetch = fetches.computeIfAbsent(p.sources, k -> new Fetch(executor, repo, Maven.relative(r.id, "-sources.jar"), k));
+                }
+                pending.add(p);
+            }
+            ArrayList<JavaJarDependency> result = new ArrayList<>(pending.size());
+            for (Pending p : pending) {
+                if (p.jarFetch != null) p.jarFetch.commit();
+                boolean sources = Files.isRegularFile(p.sources);
+                if (p.sourcesFetch != null) {
+                    try {
+                        p.sourcesFetch.commit();
+                        sources = true;
+                    } catch (FileNotFoundException e) {
+                        Logger.info("No sources found for " + p.id.toString());
+                        try {
+                            Files.createFile(p.nosources);
+                        } catch (FileAlreadyExistsException e2) {
+                            // Duplicate request
+                        }
+                    }
+                }
+                result.add(new JavaJarDependency(p.jar, sources ? p.sources : null, p.id));
+            }
+            return result;
+        } catch (Exception e) {
+            throw Util.sneak(e);
+        } finally {
+            for (Fetch f : fetches.values()) f.cleanup();
+            executor.shutdownNow();
+        }
+    }
+
+    static class Request {
+        final String mavenRepo;
+        final MavenId id;
+
+        Request(String mavenRepo, MavenId id) {
+            this.mavenRepo = mavenRepo;
+            this.id = id;
+        }
+    }
+
+    static class Pending {
+        final MavenId id;
+        final Path jar;
+        final Path sources;
+        final Path nosources;
+        @Nullable Fetch jarFetch;
+        @Nullable Fetch sourcesFetch;
+
+        Pending(MavenId id, Path jar, Path sources, Path nosources) {
+            this.id = id;
+            this.jar = jar;
+            this.sources = sources;
+            this.nosources = nosources;
+        }
+    }
+
+    /**
+     * A file and its .sha1 being downloaded concurrently into a temp file next to the target
+     */
+    static class Fetch {
+        final Path target;
+        final Path tempPath;
+        final Future<String> hash;
+        final Future<String> expectedHash;
+        boolean commited = false;
+
+        Fetch(ExecutorService executor, URI repo, String relative, Path target) {
+            this.target = target;
+            this.tempPath = PathUtil.tempFile(target);
+            this.hash = executor.submit(() -> {
+                MessageDigest messageDigest = MessageDigestUtil.messageDigest(MessageDigestUtil.SHA1);
+                try (DigestInputStream inputStream = new DigestInputStream(NetUtil.inputStream(repo.resolve(relative).toURL()), messageDigest)) {
+                    Files.copy(inputStream, tempPath, StandardCopyOption.REPLACE_EXISTING);
+                }
+                return MessageDigestUtil.toHexHash(messageDigest.digest());
+            });
+            this.expectedHash = executor.submit(() -> {
+                try (InputStream hashStream = NetUtil.inputStream(repo.resolve(relative + ".sha1").toURL())) {
+                    return StreamUtil.readFullyAsString(hashStream);
+                }
+            });
+        }
+
+        void commit() throws IOException {
+            if (commited) return;
+            String got = get(hash);
+            String expected = get(expectedHash);
+            if (!got.equalsIgnoreCase(expected)) {
+                throw new IncorrectHashException(expected, got);
+            }
+            PathUtil.moveAtoB(tempPath, target);
+            commited = true;
+        }
+
+        void cleanup() {
+            if (commited) return;
+            try {
+                // Wait so the temp file isn't written after it is deleted
+                hash.get();
+            } catch (Exception e) {
+                // Already failing
+            }
+            try {
+                Files.deleteIfExists(tempPath);
+            } catch (IOException e) {
+                // No need to care
+            }
+        }
+
+        static String get(Future<String> future) {
+            try {
+                return future.get();
+            } catch (ExecutionException e) {
+                throw Util.sneak(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw Util.sneak(e);
+            }
+        }
+    }
+}
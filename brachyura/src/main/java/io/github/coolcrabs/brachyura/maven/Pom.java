@@ -0,0 +1,137 @@
+package io.github.coolcrabs.brachyura.maven;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.jetbrains.annotations.Nullable;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import io.github.coolcrabs.brachyura.util.Util;
+
+/**
+ * The parts of a pom.xml needed to resolve dependencies, as written in the file without inheritance or interpolation
+ */
+class Pom {
+    @Nullable MavenId parent;
+    @Nullable String groupId;
+    String artifactId;
+    @Nullable String version;
+    String packaging = "jar";
+    final LinkedHashMap<String, String> properties = new LinkedHashMap<>();
+    final List<Dependency> dependencyManagement = new ArrayList<>();
+    final List<Dependency> dependencies = new ArrayList<>();
+
+    static Pom read(Path file) {
+        try (InputStream in = Files.newInputStream(file)) {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setExpandEntityReferences(false);
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            Document document = factory.newDocumentBuilder().parse(in);
+            return read(document.getDocumentElement());
+        } catch (Exception e) {
+            throw Util.sneak(e);
+        }
+    }
+
+    static Pom read(Element project) {
+        Pom r = new Pom();
+        Element parent = child(project, "parent");
+        if (parent != null) {
+            r.parent = new MavenId(text(parent, "groupId"), text(parent, "artifactId"), text(parent, "version"));
+        }
+        r.groupId = text(project, "groupId");
+        r.artifactId = text(project, "artifactId");
+        r.version = text(project, "version");
+        String packaging = text(project, "packaging");
+        if (packaging != null) r.packaging = packaging;
+        Element properties = child(project, "properties");
+        if (properties != null) {
+            for (Element property : children(properties)) {
+                r.properties.put(property.getTagName(), property.getTextContent().trim());
+            }
+        }
+        Element dependencyManagement = child(project, "dependencyManagement");
+        if (dependencyManagement != null) readDependencies(child(dependencyManagement, "dependencies"), r.dependencyManagement);
+        readDependencies(child(project, "dependencies"), r.dependencies);
+        return r;
+    }
+
+    static void readDependencies(@Nullable Element dependencies, List<Dependency> out) {
+        if (dependencies == null) return;
+        for (Element e : children(dependencies)) {
+            if (!"dependency".equals(e.getTagName())) continue;
+            Dependency d = new Dependency();
+            d.groupId = text(e, "groupId");
+            d.artifactId = text(e, "artifactId");
+            d.version = text(e, "version");
+            d.type = text(e, "type");
+            d.classifier = text(e, "classifier");
+            d.scope = text(e, "scope");
+            d.optional = "true".equals(text(e, "optional"));
+            Element exclusions = child(e, "exclusions");
+            if (exclusions != null) {
+                for (Element exclusion : children(exclusions)) {
+                    d.exclusions.add(text(exclusion, "groupId") + ":" + text(exclusion, "artifactId"));
+                }
+            }
+            out.add(d);
+        }
+    }
+
+    static @Nullable Element child(Element parent, String name) {
+        for (Node n = parent.getFirstChild(); n != null; n = n.getNextSibling()) {
+            if (n instanceof Element && name.equals(((Element) n).getTagName())) return (Element) n;
+        }
+        return null;
+    }
+
+    static List<Element> children(Element parent) {
+        ArrayList<Element> r = new ArrayList<>();
+        for (Node n = parent.getFirstChild(); n != null; n = n.getNextSibling()) {
+            if (n instanceof Element) r.add((Element) n);
+        }
+        return r;
+    }
+
+    static @Nullable String text(Element parent, String name) {
+        Element e = child(parent, name);
+        return e == null ? null : e.getTextContent().trim();
+    }
+
+    static class Dependency {
+        String groupId;
+        String artifactId;
+        @Nullable String version;
+        @Nullable String type;
+        @Nullable String classifier;
+        @Nullable String scope;
+        boolean optional;
+        // groupId:artifactId, either may be *
+        final List<String> exclusions = new ArrayList<>();
+
+        String managementKey() {
+            return groupId + ":" + artifactId + ":" + (type == null ? "jar" : type) + ":" + (classifier == null ? "" : classifier);
+        }
+
+        Dependency copy() {
+            Dependency r = new Dependency();
+            r.groupId = groupId;
+            r.artifactId = artifactId;
+            r.version = version;
+            r.type = type;
+            r.classifier = classifier;
+            r.scope = scope;
+            r.optional = optional;
+            r.exclusions.addAll(exclusions);
+            return r;
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package io.github.coolcrabs.brachyura.maven;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileNotFoundException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.gson.Gson;
+
+import org.jetbrains.annotations.Nullable;
+import org.tinylog.Logger;
+
+import io.github.coolcrabs.brachyura.dependency.FileDependency;
+import io.github.coolcrabs.brachyura.dependency.JavaJarDependency;
+import io.github.coolcrabs.brachyura.util.AtomicFile;
+import io.github.coolcrabs.brachyura.util.MessageDigestUtil;
+import io.github.coolcrabs.brachyura.util.PathUtil;
+import io.github.coolcrabs.brachyura.util.Util;
+
+/**
+ * Resolves the full runtime classpath of a set of maven artifacts by following their poms
+ * Supports parent poms, dependencyManagement (including imported boms), scopes, optional dependencies and exclusions
+ * A root's dependencyManagement also applies to its transitive dependencies, like maven does for the project being built
+ * Conflicts are resolved like maven, the version nearest to the roots wins with declaration order breaking ties
+ * Resolved graphs are cached on disk by roots and repositories so later resolutions don't read any poms
+ */
+public class PomResolver {
+    static final int CACHE_VERSION = 1;
+    static final Pattern PROPERTY = Pattern.compile("\\$\\{([^}]+)\\}");
+
+    final List<String> repos;
+    final HashMap<MavenId, Effective> effective = new HashMap<>();
+
+    /**
+     * @param repos searched in order for each pom, jars are fetched from the repo their pom came from
+     */
+    public PomResolver(String... repos) {
+        this(Arrays.asList(repos));
+    }
+
+    public PomResolver(List<String> repos) {
+        this.repos = new ArrayList<>(repos);
+    }
+
+    public List<JavaJarDependency> resolve(MavenId... roots) {
+        return resolve(Arrays.asList(roots));
+    }
+
+    public List<JavaJarDependency> resolve(List<MavenId> roots) {
+        MavenResolver resolver = new MavenResolver();
+        for (Artifact a : resolveArtifacts(roots)) {
+            resolver.add(a.repo, new MavenId(a.id));
+        }
+        return resolver.resolve();
+    }
+
+    /**
+     * @return every jar needed at runtime, roots first and then by distance from the roots
+     */
+    List<Artifact> resolveArtifacts(List<MavenId> roots) {
+        StringBuilder key = new StringBuilder();
+        key.append(CACHE_VERSION).append('\n');
+        for (MavenId root : roots) key.append(root).append('\n');
+        key.append('\n');
+        for (String repo : repos) key.append(repo).append('\n');
+        Path cacheFile = cachePath().resolve(MessageDigestUtil.toHexHash(MessageDigestUtil.messageDigest(MessageDigestUtil.SHA256).digest(key.toString().getBytes(StandardCharsets.UTF_8))) + ".json");
+        Gson gson = new Gson();
+        if (Files.isRegularFile(cacheFile)) {
+            try (BufferedReader reader = Files.newBufferedReader(cacheFile)) {
+                CachedResolution cached = gson.fromJson(reader, CachedResolution.class);
+                if (cached != null && cached.version == CACHE_VERSION && cached.artifacts != null) return cached.artifacts;
+            } catch (Exception e) {
+                Logger.warn("Unable to read resolution cache " + cacheFile);
+                Logger.warn(e);
+            }
+        }
+        List<Artifact> result = resolveUncached(roots);
+        CachedResolution cached = new CachedResolution();
+        cached.version = CACHE_VERSION;
+        cached.artifacts = result;
+        try (AtomicFile atomicFile = new AtomicFile(cacheFile)) {
+            try (BufferedWriter writer = Files.newBufferedWriter(atomicFile.tempPath)) {
+                gson.toJson(cached, writer);
+            }
+            atomicFile.commit();
+        } catch (Exception e) {
+            throw Util.sneak(e);
+        }
+        return result;
+    }
+
+    List<Artifact> resolveUncached(List<MavenId> roots) {
+        LinkedHashMap<String, Artifact> chosen = new LinkedHashMap<>();
+        HashSet<String> visited = new HashSet<>();
+        ArrayDeque<Node> queue = new ArrayDeque<>();
+        for (MavenId root : roots) queue.add(new Node(root, new HashSet<>(), null));
+        while (!queue.isEmpty()) {
+            Node node = queue.poll();
+            String ga = node.id.groupId + ":" + node.id.artifactId;
+            // Breadth first so the first version seen is the nearest
+            if (!visited.add(ga)) continue;
+            Effective pom = getEffective(node.id);
+            if (!"pom".equals(pom.packaging)) {
+                chosen.put(ga, new Artifact(pom.repo, node.id.toString()));
+            }
+            Map<String, Pom.Dependency> rootManagement = node.rootManagement == null ? pom.dependencyManagement : node.rootManagement;
+            for (Pom.Dependency d : pom.dependencies) {
+                // A root's own dependencies already had its management applied, explicit versions there win
+                Pom.Dependency managed = node.rootManagement == null ? null : node.rootManagement.get(d.managementKey());
+                if (managed != null) {
+                    d = d.copy();
+                    if (managed.version != null) d.version = managed.version;
+                    if (managed.scope != null) d.scope = managed.scope;
+                    d.exclusions.addAll(managed.exclusions);
+                }
+                if (d.optional) continue;
+                if (d.scope != null && !"compile".equals(d.scope) && !"runtime".equals(d.scope)) continue;
+                if (d.type != null && !"jar".equals(d.type) && !"bundle".equals(d.type)) continue;
+                if (d.classifier != null) {
+                    Logger.warn("Skipping {}:{}:{} as classifiers are unsupported", d.groupId, d.artifactId, d.classifier);
+                    continue;
+                }
+                if (isExcluded(node.exclusions, d.groupId, d.artifactId)) continue;
+                if (d.version == null) throw new IllegalStateException("No version for " + d.groupId + ":" + d.artifactId + " in " + node.id);
+                HashSet<String> exclusions = new HashSet<>(node.exclusions);
+                exclusions.addAll(d.exclusions);
+                queue.add(new Node(new MavenId(d.groupId, d.artifactId, version(d.version)), exclusions, rootManagement));
+            }
+        }
+        return new ArrayList<>(chosen.values());
+    }
+
+    static boolean isExcluded(Set<String> exclusions, String groupId, String artifactId) {
+        return
+            exclusions.contains(groupId + ":" + artifactId) ||
+            exclusions.contains(groupId + ":*") ||
+            exclusions.contains("*:" + artifactId) ||
+            exclusions.contains("*:*");
+    }
+
+    /**
+     * Ranges can't be resolved without repository metadata, so the lowest allowed version is used
+     */
+    static String version(String version) {
+        if (!version.startsWith("[") && !version.startsWith("(")) return version;
+        if (version.startsWith("[")) {
+            String lower = version.substring(1).split("[,\\])]", 2)[0].trim();
+            if (!lower.isEmpty()) {
+                Logger.warn("Using {} for version range {}", lower, version);
+                return lower;
+            }
+        }
+        throw new UnsupportedOperationException("Unsupported version range " + version);
+    }
+
+    Effective getEffective(MavenId id) {
+        Effective r = effective.get(id);
+        if (r == null) {
+            r = createEffective(id, new HashSet<>());
+            effective.put(id, r);
+        }
+        return r;
+    }
+
+    Effective createEffective(MavenId id, Set<MavenId> seen) {
+        if (!seen.add(id)) throw new IllegalStateException("Cyclic parent or import in " + id);
+        String repo = null;
+        Path pomFile = null;
+        for (String r : repos) {
+            FileDependency f = getPom(r, id);
+            if (f != null) {
+                repo = r;
+                pomFile = f.file;
+                break;
+            }
+        }
+        if (pomFile == null) throw Util.sneak(new FileNotFoundException("Unable to find pom for " + id + " in " + repos));
+        Pom pom = Pom.read(pomFile);
+        Effective r = new Effective();
+        r.repo = repo;
+        r.packaging = pom.packaging;
+        Effective parent = null;
+        if (pom.parent != null) {
+            parent = effective.get(pom.parent);
+            if (parent == null) {
+                parent = createEffective(pom.parent, seen);
+                effective.put(pom.parent, parent);
+            }
+            r.properties.putAll(parent.properties);
+        }
+        r.properties.putAll(pom.properties);
+        String groupId = pom.groupId != null ? pom.groupId : id.groupId;
+        String version = pom.version != null ? pom.version : id.version;
+        r.properties.put("project.groupId", groupId);
+        r.properties.put("pom.groupId", groupId);
+        r.properties.put("groupId", groupId);
+        r.properties.put("project.artifactId", pom.artifactId);
+        r.properties.put("project.version", version);
+        r.properties.put("pom.version", version);
+        r.properties.put("version", version);
+        if (pom.parent != null) {
+            r.properties.put("project.parent.groupId", pom.parent.groupId);
+            r.properties.put("project.parent.version", pom.parent.version);
+        }
+        // Inherited entries are interpolated again with the child's properties, which override the parent's
+        if (parent != null) {
+            r.rawDependencyManagement.addAll(parent.rawDependencyManagement);
+            r.rawDependencies.addAll(parent.rawDependencies);
+        }
+        r.rawDependencyManagement.addAll(pom.dependencyManagement);
+        r.rawDependencies.addAll(pom.dependencies);
+        ArrayList<Pom.Dependency> imports = new ArrayList<>();
+        for (Pom.Dependency d : r.rawDependencyManagement) {
+            Pom.Dependency i = interpolate(d, r.properties);
+            if ("import".equals(i.scope) && "pom".equals(i.type)) {
+                imports.add(i);
+            } else {
+                r.dependencyManagement.put(i.managementKey(), i);
+            }
+        }
+        // Declared entries win over imported ones
+        for (Pom.Dependency i : imports) {
+            Effective bom = createEffective(new MavenId(i.groupId, i.artifactId, version(i.version)), new HashSet<>(seen));
+            for (Map.Entry<String, Pom.Dependency> e : bom.dependencyManagement.entrySet()) {
+                r.dependencyManagement.putIfAbsent(e.getKey(), e.getValue());
+            }
+        }
+        for (Pom.Dependency d : r.rawDependencies) {
+            Pom.Dependency i = interpolate(d, r.properties);
+            Pom.Dependency managed = r.dependencyManagement.get(i.managementKey());
+            if (managed != null) {
+                if (i.version == null) i.version = managed.version;
+                if (i.scope == null) i.scope = managed.scope;
+                if (i.exclusions.isEmpty()) i.exclusions.addAll(managed.exclusions);
+            }
+            r.dependencies.add(i);
+        }
+        return r;
+    }
+
+    static @Nullable FileDependency getPom(String repo, MavenId id) {
+        try {
+            return Maven.getMavenFileDep(repo, id, ".pom");
+        } catch (Exception e) {
+            if (e instanceof FileNotFoundException) return null;
+            throw e;
+        }
+    }
+
+    static Pom.Dependency interpolate(Pom.Dependency d, Map<String, String> properties) {
+        Pom.Dependency r = d.copy();
+        r.groupId = interpolate(d.groupId, properties);
+        r.artifactId = interpolate(d.artifactId, properties);
+        r.version = interpolate(d.version, properties);
+        r.type = interpolate(d.type, properties);
+        r.classifier = interpolate(d.classifier, properties);
+        r.scope = interpolate(d.scope, properties);
+        return r;
+    }
+
+    static @Nullable String interpolate(@Nullable String s, Map<String, String> properties) {
+        if (s == null) return null;
+        for (int depth = 0; depth < 16 && s.contains("${"); depth++) {
+            Matcher m = PROPERTY.matcher(s);
+            StringBuffer b = new StringBuffer();
+            boolean changed = false;
+            while (m.find()) {
+                String value = properties.get(m.group(1));
+                if (value != null) changed = true;
+                m.appendReplacement(b, Matcher.quoteReplacement(value == null ? m.group() : value));
+            }
+            m.appendTail(b);
+            s = b.toString();
+            if (!changed) break;
+        }
+        return s;
+    }
+
+    static Path cachePath() {
+        return PathUtil.resolveAndCreateDir(PathUtil.cachePath().resolve("maven"), "resolved");
+    }
+
+    static class Node {
+        final MavenId id;
+        final Set<String> exclusions;
+        // Effective dependencyManagement of the root this was reached from, null for roots
+        final @Nullable Map<String, Pom.Dependency> rootManagement;
+
+        Node(MavenId id, Set<String> exclusions, @Nullable Map<String, Pom.Dependency> rootManagement) {
+            this.id = id;
+            this.exclusions = exclusions;
+            this.rootManagement = rootManagement;
+        }
+    }
+
+    /**
+     * Pom with inheritance, interpolation and dependency management applied
+     */
+    static class Effective {
+        String repo;
+        String packaging;
+        final HashMap<String, String> properties = new HashMap<>();
+        final LinkedHashMap<String, Pom.Dependency> dependencyManagement = new LinkedHashMap<>();
+        final List<Pom.Dependency> dependencies = new ArrayList<>();
+        // Own and inherited entries before interpolation
+        final List<Pom.Dependency> rawDependencyManagement = new ArrayList<>();
+        final List<Pom.Dependency> rawDependencies = new ArrayList<>();
+    }
+
+    static class Artifact {
+        String repo;
+        String id;
+
+        Artifact(String repo, String id) {
+            this.repo = repo;
+            this.id = id;
+        }
+    }
+
+    static class CachedResolution {
+        int version;
+        List<Artifact> artifacts;
+    }
+}
@@ -6,12 +6,14 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
@@ -23,6 +25,7 @@ import io.github.coolcrabs.brachyura.dependency.Dependency;
 import io.github.coolcrabs.brachyura.dependency.JavaJarDependency;
 import io.github.coolcrabs.brachyura.dependency.NativesJarDependency;
 import io.github.coolcrabs.brachyura.exception.IncorrectHashException;
+import io.github.coolcrabs.brachyura.mappings.BinaryMappings;
 import io.github.coolcrabs.brachyura.mappings.Namespaces;
 import io.github.coolcrabs.brachyura.maven.Maven;
 import io.github.coolcrabs.brachyura.maven.MavenId;
@@ -34,6 +37,7 @@ import io.github.coolcrabs.brachyura.minecraft.VersionMeta.VMDownload;
 import io.github.coolcrabs.brachyura.util.AtomicFile;
 import io.github.coolcrabs.brachyura.util.MessageDigestUtil;
 import io.github.coolcrabs.brachyura.util.NetUtil;
+import io.github.coolcrabs.brachyura.util.ParallelDownloader;
 import io.github.coolcrabs.brachyura.util.PathUtil;
 import io.github.coolcrabs.brachyura.util.StreamUtil;
 import io.github.coolcrabs.brachyura.util.Util;
@@ -109,14 +113,18 @@ public class Minecraft {
     public static MappingTree getMojmap(String version, VersionMeta meta) {
         try {
             MemoryMappingTree r = new MemoryMappingTree(true);
-            try (
-                Reader a = Files.newBufferedReader(getDownload(version, meta, "client_mappings"));
-                Reader b = Files.newBufferedReader(getDownload(version, meta, "server_mappings"));
-            ) {
-                MappingVisitor v = new MappingSourceNsSwitch(r, Namespaces.OBF);
-                ProGuardReader.read(a, Namespaces.NAMED, Namespaces.OBF, v);
-                ProGuardReader.read(b, Namespaces.NAMED, Namespaces.OBF, v);
-            }
+            Path client = getDownload(version, meta, "client_mappings");
+            Path server = getDownload(version, meta, "server_mappings");
+            BinaryMappings.readCached("mojmap", r, visitor -> {
+                try (
+                    Reader a = Files.newBufferedReader(client);
+                    Reader b = Files.newBufferedReader(server);
+                ) {
+                    MappingVisitor v = new MappingSourceNsSwitch(visitor, Namespaces.OBF);
+                    ProGuardReader.read(a, Namespaces.NAMED, Namespaces.OBF, v);
+                    ProGuardReader.read(b, Namespaces.NAMED, Namespaces.OBF, v);
+                }
+            }, client, server);
             return r;
         } catch (Exception e) {
             throw Util.sneak(e);
@@ -141,7 +149,7 @@ public class Minecraft {
                         Path sourcesPath2 = mcLibCache().resolve(dependency.artifact.path.replace(".jar", "-sources.jar"));
                         if (Files.isRegularFile(sourcesPath2)) {
                             sourcesPath = sourcesPath2;
-                        } else {
+                        } else if (!NetUtil.isOffline()) { // Sources may exist, so no marker
                             String sourcesUrl = dependency.artifact.url.replace(".jar", "-sources.jar");
                             URL sourcesHashUrl = new URL(sourcesUrl + ".sha1");
                             String targetHash;
@@ -207,38 +215,68 @@ public class Minecraft {
                     atomicFile.commit();
                 }
             }
-            downloadAssets0(assetsIndex);
+            Path verified = assets().resolve("verified").resolve(vmAssets.id + ".txt");
+            if (!isVerified(verified, vmAssets)) {
+                AssetsIndex index = downloadAssets0(assetsIndex);
+                long totalSize = 0;
+                for (SizeHash sizeHash : index.objects.values()) totalSize += sizeHash.size;
+                try (AtomicFile atomicFile = new AtomicFile(verified)) {
+                    Files.write(
+                        atomicFile.tempPath,
+                        Arrays.asList(
+                            vmAssets.sha1,
+                            String.valueOf(index.objects.size()),
+                            String.valueOf(totalSize),
+                            String.valueOf(Files.getLastModifiedTime(assets().resolve("objects")).toMillis())
+                        ),
+                        StandardCharsets.UTF_8
+                    );
+                    atomicFile.commit();
+                }
+            }
             return vmAssets.id;
         } catch (Exception e) {
             throw Util.sneak(e);
         }
     }
 
-    private static void downloadAssets0(Path assetsIndexPath) throws IOException {
+    /**
+     * The manifest is written after every object of an index was found or downloaded
+     * It stays valid while the index hash and the objects dir mtime match, which avoids statting every object on each launch
+     * Deleting single objects doesn't change the dir mtime, delete the manifest to force a full scan
+     */
+    static boolean isVerified(Path verified, VMAssets vmAssets) {
+        try {
+            if (!Files.isRegularFile(verified)) return false;
+            List<String> lines = Files.readAllLines(verified, StandardCharsets.UTF_8);
+            return
+                lines.size() == 4 &&
+                lines.get(0).equalsIgnoreCase(vmAssets.sha1) &&
+                lines.get(3).equals(String.valueOf(Files.getLastModifiedTime(assets().resolve("objects")).toMillis()));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static AssetsIndex downloadAssets0(Path assetsIndexPath) throws IOException {
         AssetsIndex assetsIndex = null;
         try (BufferedReader reader = Files.newBufferedReader(assetsIndexPath)) {
             assetsIndex = new Gson().fromJson(reader, AssetsIndex.class);
         }
         Path objects = assets().resolve("objects");
-        for (Map.Entry<String, SizeHash> entry : assetsIndex.objects.entrySet()) {
-            String a = entry.getValue().hash.substring(0, 2); // first 2 chars
-            URL url = NetUtil.url("http://resources.download.minecraft.net/" + a + "/" + entry.getValue().hash);
-            Path target = objects.resolve(a).resolve(entry.getValue().hash);
+        ParallelDownloader downloader = new ParallelDownloader();
+        for (SizeHash sizeHash : assetsIndex.objects.values()) {
+            String a = sizeHash.hash.substring(0, 2); // first 2 chars
+            Path target = objects.resolve(a).resolve(sizeHash.hash);
             if (!Files.isRegularFile(target)) {
-                try (AtomicFile atomicFile = new AtomicFile(target)) {
-                    Files.deleteIfExists(atomicFile.tempPath);
-                    MessageDigest messageDigest = MessageDigestUtil.messageDigest(MessageDigestUtil.SHA1);
-                    try (DigestInputStream inputStream = new DigestInputStream(NetUtil.inputStream(url), messageDigest)) {
-                        Files.copy(inputStream, atomicFile.tempPath);
-                    }
-                    String hash = MessageDigestUtil.toHexHash(messageDigest.digest());
-                    if (!hash.equalsIgnoreCase(entry.getValue().hash)) {
-                        throw new IncorrectHashException(entry.getValue().hash, hash);
-                    }
-                    atomicFile.commit();
-                }
+                downloader.add(NetUtil.url("http://resources.download.minecraft.net/" + a + "/" + sizeHash.hash), target, sizeHash.hash, sizeHash.size);
             }
         }
+        if (downloader.size() > 0) {
+            Logger.info("Downloading {} assets", downloader.size());
+            downloader.download();
+        }
+        return assetsIndex;
     }
 
     static class AssetsIndex {
@@ -9,6 +9,11 @@ import io.github.coolcrabs.brachyura.util.ArrayUtil;
 import io.github.coolcrabs.brachyura.util.Util;
 import java.util.Arrays;
 
+/**
+ * Runs processors one after another
+ * Runs of {@link StreamingProcessor}s are pipelined so entries reach the next stage (and the sink) as soon as they are read
+ * Any other processor needs every entry at once, so entries are only collected in front of those
+ */
 public class ProcessorChain {
     final Processor[] processors;
 
@@ -26,20 +31,35 @@ public class ProcessorChain {
 
     public void apply(ProcessingSink out, Iterable<? extends ProcessingSource> in) {
         try {
-            Collector c = new Collector();
-            for (ProcessingSource s : in) {
-                s.getInputs(c);
-            }
-            for (Processor p : processors) {
-                Collector c2 = new Collector();
-                p.process(c.e, c2);
-                c = c2; 
-            }
-            for (ProcessingEntry pe : c.e) {
-                out.sink(pe.in, pe.id);
-            }
+            apply(out, 0, sink -> {
+                for (ProcessingSource s : in) {
+                    s.getInputs(sink);
+                }
+            });
         } catch (IOException e) {
-            Util.sneak(e);
+            throw Util.sneak(e);
+        }
+    }
+
+    void apply(ProcessingSink out, int start, Stage input) throws IOException {
+        int barrier = start;
+        while (barrier < processors.length && processors[barrier] instanceof StreamingProcessor) {
+            barrier++;
+        }
+        Collector c = barrier < processors.length ? new Collector() : null;
+        // sinks[i] feeds processors[start + i]; the last one is the end of this pipeline
+        ProcessingSink[] sinks = new ProcessingSink[barrier - start + 1];
+        sinks[sinks.length - 1] = c == null ? out : c;
+        for (int i = barrier - 1; i >= start; i--) {
+            sinks[i - start] = new StreamingSink((StreamingProcessor) processors[i], sinks[i - start + 1]);
+        }
+        input.run(sinks[0]);
+        for (int i = start; i < barrier; i++) {
+            ((StreamingProcessor) processors[i]).finish(sinks[i - start + 1]);
+        }
+        if (c != null) {
+            Processor p = processors[barrier];
+            apply(out, barrier + 1, sink -> p.process(c.e, sink));
         }
     }
 
@@ -47,6 +67,30 @@ public class ProcessorChain {
         return Arrays.copyOf(processors, processors.length);
     }
 
+    @FunctionalInterface
+    interface Stage {
+        void run(ProcessingSink sink) throws IOException;
+    }
+
+    static class StreamingSink implements ProcessingSink {
+        final StreamingProcessor processor;
+        final ProcessingSink next;
+
+        StreamingSink(StreamingProcessor processor, ProcessingSink next) {
+            this.processor = processor;
+            this.next = next;
+        }
+
+        @Override
+        public void sink(Supplier<InputStream> in, ProcessingId id) {
+            try {
+                processor.process(new ProcessingEntry(in, id), next);
+            } catch (IOException e) {
+                throw Util.sneak(e);
+            }
+        }
+    }
+
     static class Collector implements ProcessingSink {
         ArrayList<ProcessingEntry> e = new ArrayList<>();
 
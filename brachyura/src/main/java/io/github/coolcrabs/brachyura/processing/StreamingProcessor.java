@@ -0,0 +1,27 @@
+package io.github.coolcrabs.brachyura.processing;
+
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * A processor which handles entries one at a time
+ * A ProcessorChain forwards entries straight through these as they arrive instead of collecting every entry first
+ */
+public interface StreamingProcessor extends Processor {
+    void process(ProcessingEntry entry, ProcessingSink sink) throws IOException;
+
+    /**
+     * Called once every entry has been processed
+     */
+    default void finish(ProcessingSink sink) throws IOException {
+        // noop
+    }
+
+    @Override
+    default void process(Collection<ProcessingEntry> inputs, ProcessingSink sink) throws IOException {
+        for (ProcessingEntry e : inputs) {
+            process(e, sink);
+        }
+        finish(sink);
+    }
+}
@@ -11,12 +11,12 @@ import io.github.coolcrabs.brachyura.util.PathUtil;
 
 public class AtomicZipProcessingSink implements ProcessingSink, AutoCloseable {
     final AtomicFile file;
-    ZipProcessingSink delegate;
+    ParallelZipProcessingSink delegate;
 
     public AtomicZipProcessingSink(Path zip) {
         file = new AtomicFile(zip);
         PathUtil.deleteIfExists(file.tempPath);
-        delegate = new ZipProcessingSink(file.tempPath);
+        delegate = new ParallelZipProcessingSink(file.tempPath);
     }
 
     @Override
@@ -0,0 +1,301 @@
+package io.github.coolcrabs.brachyura.processing.sinks;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import io.github.coolcrabs.brachyura.processing.ProcessingId;
+import io.github.coolcrabs.brachyura.processing.ProcessingSink;
+import io.github.coolcrabs.brachyura.util.ByteArrayOutputStreamEx;
+import io.github.coolcrabs.brachyura.util.StreamUtil;
+import io.github.coolcrabs.brachyura.util.Util;
+
+/**
+ * Zip sink that deflates entries on a worker pool while a single writer appends them to the file.
+ * Entries are read on the calling thread so suppliers don't need to be thread safe.
+ * In sorted mode every compressed entry is held in memory until {@link #close()}.
+ */
+public class ParallelZipProcessingSink implements ProcessingSink, Closeable {
+    /**
+     * 1980-02-01 00:00:00, the earliest dos timestamp that survives a round trip in every timezone
+     */
+    public static final long REPRODUCIBLE_TIME = dosTime(LocalDateTime.of(1980, 2, 1, 0, 0, 0));
+
+    static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(() -> new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+
+    final OutputStream out;
+    final ExecutorService executor;
+    final boolean sorted;
+    final long dosTime;
+    final int maxPending;
+    final HashSet<String> paths = new HashSet<>();
+    final ArrayDeque<Future<Entry>> pending = new ArrayDeque<>();
+    final ArrayList<Entry> written = new ArrayList<>();
+    long offset = 0;
+    boolean closed = false;
+
+    public ParallelZipProcessingSink(Path zip) {
+        this(zip, Runtime.getRuntime().availableProcessors(), false, -1);
+    }
+
+    /**
+     * @param threads number of deflate workers
+     * @param sorted write entries ordered by path instead of in the order they are sunk
+     * @param dosTime fixed dos timestamp for every entry (see {@link #REPRODUCIBLE_TIME}), or -1 to use the current time
+     */
+    public ParallelZipProcessingSink(Path zip, int threads, boolean sorted, long dosTime) {
+        try {
+            this.out = new BufferedOutputStream(Files.newOutputStream(zip), 1 << 16);
+        } catch (IOException e) {
+            throw Util.sneak(e);
+        }
+        this.executor = Util.daemonPool("ParallelZipProcessingSink", threads);
+        this.sorted = sorted;
+        this.dosTime = dosTime == -1 ? dosTime(LocalDateTime.now()) : dosTime;
+        this.maxPending = Math.max(1, threads) * 8;
+    }
+
+    @Override
+    public void sink(Supplier<InputStream> in, ProcessingId id) {
+        if (closed) throw new IllegalStateException("Sink already closed");
+        String path = id.path.startsWith("/") ? id.path.substring(1) : id.path;
+        if (!paths.add(path)) throw Util.sneak(new FileAlreadyExistsException(path));
+        int slash = path.indexOf('/');
+        while (slash != -1) {
+            String dir = path.substring(0, slash + 1);
+            if (paths.add(dir)) {
+                Entry d = new Entry(dir);
+                d.data = new byte[0];
+                d.dataLength = 0;
+                d.method = 0;
+                submit(() -> d);
+            }
+            slash = path.indexOf('/', slash + 1);
+        }
+        byte[] bytes;
+        try (InputStream i = in.get()) {
+            bytes = StreamUtil.readFullyAsBytes(i);
+        } catch (IOException e) {
+            throw Util.sneak(e);
+        }
+        submit(() -> compress(path, bytes));
+    }
+
+    void submit(Callable<Entry> task) {
+        pending.add(executor.submit(task));
+        if (!sorted) {
+            while (pending.size() > maxPending || (!pending.isEmpty() && pending.peek().isDone())) {
+                write(take());
+            }
+        }
+    }
+
+    Entry take() {
+        try {
+            return pending.poll().get();
+        } catch (ExecutionException e) {
+            throw Util.sneak(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw Util.sneak(e);
+        }
+    }
+
+    static Entry compress(String path, byte[] bytes) {
+        Entry r = new Entry(path);
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        r.crc = crc.getValue();
+        r.size = bytes.length;
+        Deflater deflater = DEFLATER.get();
+        deflater.reset();
+        deflater.setInput(bytes);
+        deflater.finish();
+        ByteArrayOutputStreamEx o = new ByteArrayOutputStreamEx();
+        byte[] buf = new byte[8192];
+        while (!deflater.finished()) {
+            int len = deflater.deflate(buf);
+            o.write(buf, 0, len);
+            if (o.size() >= bytes.length) break;
+        }
+        if (deflater.finished() && o.size() < bytes.length) {
+            r.method = 8;
+            r.data = o.buf();
+            r.dataLength = o.size();
+        } else {
+            r.method = 0;
+            r.data = bytes;
+            r.dataLength = bytes.length;
+        }
+        return r;
+    }
+
+    void write(Entry e) {
+        try {
+            e.offset = offset;
+            boolean zip64 = e.offset >= 0xFFFFFFFFL;
+            writeInt(0x04034b50);
+            writeShort(zip64 ? 45 : 20);
+            writeShort(0x0800); // utf8 names
+            writeShort(e.method);
+            writeInt(dosTime);
+            writeInt(e.crc);
+            writeInt(e.dataLength);
+            writeInt(e.size);
+            writeShort(e.name.length);
+            writeShort(0);
+            out.write(e.name);
+            out.write(e.data, 0, e.dataLength);
+            offset += 30 + e.name.length + e.dataLength;
+            e.data = null;
+            written.add(e);
+        } catch (IOException ex) {
+            throw Util.sneak(ex);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        try {
+            while (!pending.isEmpty()) {
+                Entry e = take();
+                if (sorted) {
+                    written.add(e);
+                } else {
+                    write(e);
+                }
+            }
+            if (sorted) {
+                List<Entry> entries = new ArrayList<>(written);
+                entries.sort(Comparator.comparing(e -> e.path));
+                written.clear();
+                for (Entry e : entries) write(e);
+            }
+            writeCentralDirectory();
+            out.close();
+        } catch (IOException e) {
+            throw Util.sneak(e);
+        } finally {
+            executor.shutdownNow();
+            try {
+                out.close();
+            } catch (IOException e) {
+                // Already failing
+            }
+        }
+    }
+
+    void writeCentralDirectory() throws IOException {
+        long cdStart = offset;
+        for (Entry e : written) {
+            boolean zip64 = e.offset >= 0xFFFFFFFFL;
+            writeInt(0x02014b50);
+            writeShort(zip64 ? 45 : 20); // made by
+            writeShort(zip64 ? 45 : 20); // needed
+            writeShort(0x0800);
+            writeShort(e.method);
+            writeInt(dosTime);
+            writeInt(e.crc);
+            writeInt(e.dataLength);
+            writeInt(e.size);
+            writeShort(e.name.length);
+            writeShort(zip64 ? 12 : 0); // extra
+            writeShort(0); // comment
+            writeShort(0); // disk
+            writeShort(0); // internal attr
+            writeInt(0); // external attr
+            writeInt(zip64 ? 0xFFFFFFFFL : e.offset);
+            out.write(e.name);
+            offset += 46 + e.name.length;
+            if (zip64) {
+                writeShort(0x0001);
+                writeShort(8);
+                writeLong(e.offset);
+                offset += 12;
+            }
+        }
+        long cdSize = offset - cdStart;
+        int count = written.size();
+        if (count >= 0xFFFF || cdStart >= 0xFFFFFFFFL || cdSize >= 0xFFFFFFFFL) {
+            long zip64Eocd = offset;
+            writeInt(0x06064b50);
+            writeLong(44);
+            writeShort(45);
+            writeShort(45);
+            writeInt(0);
+            writeInt(0);
+            writeLong(count);
+            writeLong(count);
+            writeLong(cdSize);
+            writeLong(cdStart);
+            writeInt(0x07064b50);
+            writeInt(0);
+            writeLong(zip64Eocd);
+            writeInt(1);
+        }
+        writeInt(0x06054b50);
+        writeShort(0);
+        writeShort(0);
+        writeShort(Math.min(count, 0xFFFF));
+        writeShort(Math.min(count, 0xFFFF));
+        writeInt(Math.min(cdSize, 0xFFFFFFFFL));
+        writeInt(Math.min(cdStart, 0xFFFFFFFFL));
+        writeShort(0);
+    }
+
+    void writeShort(int v) throws IOException {
+        out.write(v & 0xFF);
+        out.write((v >>> 8) & 0xFF);
+    }
+
+    void writeInt(long v) throws IOException {
+        writeShort((int) (v & 0xFFFF));
+        writeShort((int) ((v >>> 16) & 0xFFFF));
+    }
+
+    void writeLong(long v) throws IOException {
+        writeInt(v & 0xFFFFFFFFL);
+        writeInt(v >>> 32);
+    }
+
+    static long dosTime(LocalDateTime t) {
+        return ((long) (t.getYear() - 1980) << 25) | (t.getMonthValue() << 21) | (t.getDayOfMonth() << 16) | (t.getHour() << 11) | (t.getMinute() << 5) | (t.getSecond() >> 1);
+    }
+
+    static class Entry {
+        final String path;
+        final byte[] name;
+        byte[] data;
+        int dataLength;
+        int method;
+        long crc;
+        long size;
+        long offset;
+
+        Entry(String path) {
+            this.path = path;
+            this.name = path.getBytes(StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -1,12 +1,8 @@
 package io.github.coolcrabs.brachyura.processing.sources;
 
-import java.io.InputStream;
-import java.util.ArrayList;
 import java.util.function.Predicate;
-import java.util.function.Supplier;
 
 import io.github.coolcrabs.brachyura.processing.ProcessingEntry;
-import io.github.coolcrabs.brachyura.processing.ProcessingId;
 import io.github.coolcrabs.brachyura.processing.ProcessingSink;
 import io.github.coolcrabs.brachyura.processing.ProcessingSource;
 
@@ -21,19 +17,8 @@ public class FilteringProcessingSource extends ProcessingSource {
 
     @Override
     public void getInputs(ProcessingSink sink) {
-        Collector c = new Collector();
-        parent.getInputs(c);
-        for (ProcessingEntry e : c.e) {
-            if (filter.test(e)) sink.sink(e.in, e.id);
-        }
-    }
-    
-    static class Collector implements ProcessingSink {
-        ArrayList<ProcessingEntry> e = new ArrayList<>();
-
-        @Override
-        public void sink(Supplier<InputStream> in, ProcessingId id) {
-            e.add(new ProcessingEntry(in, id));
-        }
+        parent.getInputs((in, id) -> {
+            if (filter.test(new ProcessingEntry(in, id))) sink.sink(in, id);
+        });
     }
 }
@@ -0,0 +1,275 @@
+package io.github.coolcrabs.brachyura.project;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.tinylog.Logger;
+import org.tinylog.configuration.Configuration;
+
+import io.github.coolcrabs.brachyura.project.java.BuildCache;
+import io.github.coolcrabs.brachyura.util.AtomicFile;
+import io.github.coolcrabs.brachyura.util.MessageDigestUtil;
+import io.github.coolcrabs.brachyura.util.NetUtil;
+import io.github.coolcrabs.brachyura.util.PathUtil;
+import io.github.coolcrabs.brachyura.util.Util;
+
+/**
+ * Long lived process that runs tasks for the bootstrap client so classloading, jit warmup and lazy project state are paid for once
+ * Listens on a loopback port written to .brachyura/daemon along with a token clients need to send
+ * Requests are handled one at a time with System.out and System.err forwarded to the client
+ * and the client's brachyura system properties and offline setting applied while they run
+ * Protocol must match DaemonClient in bootstrap
+ */
+public class BrachyuraDaemon {
+    private BrachyuraDaemon() { }
+
+    static final int PROTOCOL = 1;
+
+    static final int OP_RUN = 0;
+    static final int OP_STOP = 1;
+
+    static final int FRAME_OUT = 0;
+    static final int FRAME_ERR = 1;
+    static final int FRAME_EXIT = 2;
+    static final int FRAME_STALE = 3;
+
+    static final long IDLE_TIMEOUT = TimeUnit.HOURS.toMillis(3);
+
+    static volatile boolean active = false;
+
+    static BuildscriptProject buildscriptProject;
+    static String buildscriptHash;
+
+    /**
+     * @return if tasks are running inside the daemon, meaning the process stdio is not the user's terminal
+     */
+    public static boolean isActive() {
+        return active;
+    }
+
+    // Called via reflection by bootstrap
+    public static void main(Path projectDir, List<Path> classpath) {
+        try {
+            // Log entries have to reach the client before its request completes
+            Configuration.set("writingthread", "false");
+        } catch (UnsupportedOperationException e) {
+            // Logging already initialized
+        }
+        active = true;
+        EntryGlobals.projectDir = projectDir;
+        EntryGlobals.buildscriptClasspath = classpath;
+        Path info = PathUtil.resolveAndCreateDir(projectDir, ".brachyura").resolve("daemon");
+        String token = newToken();
+        try (ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            server.setSoTimeout((int) IDLE_TIMEOUT);
+            try (AtomicFile f = new AtomicFile(info)) {
+                Files.write(f.tempPath, (server.getLocalPort() + "\n" + token + "\n").getBytes(StandardCharsets.UTF_8));
+                f.commit();
+            }
+            Logger.info("Brachyura daemon listening on port {}", server.getLocalPort());
+            boolean running = true;
+            while (running) {
+                Socket socket;
+                try {
+                    socket = server.accept();
+                } catch (SocketTimeoutException e) {
+                    Logger.info("Brachyura daemon idle, stopping");
+                    break;
+                }
+                try (Socket s = socket) {
+                    running = handle(s, token, classpath);
+                } catch (Exception e) {
+                    Logger.warn("Error handling daemon request");
+                    Logger.warn(e);
+                }
+            }
+        } catch (IOException e) {
+            throw Util.sneak(e);
+        } finally {
+            try {
+                // A newer daemon may have replaced us
+                if (Files.isRegularFile(info) && Files.readAllLines(info, StandardCharsets.UTF_8).contains(token)) {
+                    Files.delete(info);
+                }
+            } catch (IOException e) {
+                // Stale file is detected by the client
+            }
+        }
+        System.exit(0);
+    }
+
+    /**
+     * @return if the daemon should keep accepting requests
+     */
+    static boolean handle(Socket socket, String token, List<Path> classpath) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        if (in.readInt() != PROTOCOL) {
+            writeFrame(out, FRAME_STALE, new byte[0], 0, 0);
+            return false;
+        }
+        if (!MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8), in.readUTF().getBytes(StandardCharsets.UTF_8))) {
+            Logger.warn("Rejected daemon request with bad token");
+            return true;
+        }
+        int op = in.readInt();
+        if (op == OP_STOP) {
+            writeExit(out, 0);
+            return false;
+        }
+        int cpSize = in.readInt();
+        ArrayList<String> clientClasspath = new ArrayList<>(cpSize);
+        for (int i = 0; i < cpSize; i++) {
+            clientClasspath.add(in.readUTF());
+        }
+        String[] args = new String[in.readInt()];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = in.readUTF();
+        }
+        String clientJavaHome = in.readUTF();
+        int jvmArgsSize = in.readInt();
+        ArrayList<String> clientJvmArgs = new ArrayList<>(jvmArgsSize);
+        for (int i = 0; i < jvmArgsSize; i++) {
+            clientJvmArgs.add(in.readUTF());
+        }
+        int propertiesSize = in.readInt();
+        HashMap<String, String> properties = new HashMap<>();
+        for (int i = 0; i < propertiesSize; i++) {
+            properties.put(in.readUTF(), in.readUTF());
+        }
+        String offlineEnv = in.readBoolean() ? in.readUTF() : null;
+        ArrayList<String> ourClasspath = new ArrayList<>(classpath.size());
+        for (Path p : classpath) ourClasspath.add(p.toString());
+        if (!ourClasspath.equals(clientClasspath) || !System.getProperty("java.home").equals(clientJavaHome) || !jvmArgs().equals(clientJvmArgs)) {
+            // Brachyura was updated or the client runs another jvm, client will start a new daemon
+            writeFrame(out, FRAME_STALE, new byte[0], 0, 0);
+            return false;
+        }
+        PrintStream oldOut = System.out;
+        PrintStream oldErr = System.err;
+        Map<String, String> oldProperties = setBrachyuraProperties(properties);
+        boolean oldOffline = NetUtil.isOffline();
+        int exitcode;
+        try {
+            NetUtil.setOffline(Boolean.parseBoolean(properties.get("brachyura.offline")) || Boolean.parseBoolean(offlineEnv));
+            System.setOut(new PrintStream(new FrameOutputStream(out, FRAME_OUT), true));
+            System.setErr(new PrintStream(new FrameOutputStream(out, FRAME_ERR), true));
+            exitcode = BrachyuraEntry.run(args, getBuildscriptProject());
+            System.out.flush();
+            System.err.flush();
+        } finally {
+            System.setOut(oldOut);
+            System.setErr(oldErr);
+            setBrachyuraProperties(oldProperties);
+            NetUtil.setOffline(oldOffline);
+        }
+        writeExit(out, exitcode);
+        return true;
+    }
+
+    /**
+     * Same as DaemonClient.jvmArgs, the options that have to match the client's
+     */
+    static List<String> jvmArgs() {
+        ArrayList<String> r = new ArrayList<>();
+        for (String arg : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (arg.startsWith("-Dbrachyura.") || arg.startsWith("-agentlib:jdwp") || arg.startsWith("-Xrunjdwp") || "-Xdebug".equals(arg)) continue;
+            r.add(arg);
+        }
+        return r;
+    }
+
+    /**
+     * Replaces all brachyura system properties besides brachyura.daemon
+     * @return the replaced ones
+     */
+    static Map<String, String> setBrachyuraProperties(Map<String, String> properties) {
+        HashMap<String, String> old = new HashMap<>();
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith("brachyura.") && !"brachyura.daemon".equals(name)) {
+                old.put(name, System.getProperty(name));
+                System.clearProperty(name);
+            }
+        }
+        for (Map.Entry<String, String> e : properties.entrySet()) {
+            System.setProperty(e.getKey(), e.getValue());
+        }
+        return old;
+    }
+
+    /**
+     * Reuses the previous buildscript project, and all its lazily computed state, as long as the buildscript is unchanged
+     */
+    static BuildscriptProject getBuildscriptProject() {
+        BuildscriptProject fresh = new BuildscriptProject();
+        String hash = BuildCache.key().addDir(fresh.getSrcDir()).get();
+        if (buildscriptProject == null || !hash.equals(buildscriptHash)) {
+            buildscriptProject = fresh;
+            buildscriptHash = hash;
+        }
+        return buildscriptProject;
+    }
+
+    static String newToken() {
+        byte[] bytes = new byte[16];
+        new SecureRandom().nextBytes(bytes);
+        return MessageDigestUtil.toHexHash(bytes);
+    }
+
+    static void writeExit(DataOutputStream out, int exitcode) throws IOException {
+        synchronized (out) {
+            out.writeByte(FRAME_EXIT);
+            out.writeInt(exitcode);
+            out.flush();
+        }
+    }
+
+    static void writeFrame(DataOutputStream out, int type, byte[] b, int off, int len) throws IOException {
+        synchronized (out) {
+            out.writeByte(type);
+            out.writeInt(len);
+            out.write(b, off, len);
+            out.flush();
+        }
+    }
+
+    static class FrameOutputStream extends OutputStream {
+        final DataOutputStream out;
+        final int type;
+
+        FrameOutputStream(DataOutputStream out, int type) {
+            this.out = out;
+            this.type = type;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len > 0) writeFrame(out, type, b, off, len);
+        }
+    }
+}
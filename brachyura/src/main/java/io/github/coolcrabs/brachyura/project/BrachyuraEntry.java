@@ -15,15 +15,22 @@ public class BrachyuraEntry {
 
     // Called via reflection by bootstrap
     public static void main(String[] args, Path projectDir, List<Path> classpath) {
+        EntryGlobals.projectDir = projectDir;
+        EntryGlobals.buildscriptClasspath = classpath;
+        System.exit(run(args, new BuildscriptProject()));
+    }
+
+    /**
+     * Runs a single task invocation against buildscriptProject, which may be reused between invocations by the daemon
+     * @return exit code
+     */
+    static int run(String[] args, BuildscriptProject buildscriptProject) {
         int exitcode = 0;
         List<Plugin> plugins = Plugins.getPlugins();
         for (Plugin plugin : plugins) {
             plugin.onEntry();
         }
         try {
-            EntryGlobals.projectDir = projectDir;
-            EntryGlobals.buildscriptClasspath = classpath;
-            BuildscriptProject buildscriptProject = new BuildscriptProject();
             if (args.length >= 1 && "buildscript".equals(args[0])) {
                 Tasks t = new Tasks();
                 buildscriptProject.getTasks(t);
@@ -58,6 +65,6 @@ public class BrachyuraEntry {
         for (Plugin plugin : plugins) {
             plugin.onExit();
         }
-        System.exit(exitcode);
+        return exitcode;
     }
 }
@@ -2,8 +2,12 @@ package io.github.coolcrabs.brachyura.project;
 
 import java.io.File;
 import java.io.InputStream;
+import java.net.MalformedURLException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.CodeSource;
+import java.security.ProtectionDomain;
+import java.security.cert.Certificate;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -25,7 +29,9 @@ import io.github.coolcrabs.brachyura.ide.IdeProject.RunConfig;
 import io.github.coolcrabs.brachyura.ide.IdeProject.RunConfig.RunConfigBuilder;
 import io.github.coolcrabs.brachyura.processing.ProcessingId;
 import io.github.coolcrabs.brachyura.processing.ProcessingSink;
+import io.github.coolcrabs.brachyura.processing.ProcessingSource;
 import io.github.coolcrabs.brachyura.project.java.BaseJavaProject;
+import io.github.coolcrabs.brachyura.project.java.BuildCache;
 import io.github.coolcrabs.brachyura.util.JvmUtil;
 import io.github.coolcrabs.brachyura.util.Lazy;
 import io.github.coolcrabs.brachyura.util.PathUtil;
@@ -97,19 +103,32 @@ class BuildscriptProject extends BaseJavaProject {
     }
 
     public ClassLoader getBuildscriptClassLoader() {
-        JavaCompilationResult compilation = new JavaCompilation()
-            .addSourceDir(getSrcDir())
-            .addClasspath(getCompileDependencies())
-            .addOption(JvmUtil.compileArgs(JvmUtil.CURRENT_JAVA_VERSION, 8))
-            .compile();
-        if (compilation == null) {
-            Logger.warn("Buildscript compilation failed!");
-            return null;
-        } else {
-            BuildscriptClassloader r = new BuildscriptClassloader(BuildscriptProject.class.getClassLoader());
-            compilation.getInputs(r); // TODO replace with custom classloader
-            return r;
+        String[] options = JvmUtil.compileArgs(JvmUtil.CURRENT_JAVA_VERSION, 8);
+        String key = BuildCache.key()
+            .add(System.getProperty("java.version"))
+            .add(Arrays.asList(options))
+            .addFiles(getCompileDependencies())
+            .addDir(getSrcDir())
+            .get();
+        BuildCache cache = new BuildCache(getBuildDir().resolve("cache"));
+        ProcessingSource classes = cache.get(key);
+        if (classes == null) {
+            JavaCompilationResult compilation = new JavaCompilation()
+                .addSourceDir(getSrcDir())
+                .addClasspath(getCompileDependencies())
+                .addOption(options)
+                .incremental(getBuildDir().resolve("incremental"))
+                .compile();
+            if (compilation == null) {
+                Logger.warn("Buildscript compilation failed!");
+                return null;
+            }
+            classes = cache.put(key, compilation);
         }
+        // The cache entry holds every buildscript class, so BuildCache.Key.addClass on any of them hashes all of them
+        BuildscriptClassloader r = new BuildscriptClassloader(BuildscriptProject.class.getClassLoader(), cache.dir(key));
+        classes.getInputs(r); // TODO replace with custom classloader
+        return r;
     }
 
     public List<JavaJarDependency> getIdeDependencies() {
@@ -130,9 +149,15 @@ class BuildscriptProject extends BaseJavaProject {
 
     static class BuildscriptClassloader extends ClassLoader implements ProcessingSink {
         HashMap<String, byte[]> classes = new HashMap<>();
+        final ProtectionDomain domain;
 
-        BuildscriptClassloader(ClassLoader parent) {
+        BuildscriptClassloader(ClassLoader parent, Path location) {
             super(parent);
+            try {
+                this.domain = new ProtectionDomain(new CodeSource(location.toUri().toURL(), (Certificate[]) null), null, this, null);
+            } catch (MalformedURLException e) {
+                throw Util.sneak(e);
+            }
         }
 
         @Override
@@ -152,7 +177,7 @@ class BuildscriptProject extends BaseJavaProject {
         protected Class<?> findClass(String name) throws ClassNotFoundException {
             byte[] data = classes.get(name);
             if (data == null) return super.findClass(name);
-            return defineClass(name, data, 0, data.length);
+            return defineClass(name, data, 0, data.length, domain);
         }
     }
 }
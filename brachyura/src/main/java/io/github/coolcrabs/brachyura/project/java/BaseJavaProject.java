@@ -13,10 +13,12 @@ import io.github.coolcrabs.brachyura.ide.IdeProject;
 import io.github.coolcrabs.brachyura.ide.Intellijank;
 import io.github.coolcrabs.brachyura.processing.ProcessorChain;
 import io.github.coolcrabs.brachyura.processing.sinks.DirectoryProcessingSink;
+import io.github.coolcrabs.brachyura.project.BrachyuraDaemon;
 import io.github.coolcrabs.brachyura.project.Project;
 import io.github.coolcrabs.brachyura.project.Task;
 import io.github.coolcrabs.brachyura.util.JvmUtil;
 import io.github.coolcrabs.brachyura.util.PathUtil;
+import io.github.coolcrabs.brachyura.util.StreamUtil;
 import io.github.coolcrabs.brachyura.util.Util;
 import java.io.File;
 import java.nio.file.Files;
@@ -88,11 +90,16 @@ public abstract class BaseJavaProject extends Project {
             command.add(cpStr.toString());
             command.add(rc.mainClass);
             command.addAll(rc.args.get());
-            new ProcessBuilder(command)
-                .inheritIO()
-                .directory(rc.cwd.toFile())
-                .start()
-                .waitFor();
+            ProcessBuilder builder = new ProcessBuilder(command).directory(rc.cwd.toFile());
+            if (BrachyuraDaemon.isActive()) {
+                // Daemon stdio isn't the user's terminal, forward to the client instead
+                Process process = builder.redirectErrorStream(true).start();
+                process.getOutputStream().close();
+                StreamUtil.copy(process.getInputStream(), System.out);
+                process.waitFor();
+            } else {
+                builder.inheritIO().start().waitFor();
+            }
         } catch (Exception e) {
             throw Util.sneak(e);
         }
@@ -0,0 +1,237 @@
+package io.github.coolcrabs.brachyura.project.java;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.jetbrains.annotations.Nullable;
+
+import io.github.coolcrabs.brachyura.processing.ProcessingSource;
+import io.github.coolcrabs.brachyura.processing.sinks.DirectoryProcessingSink;
+import io.github.coolcrabs.brachyura.processing.sources.DirectoryProcessingSource;
+import io.github.coolcrabs.brachyura.util.AtomicDirectory;
+import io.github.coolcrabs.brachyura.util.AtomicFile;
+import io.github.coolcrabs.brachyura.util.MessageDigestUtil;
+import io.github.coolcrabs.brachyura.util.PathUtil;
+import io.github.coolcrabs.brachyura.util.Util;
+
+/**
+ * Content addressed store of build outputs, keyed by a hash of everything that went into them
+ */
+public class BuildCache {
+    static final int KEY_LENGTH = 64; // Hex sha256
+    static final int KEEP = 4;
+
+    final Path dir;
+
+    public BuildCache(Path dir) {
+        this.dir = dir;
+    }
+
+    public static Key key() {
+        return new Key();
+    }
+
+    /**
+     * @return where the outputs stored under key are kept, whether or not they exist yet
+     */
+    public Path dir(String key) {
+        return dir.resolve(key);
+    }
+
+    public @Nullable ProcessingSource get(String key) {
+        Path p = dir(key);
+        if (!Files.isDirectory(p)) return null;
+        try {
+            Files.setLastModifiedTime(p, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // Only used for pruning
+        }
+        return new DirectoryProcessingSource(p);
+    }
+
+    /**
+     * Stores the outputs of source under key and returns a source reading them back from the cache
+     */
+    public ProcessingSource put(String key, ProcessingSource source) {
+        Path p = dir(key);
+        if (!Files.isDirectory(p)) {
+            try (AtomicDirectory a = new AtomicDirectory(p)) {
+                source.getInputs(new DirectoryProcessingSink(a.tempPath));
+                a.commit();
+            }
+            prune();
+        }
+        return new DirectoryProcessingSource(p);
+    }
+
+    /**
+     * @return if output was last written by {@link #markUpToDate} with the same key and hasn't been touched since
+     */
+    public boolean isUpToDate(Path output, String key) {
+        try {
+            Path marker = marker(output);
+            if (!Files.isRegularFile(output) || !Files.isRegularFile(marker)) return false;
+            List<String> lines = Files.readAllLines(marker, StandardCharsets.UTF_8);
+            return lines.size() == 2 && key.equals(lines.get(0)) && lines.get(1).equals(String.valueOf(Files.getLastModifiedTime(output).toMillis()));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public void markUpToDate(Path output, String key) {
+        try {
+            try (AtomicFile f = new AtomicFile(marker(output))) {
+                Files.write(f.tempPath, (key + "\n" + Files.getLastModifiedTime(output).toMillis() + "\n").getBytes(StandardCharsets.UTF_8));
+                f.commit();
+            }
+        } catch (IOException e) {
+            throw Util.sneak(e);
+        }
+    }
+
+    Path marker(Path output) {
+        Key k = key().add(output.toAbsolutePath().toString());
+        return dir.resolve("outputs").resolve(k.get() + ".key");
+    }
+
+    void prune() {
+        try {
+            ArrayList<Path> entries = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                for (Path p : stream) {
+                    // Temp dirs from other processes have longer names
+                    if (p.getFileName().toString().length() == KEY_LENGTH && Files.isDirectory(p)) entries.add(p);
+                }
+            }
+            if (entries.size() <= KEEP) return;
+            entries.sort(Comparator.comparing((Path p) -> {
+                try {
+                    return Files.getLastModifiedTime(p);
+                } catch (IOException e) {
+                    throw Util.sneak(e);
+                }
+            }).reversed());
+            for (Path p : entries.subList(KEEP, entries.size())) {
+                PathUtil.deleteDirectory(p);
+            }
+        } catch (Exception e) {
+            throw Util.sneak(e);
+        }
+    }
+
+    public static class Key {
+        final MessageDigest md = MessageDigestUtil.messageDigest(MessageDigestUtil.SHA256);
+
+        Key() { }
+
+        public Key add(String string) {
+            MessageDigestUtil.update(md, string);
+            MessageDigestUtil.update(md, 0); // Separator
+            return this;
+        }
+
+        public Key add(List<String> strings) {
+            MessageDigestUtil.update(md, strings.size());
+            for (String s : strings) add(s);
+            return this;
+        }
+
+        /**
+         * Hashes the relative path and contents of every file in dir
+         */
+        public Key addDir(Path dir) {
+            if (!Files.isDirectory(dir)) return add("missing " + dir);
+            try {
+                List<Path> files;
+                try (Stream<Path> s = Files.walk(dir)) {
+                    files = s.filter(Files::isRegularFile).map(dir::relativize).collect(Collectors.toList());
+                }
+                Collections.sort(files);
+                MessageDigestUtil.update(md, files.size());
+                byte[] buf = new byte[8192];
+                for (Path f : files) {
+                    add(f.toString());
+                    try (InputStream in = Files.newInputStream(dir.resolve(f))) {
+                        int read;
+                        while ((read = in.read(buf)) != -1) {
+                            md.update(buf, 0, read);
+                        }
+                    }
+                }
+                return this;
+            } catch (IOException e) {
+                throw Util.sneak(e);
+            }
+        }
+
+        /**
+         * Hashes path, size and modification time of each file instead of the contents
+         * Meant for jars which are large and rarely change in place
+         */
+        public Key addFiles(List<Path> files) {
+            MessageDigestUtil.update(md, files.size());
+            try {
+                for (Path f : files) {
+                    add(f.toAbsolutePath().toString());
+                    if (Files.exists(f)) {
+                        MessageDigestUtil.update(md, Files.size(f));
+                        MessageDigestUtil.update(md, Files.getLastModifiedTime(f).toMillis());
+                    }
+                }
+            } catch (IOException e) {
+                throw Util.sneak(e);
+            }
+            return this;
+        }
+
+        /**
+         * Hashes everything loaded from the same place as a class, for example the whole buildscript so changing any of
+         * its classes invalidates what it produced
+         * Classes without a file location only have their own bytecode hashed
+         */
+        public Key addClass(Class<?> clazz) {
+            CodeSource codeSource = clazz.getProtectionDomain().getCodeSource();
+            URL location = codeSource == null ? null : codeSource.getLocation();
+            if (location != null && "file".equals(location.getProtocol())) {
+                try {
+                    Path p = Paths.get(location.toURI());
+                    if (Files.isDirectory(p)) return add("dir").addDir(p);
+                    if (Files.isRegularFile(p)) return add("file").addFiles(Collections.singletonList(p));
+                } catch (URISyntaxException e) {
+                    throw Util.sneak(e);
+                }
+            }
+            try (InputStream in = clazz.getResourceAsStream("/" + clazz.getName().replace('.', '/') + ".class")) {
+                if (in == null) return add("unknown " + clazz.getName());
+                byte[] buf = new byte[8192];
+                int read;
+                while ((read = in.read(buf)) != -1) {
+                    md.update(buf, 0, read);
+                }
+                return this;
+            } catch (IOException e) {
+                throw Util.sneak(e);
+            }
+        }
+
+        public String get() {
+            return MessageDigestUtil.toHexHash(md.digest());
+        }
+    }
+}
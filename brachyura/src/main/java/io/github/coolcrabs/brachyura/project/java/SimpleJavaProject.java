@@ -60,6 +60,7 @@ public abstract class SimpleJavaProject extends BaseJavaProject {
             .addSourceDir(getSrcDir())
             .addClasspath(getCompileDependencies())
             .addOption(JvmUtil.compileArgs(JvmUtil.CURRENT_JAVA_VERSION, getJavaVersion()))
+            .incremental(getBuildDir().resolve("incremental"))
             .compile();
         ProcessingSponge classes = new ProcessingSponge();
         compilation.getInputs(classes);
@@ -1,5 +1,6 @@
 package io.github.coolcrabs.brachyura.util;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -10,16 +11,38 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.text.CharacterIterator;
 import java.text.StringCharacterIterator;
 import java.util.Base64;
+import java.util.concurrent.TimeUnit;
 import java.util.zip.GZIPInputStream;
 import org.jetbrains.annotations.Nullable;
 import org.tinylog.Logger;
 
+import io.github.coolcrabs.brachyura.exception.OfflineException;
+
 public class NetUtil {
     private NetUtil() { }
 
+    static volatile boolean offline = Boolean.getBoolean("brachyura.offline") || Boolean.parseBoolean(System.getenv("BRACHYURA_OFFLINE"));
+
+    /**
+     * In offline mode everything has to come from caches or file urls, anything else fails fast with {@link OfflineException}
+     */
+    public static boolean isOffline() {
+        return offline;
+    }
+
+    public static void setOffline(boolean offline) {
+        NetUtil.offline = offline;
+    }
+
+    public static void checkOnline(URL url) {
+        if (offline && !"file".equals(url.getProtocol())) throw new OfflineException(url.toString());
+    }
+
     public static URL url(String url) {
         try {
             return new URL(url);
@@ -36,7 +59,13 @@ public class NetUtil {
         }
     }
 
+    /**
+     * Read the stream fully and close it, the jdk then keeps the connection alive and reuses it for the next request to the same host
+     */
     public static InputStream inputStream(URL url) {
+        checkOnline(url);
+        Path negative = "file".equals(url.getProtocol()) ? null : negativePath(url);
+        if (negative != null && isKnownMissing(negative)) throw Util.sneak(new FileNotFoundException(url.toString() + " (cached)"));
         try {
             URLConnection con = url.openConnection();
             con.addRequestProperty("Accept-Encoding", "gzip");
@@ -47,10 +76,38 @@ public class NetUtil {
             } else {
                 return con.getInputStream();
             }
+        } catch (FileNotFoundException e) {
+            if (negative != null) {
+                try {
+                    Files.createDirectories(negative.getParent());
+                    Files.write(negative, url.toString().getBytes(StandardCharsets.UTF_8));
+                } catch (IOException e2) {
+                    // Only an optimization
+                }
+            }
+            throw Util.sneak(e);
         } catch (IOException e) {
             throw Util.sneak(e);
         }
     }
+
+    // Urls that 404d are not requested again until this has passed
+    static long negativeTtl() {
+        return TimeUnit.HOURS.toMillis(Long.getLong("brachyura.negativettl", 24));
+    }
+
+    static boolean isKnownMissing(Path negative) {
+        try {
+            return Files.isRegularFile(negative) && System.currentTimeMillis() - Files.getLastModifiedTime(negative).toMillis() < negativeTtl();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    static Path negativePath(URL url) {
+        String hash = MessageDigestUtil.toHexHash(MessageDigestUtil.messageDigest(MessageDigestUtil.SHA256).digest(url.toString().getBytes(StandardCharsets.UTF_8)));
+        return PathUtil.cachePath().resolve("negative").resolve(hash.substring(0, 2)).resolve(hash);
+    }
     
     // https://stackoverflow.com/a/3758880
     public static String humanReadableByteCountSI(long bytes) {
@@ -68,6 +125,7 @@ public class NetUtil {
     // https://gist.github.com/luankevinferreira/5221ea62e874a9b29d86b13a2637517b
     // https://stackoverflow.com/a/3283496
     public static void put(URL url, InputStream is, @Nullable String username, @Nullable String password) {
+        checkOnline(url);
         try {
             Logger.info("Uploading to {}...", url);
             URLConnection con = url.openConnection();
@@ -0,0 +1,237 @@
+package io.github.coolcrabs.brachyura.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jetbrains.annotations.Nullable;
+import org.tinylog.Logger;
+
+import io.github.coolcrabs.brachyura.exception.IncorrectHashException;
+
+/**
+ * Downloads many files at once on a bounded pool, verifying sha1 and size of each
+ * Progress is logged in aggregate instead of once per file
+ */
+public class ParallelDownloader {
+    static final int TIMEOUT = 30000;
+    static final long PROGRESS_INTERVAL = 2000;
+
+    final ArrayList<Download> downloads = new ArrayList<>();
+    final int threads;
+    int retries = 3;
+    long backoff = 500;
+
+    public ParallelDownloader() {
+        this(8);
+    }
+
+    public ParallelDownloader(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * @param retries extra attempts for each file after the first fails
+     */
+    public ParallelDownloader retries(int retries) {
+        this.retries = retries;
+        return this;
+    }
+
+    /**
+     * @param backoff delay in millis before the first retry, doubled for each following one
+     */
+    public ParallelDownloader backoff(long backoff) {
+        this.backoff = backoff;
+        return this;
+    }
+
+    /**
+     * @param sha1 expected hash or null to skip verification
+     * @param size expected size or -1 if unknown
+     */
+    public ParallelDownloader add(URL url, Path target, @Nullable String sha1, long size) {
+        downloads.add(new Download(url, target, sha1, size));
+        return this;
+    }
+
+    public int size() {
+        return downloads.size();
+    }
+
+    /**
+     * Downloads everything added so far, throwing the first failure once the remaining downloads are stopped
+     */
+    public void download() {
+        if (downloads.isEmpty()) return;
+        ExecutorService executor = Util.daemonPool("ParallelDownloader", Math.min(threads, downloads.size()));
+        Progress progress = new Progress();
+        try {
+            List<Future<?>> futures = new ArrayList<>(downloads.size());
+            for (Download d : downloads) {
+                futures.add(executor.submit(() -> {
+                    download(d, progress);
+                    return null;
+                }));
+            }
+            long start = System.nanoTime();
+            long lastReport = start;
+            for (Future<?> f : futures) {
+                boolean done = false;
+                while (!done) {
+                    try {
+                        f.get(PROGRESS_INTERVAL, TimeUnit.MILLISECONDS);
+                        done = true;
+                    } catch (TimeoutException e) {
+                        // Keep waiting
+                    }
+                    long now = System.nanoTime();
+                    if (now - lastReport >= TimeUnit.MILLISECONDS.toNanos(PROGRESS_INTERVAL)) {
+                        report(progress, now - start);
+                        lastReport = now;
+                    }
+                }
+            }
+            report(progress, System.nanoTime() - start);
+        } catch (ExecutionException e) {
+            throw Util.sneak(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw Util.sneak(e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    void report(Progress progress, long nanos) {
+        long bytes = progress.bytes.get();
+        double seconds = Math.max(nanos / 1e9, 0.001);
+        Logger.info(
+            "Downloaded {}/{} files ({}, {}/s)",
+            progress.files.get(),
+            downloads.size(),
+            NetUtil.humanReadableByteCountSI(bytes),
+            NetUtil.humanReadableByteCountSI((long) (bytes / seconds))
+        );
+    }
+
+    void download(Download d, Progress progress) throws Exception {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                downloadOnce(d, progress);
+                progress.files.incrementAndGet();
+                return;
+            } catch (IOException | IncorrectHashException e) {
+                if (attempt >= retries || !retryable(e)) throw e;
+                Logger.warn("Retrying {} after {}", d.url, e.toString());
+                Thread.sleep(backoff << Math.min(attempt, 16));
+            }
+        }
+    }
+
+    static boolean retryable(Exception e) {
+        if (e instanceof HttpStatusException) {
+            int code = ((HttpStatusException) e).code;
+            return code == 429 || code >= 500;
+        }
+        return true;
+    }
+
+    static void downloadOnce(Download d, Progress progress) throws IOException {
+        NetUtil.checkOnline(d.url);
+        URLConnection con = d.url.openConnection();
+        con.setConnectTimeout(TIMEOUT);
+        con.setReadTimeout(TIMEOUT);
+        if (con instanceof HttpURLConnection) {
+            HttpURLConnection http = (HttpURLConnection) con;
+            int code = http.getResponseCode();
+            if (code != HttpURLConnection.HTTP_OK) {
+                // Drain so the connection can be reused, see NetUtil.inputStream
+                InputStream err = http.getErrorStream();
+                if (err != null) {
+                    try (InputStream e = err) {
+                        drain(e);
+                    }
+                }
+                throw new HttpStatusException(d.url, code);
+            }
+        }
+        MessageDigest md = MessageDigestUtil.messageDigest(MessageDigestUtil.SHA1);
+        long read = 0;
+        try (AtomicFile atomicFile = new AtomicFile(d.target)) {
+            try (
+                InputStream in = con.getInputStream();
+                OutputStream out = Files.newOutputStream(atomicFile.tempPath);
+            ) {
+                byte[] buf = new byte[8192];
+                int r;
+                while ((r = in.read(buf)) != -1) {
+                    md.update(buf, 0, r);
+                    out.write(buf, 0, r);
+                    read += r;
+                    progress.bytes.addAndGet(r);
+                }
+            }
+            if (d.size != -1 && read != d.size) {
+                throw new IOException("Expected " + d.size + " bytes from " + d.url + " got " + read);
+            }
+            if (d.sha1 != null) {
+                String hash = MessageDigestUtil.toHexHash(md.digest());
+                if (!hash.equalsIgnoreCase(d.sha1)) {
+                    throw new IncorrectHashException(d.sha1, hash);
+                }
+            }
+            atomicFile.commit();
+        }
+    }
+
+    static void drain(InputStream in) throws IOException {
+        byte[] buf = new byte[1024];
+        while (in.read(buf) != -1) {
+            // Discard
+        }
+    }
+
+    static class Download {
+        final URL url;
+        final Path target;
+        final @Nullable String sha1;
+        final long size;
+
+        Download(URL url, Path target, @Nullable String sha1, long size) {
+            this.url = url;
+            this.target = target;
+            this.sha1 = sha1;
+            this.size = size;
+        }
+    }
+
+    static class Progress {
+        final AtomicInteger files = new AtomicInteger();
+        final AtomicLong bytes = new AtomicLong();
+    }
+
+    public static class HttpStatusException extends IOException {
+        public final int code;
+
+        HttpStatusException(URL url, int code) {
+            super("HTTP " + code + " from " + url);
+            this.code = code;
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package io.github.coolcrabs.brachyura.util;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Read only zip backed by positional reads of an open file channel
+ * The central directory is parsed once, entries are read straight from the file and are safe to read from multiple threads
+ * Closing releases the file right away, which matters on windows where open files can't be replaced or deleted
+ * Interrupting a thread while it reads closes the channel, like with any interruptible channel
+ */
+public class RandomAccessZipFile implements Closeable {
+    static final int LOC_SIG = 0x04034b50;
+    static final int CEN_SIG = 0x02014b50;
+    static final int END_SIG = 0x06054b50;
+    static final int ZIP64_END_SIG = 0x06064b50;
+    static final int ZIP64_LOC_SIG = 0x07064b50;
+
+    public final Path path;
+    final FileChannel channel;
+    final List<Entry> entries;
+    final HashMap<String, Entry> byName;
+
+    public RandomAccessZipFile(Path path) {
+        this.path = path;
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+            try {
+                entries = Collections.unmodifiableList(readCentralDirectory());
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+            byName = new HashMap<>(entries.size() * 2);
+            for (Entry e : entries) {
+                byName.putIfAbsent(e.name, e);
+            }
+        } catch (IOException e) {
+            throw Util.sneak(e);
+        }
+    }
+
+    public List<Entry> entries() {
+        return entries;
+    }
+
+    public @Nullable Entry getEntry(String name) {
+        return byName.get(name);
+    }
+
+    /**
+     * @return the raw (possibly compressed) bytes of the entry
+     */
+    public ByteBuffer rawData(Entry entry) {
+        if (entry.compressedSize > Integer.MAX_VALUE - 8) throw Util.sneak(new ZipException("Entry too large " + entry.name));
+        try {
+            return read(dataStart(entry), (int) entry.compressedSize);
+        } catch (IOException e) {
+            throw Util.sneak(e);
+        }
+    }
+
+    public InputStream getInputStream(Entry entry) {
+        InputStream raw = new ChannelInputStream(dataStart(entry), entry.compressedSize);
+        if (entry.method == 0) {
+            return raw;
+        } else if (entry.method == 8) {
+            return new EntryInflaterInputStream(raw, (int) Math.min(Math.max(entry.compressedSize, 64), 8192));
+        } else {
+            throw Util.sneak(new ZipException("Unsupported compression method " + entry.method + " for " + entry.name + " in " + path));
+        }
+    }
+
+    public byte[] readAllBytes(Entry entry) {
+        if (entry.size > Integer.MAX_VALUE - 8) throw Util.sneak(new ZipException("Entry too large " + entry.name));
+        if (entry.method == 0) {
+            return rawData(entry).array();
+        }
+        try (InputStream in = getInputStream(entry)) {
+            byte[] r = new byte[(int) entry.size];
+            int off = 0;
+            while (off < r.length) {
+                int read = in.read(r, off, r.length - off);
+                if (read == -1) throw new EOFException("Truncated entry " + entry.name + " in " + path);
+                off += read;
+            }
+            return r;
+        } catch (IOException e) {
+            throw Util.sneak(e);
+        }
+    }
+
+    ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (b.hasRemaining()) {
+            if (channel.read(b, position + b.position()) == -1) throw new EOFException("Unexpected end of " + path);
+        }
+        b.flip();
+        return b;
+    }
+
+    long dataStart(Entry entry) {
+        long r = entry.dataStart;
+        if (r == -1) {
+            try {
+                ByteBuffer loc = read(entry.localHeaderOffset, 30);
+                if (loc.getInt(0) != LOC_SIG) throw new ZipException("Bad local header for " + entry.name + " in " + path);
+                r = entry.localHeaderOffset + 30 + (loc.getShort(26) & 0xFFFF) + (loc.getShort(28) & 0xFFFF);
+            } catch (IOException e) {
+                throw Util.sneak(e);
+            }
+            entry.dataStart = r;
+        }
+        return r;
+    }
+
+    List<Entry> readCentralDirectory() throws IOException {
+        long size = channel.size();
+        int tailSize = (int) Math.min(size, 22 + 0xFFFF);
+        long tailStart = size - tailSize;
+        ByteBuffer tail = read(tailStart, tailSize);
+        int end = -1;
+        for (int i = tailSize - 22; i >= 0; i--) {
+            if (tail.getInt(i) == END_SIG) {
+                end = i;
+                break;
+            }
+        }
+        if (end == -1) throw new ZipException("Missing end of central directory in " + path);
+        long count = tail.getShort(end + 10) & 0xFFFF;
+        long cenSize = tail.getInt(end + 12) & 0xFFFFFFFFL;
+        long cenOffset = tail.getInt(end + 16) & 0xFFFFFFFFL;
+        long zip64Loc = tailStart + end - 20;
+        if (zip64Loc >= 0) {
+            ByteBuffer loc = read(zip64Loc, 20);
+            if (loc.getInt(0) == ZIP64_LOC_SIG) {
+                ByteBuffer zip64End = read(loc.getLong(8), 56);
+                if (zip64End.getInt(0) != ZIP64_END_SIG) throw new ZipException("Bad zip64 end of central directory in " + path);
+                count = zip64End.getLong(32);
+                cenSize = zip64End.getLong(40);
+                cenOffset = zip64End.getLong(48);
+            }
+        }
+        if (cenSize > Integer.MAX_VALUE - 8) throw new ZipException("Central directory too large in " + path);
+        ByteBuffer cen = read(cenOffset, (int) cenSize);
+        ArrayList<Entry> r = new ArrayList<>((int) Math.min(count, 1 << 20));
+        int pos = 0;
+        for (long i = 0; i < count; i++) {
+            if (cen.getInt(pos) != CEN_SIG) throw new ZipException("Bad central directory entry in " + path);
+            Entry e = new Entry();
+            int flags = cen.getShort(pos + 8) & 0xFFFF;
+            if ((flags & 1) != 0) throw new ZipException("Encrypted entries are unsupported in " + path);
+            e.method = cen.getShort(pos + 10) & 0xFFFF;
+            e.crc = cen.getInt(pos + 16) & 0xFFFFFFFFL;
+            e.compressedSize = cen.getInt(pos + 20) & 0xFFFFFFFFL;
+            e.size = cen.getInt(pos + 24) & 0xFFFFFFFFL;
+            int nameLen = cen.getShort(pos + 28) & 0xFFFF;
+            int extraLen = cen.getShort(pos + 30) & 0xFFFF;
+            int commentLen = cen.getShort(pos + 32) & 0xFFFF;
+            e.localHeaderOffset = cen.getInt(pos + 42) & 0xFFFFFFFFL;
+            e.name = new String(cen.array(), pos + 46, nameLen, StandardCharsets.UTF_8);
+            readZip64Extra(cen, e, pos + 46 + nameLen, extraLen);
+            r.add(e);
+            pos += 46 + nameLen + extraLen + commentLen;
+        }
+        return r;
+    }
+
+    static void readZip64Extra(ByteBuffer cen, Entry e, int pos, int len) {
+        int end = pos + len;
+        while (pos + 4 <= end) {
+            int id = cen.getShort(pos) & 0xFFFF;
+            int size = cen.getShort(pos + 2) & 0xFFFF;
+            if (id == 0x0001) {
+                int p = pos + 4;
+                if (e.size == 0xFFFFFFFFL) {
+                    e.size = cen.getLong(p);
+                    p += 8;
+                }
+                if (e.compressedSize == 0xFFFFFFFFL) {
+                    e.compressedSize = cen.getLong(p);
+                    p += 8;
+                }
+                if (e.localHeaderOffset == 0xFFFFFFFFL) {
+                    e.localHeaderOffset = cen.getLong(p);
+                }
+                return;
+            }
+            pos += 4 + size;
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw Util.sneak(e);
+        }
+    }
+
+    public static class Entry {
+        String name;
+        int method;
+        long crc;
+        long compressedSize;
+        long size;
+        long localHeaderOffset;
+        volatile long dataStart = -1;
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isDirectory() {
+            return name.endsWith("/");
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getCrc() {
+            return crc;
+        }
+    }
+
+    // Each stream keeps its own position so streams of different entries can be read concurrently
+    class ChannelInputStream extends InputStream {
+        long position;
+        final long end;
+
+        ChannelInputStream(long position, long length) {
+            this.position = position;
+            this.end = position + length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (position >= end) return -1;
+            int r = channel.read(ByteBuffer.wrap(bytes, off, (int) Math.min(len, end - position)), position);
+            if (r == -1) throw new EOFException("Unexpected end of " + path);
+            position += r;
+            return r;
+        }
+
+        @Override
+        public long skip(long n) {
+            long r = Math.max(0, Math.min(n, end - position));
+            position += r;
+            return r;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(end - position, Integer.MAX_VALUE);
+        }
+    }
+
+    static class EntryInflaterInputStream extends InflaterInputStream {
+        boolean eof = false;
+
+        EntryInflaterInputStream(InputStream in, int size) {
+            super(in, new Inflater(true), size);
+        }
+
+        // Same as ZipFile, nowrap inflaters may need an extra dummy byte
+        @Override
+        protected void fill() throws IOException {
+            if (eof) throw new EOFException("Unexpected end of ZLIB input stream");
+            len = in.read(buf, 0, buf.length);
+            if (len == -1) {
+                buf[0] = 0;
+                len = 1;
+                eof = true;
+            }
+            inf.setInput(buf, 0, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            inf.end();
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package io.github.coolcrabs.brachyura.util;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 public class Util {
     private Util() { }
 
@@ -11,4 +14,15 @@ public class Util {
     public static <T extends Throwable> void unsneak() throws T {
         //noop
     }
+
+    /**
+     * Fixed size pool of daemon threads, so a task that fails before shutting it down doesn't keep the jvm alive
+     */
+    public static ExecutorService daemonPool(String name, int threads) {
+        return Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        });
+    }
 }
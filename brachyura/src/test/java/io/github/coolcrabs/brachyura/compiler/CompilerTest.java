@@ -1,8 +1,29 @@
 package io.github.coolcrabs.brachyura.compiler;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import javax.tools.StandardLocation;
 
 import org.junit.jupiter.api.Test;
 
@@ -28,4 +49,140 @@ class CompilerTest {
             assertTrue(sourceFile.startsWith(src));
         });
     } 
+
+    @Test
+    void incremental() throws Exception {
+        Path dir = Files.createTempDirectory("brachyura");
+        Path src = dir.resolve("src");
+        Path state = dir.resolve("incremental");
+        Files.createDirectories(src.resolve("a"));
+        write(src.resolve("a/A.java"), "package a; public class A { public static int f() { return 1; } }");
+        write(src.resolve("a/B.java"), "package a; public class B { int g() { return A.f(); } }");
+        write(src.resolve("a/C.java"), "package a; public class C { }");
+        assertEquals(3, count(compile(src, state)));
+        Path aClass = state.resolve("classes/a/A.class");
+        Path bClass = state.resolve("classes/a/B.class");
+        Path cClass = state.resolve("classes/a/C.class");
+        FileTime old = FileTime.fromMillis(0);
+        Files.setLastModifiedTime(aClass, old);
+        Files.setLastModifiedTime(bClass, old);
+        Files.setLastModifiedTime(cClass, old);
+        // Unrelated change
+        write(src.resolve("a/C.java"), "package a; public class C { int c; }");
+        assertEquals(3, count(compile(src, state)));
+        assertEquals(old, Files.getLastModifiedTime(aClass));
+        assertEquals(old, Files.getLastModifiedTime(bClass));
+        assertFalse(old.equals(Files.getLastModifiedTime(cClass)));
+        // Dependents are recompiled
+        write(src.resolve("a/A.java"), "package a; public class A { public static int f() { return 2; } }");
+        assertEquals(3, count(compile(src, state)));
+        assertFalse(old.equals(Files.getLastModifiedTime(bClass)));
+        // Stale outputs are removed and references to them fail
+        Files.delete(src.resolve("a/C.java"));
+        JavaCompilationResult r = compile(src, state);
+        assertEquals(2, count(r));
+        assertFalse(Files.exists(cClass));
+        write(src.resolve("a/B.java"), "package a; public class B { C c; }");
+        assertNull(compile(src, state));
+        write(src.resolve("a/B.java"), "package a; public class B { }");
+        assertNotNull(compile(src, state));
+        PathUtil.deleteDirectory(dir);
+    }
+
+    @Test
+    void mergedOutput() throws Exception {
+        Path dir = Files.createTempDirectory("brachyura");
+        Path src = dir.resolve("src");
+        Path state = dir.resolve("incremental");
+        Files.createDirectories(src.resolve("a"));
+        write(src.resolve("a/A.java"), "package a; public class A { }");
+        write(src.resolve("a/B.java"), "package a; public class B { }");
+        Path listing = state.resolve("classes/listing.txt");
+        Path aClass = state.resolve("classes/a/A.class");
+        compileListing(src, state);
+        assertEquals("a.A\na.B\n", new String(Files.readAllBytes(listing), StandardCharsets.UTF_8));
+        FileTime old = FileTime.fromMillis(0);
+        Files.setLastModifiedTime(aClass, old);
+        // The processor only sees B but A is kept from the previous output instead of recompiling everything
+        write(src.resolve("a/B.java"), "package a; public class B { int b; }");
+        write(src.resolve("a/C.java"), "package a; public class C { }");
+        compileListing(src, state);
+        assertEquals(old, Files.getLastModifiedTime(aClass));
+        assertEquals("a.A\na.B\na.C\n", new String(Files.readAllBytes(listing), StandardCharsets.UTF_8));
+        // Removed classes are passed to the merger as well
+        Files.delete(src.resolve("a/C.java"));
+        write(src.resolve("a/B.java"), "package a; public class B { }");
+        compileListing(src, state);
+        assertEquals(old, Files.getLastModifiedTime(aClass));
+        assertEquals("a.A\na.B\n", new String(Files.readAllBytes(listing), StandardCharsets.UTF_8));
+        PathUtil.deleteDirectory(dir);
+    }
+
+    static void compileListing(Path src, Path state) throws Exception {
+        JavaCompilationResult r = new JavaCompilation()
+            .addSourceDir(src)
+            .addClasspath(Paths.get(ListingProcessor.class.getProtectionDomain().getCodeSource().getLocation().toURI()))
+            .addOption("-processor", ListingProcessor.class.getName())
+            .mergeOutput("listing.txt", (previous, current, recompiled) -> {
+                TreeSet<String> names = new TreeSet<>();
+                for (String s : new String(previous, StandardCharsets.UTF_8).split("\n")) {
+                    if (!s.isEmpty() && !recompiled.contains(s)) names.add(s);
+                }
+                for (String s : new String(current, StandardCharsets.UTF_8).split("\n")) {
+                    if (!s.isEmpty()) names.add(s);
+                }
+                StringBuilder b = new StringBuilder();
+                for (String s : names) b.append(s).append('\n');
+                return b.toString().getBytes(StandardCharsets.UTF_8);
+            })
+            .incremental(state)
+            .compile();
+        assertNotNull(r);
+    }
+
+    // Lists the classes it was given, like the mixin ap only knows about the mixins being compiled
+    @SupportedAnnotationTypes("*")
+    public static class ListingProcessor extends AbstractProcessor {
+        final TreeSet<String> names = new TreeSet<>();
+
+        @Override
+        public SourceVersion getSupportedSourceVersion() {
+            return SourceVersion.latestSupported();
+        }
+
+        @Override
+        public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+            for (Element e : roundEnv.getRootElements()) {
+                if (e instanceof TypeElement) names.add(((TypeElement) e).getQualifiedName().toString());
+            }
+            if (roundEnv.processingOver()) {
+                try (Writer w = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", "listing.txt").openWriter()) {
+                    for (String s : names) w.write(s + "\n");
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return false;
+        }
+    }
+
+    static JavaCompilationResult compile(Path src, Path state) {
+        return new JavaCompilation()
+            .addSourceDir(src)
+            .incremental(state)
+            .compile();
+    }
+
+    static int count(JavaCompilationResult r) {
+        int[] count = new int[1];
+        r.getInputs((in, id) -> {
+            count[0]++;
+            assertTrue(r.getSourceFile(id).getFileName().toString().endsWith(".java"));
+        });
+        return count[0];
+    }
+
+    static void write(Path p, String s) throws Exception {
+        Files.write(p, s.getBytes(StandardCharsets.UTF_8));
+    }
 }
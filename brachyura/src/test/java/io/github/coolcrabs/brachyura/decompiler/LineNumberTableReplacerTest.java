@@ -1,6 +1,10 @@
 package io.github.coolcrabs.brachyura.decompiler;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
@@ -8,6 +12,8 @@ import java.io.DataOutputStream;
 
 import org.junit.jupiter.api.Test;
 
+import io.github.coolcrabs.brachyura.decompiler.DecompileLineNumberTable.ClassLineMap;
+import io.github.coolcrabs.brachyura.decompiler.DecompileLineNumberTable.LineRemap;
 import io.github.coolcrabs.brachyura.decompiler.LineNumberTableReplacer.ClassFile;
 import io.github.coolcrabs.brachyura.util.StreamUtil;
 
@@ -42,4 +48,33 @@ class LineNumberTableReplacerTest {
             }
         }
     }
+
+    @Test
+    void patchMatchesRewrite() throws Exception {
+        byte[] bytes;
+        try (DataInputStream in = new DataInputStream(this.getClass().getClassLoader().getResourceAsStream("io/github/coolcrabs/brachyura/decompiler/LineNumberTableReplacerTest.class"))) {
+            bytes = StreamUtil.readFullyAsBytes(in);
+        }
+        DecompileLineNumberTable table = new DecompileLineNumberTable();
+        assertSame(bytes, LineNumberTableReplacer.patchLineNumbers(bytes, table));
+        int[] stupid = new int[200];
+        for (int i = 0; i < 100; i++) {
+            stupid[i * 2] = i;
+            stupid[i * 2 + 1] = i + 1000;
+        }
+        table.classes.put("io/github/coolcrabs/brachyura/decompiler/LineNumberTableReplacerTest", new ClassLineMap(stupid));
+        byte[] patched = LineNumberTableReplacer.patchLineNumbers(bytes, table);
+        assertNotSame(bytes, patched);
+        assertArrayEquals(LineNumberTableReplacer.rewriteLineNumbers("LineNumberTableReplacerTest.class", bytes, table), patched);
+    }
+
+    @Test
+    void lineRemap() {
+        LineRemap remap = new LineRemap(new int[] {5, 50, 1, 10, -3, 7, 5, 51});
+        assertEquals(3, remap.size());
+        assertEquals(7, remap.get(remap.indexOf(-3)));
+        assertEquals(10, remap.get(remap.indexOf(1)));
+        assertEquals(51, remap.get(remap.indexOf(5)));
+        assertTrue(remap.indexOf(2) < 0);
+    }
 }
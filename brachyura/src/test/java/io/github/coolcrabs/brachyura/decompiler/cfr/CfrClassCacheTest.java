@@ -0,0 +1,90 @@
+package io.github.coolcrabs.brachyura.decompiler.cfr;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.Test;
+
+import io.github.coolcrabs.brachyura.decompiler.BrachyuraDecompiler.DecompileResult;
+import io.github.coolcrabs.brachyura.util.PathUtil;
+import io.github.coolcrabs.brachyura.util.StreamUtil;
+
+class CfrClassCacheTest {
+    @Test
+    void references() throws Exception {
+        ArrayList<String> references = new ArrayList<>();
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream("io/github/coolcrabs/brachyura/decompiler/cfr/CfrClassCacheTest.class")) {
+            CfrClassCache.references(StreamUtil.readFullyAsBytes(in), references);
+        }
+        assertTrue(references.contains("java/util/ArrayList.class"));
+        assertTrue(references.contains("io/github/coolcrabs/brachyura/decompiler/cfr/CfrClassCache.class"));
+    }
+
+    @Test
+    void reuse() throws Exception {
+        Path dir = Files.createTempDirectory("brachyuracfrcache");
+        Path jar = dir.resolve("in.jar");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar))) {
+            for (String c : new String[] {"CfrClassCache", "CfrClassCache$Entry", "CfrDecompiler"}) {
+                String path = "io/github/coolcrabs/brachyura/decompiler/cfr/" + c + ".class";
+                out.putNextEntry(new ZipEntry(path));
+                try (InputStream in = getClass().getClassLoader().getResourceAsStream(path)) {
+                    out.write(StreamUtil.readFullyAsBytes(in));
+                }
+                out.closeEntry();
+            }
+        }
+        CfrDecompiler first = new CfrDecompiler();
+        first.classCacheDir = dir.resolve("cache");
+        DecompileResult a = first.getDecompiled(jar, Collections.emptyList(), dir.resolve("a"));
+        assertEquals(0, first.reused);
+        CfrDecompiler second = new CfrDecompiler();
+        second.classCacheDir = dir.resolve("cache");
+        DecompileResult b = second.getDecompiled(jar, Collections.emptyList(), dir.resolve("b"));
+        assertEquals(3, second.reused);
+        assertEquals(entries(a.sourcesJar), entries(b.sourcesJar));
+        assertEquals(entries(a.jar), entries(b.jar));
+        PathUtil.deleteDirectory(dir);
+    }
+
+    @Test
+    void prune() throws Exception {
+        Path dir = Files.createTempDirectory("brachyuracfrcache");
+        Path old = dir.resolve("old");
+        Path recent = dir.resolve("recent");
+        Files.write(old, new byte[] {1});
+        Files.write(recent, new byte[] {1});
+        Files.setLastModifiedTime(old, FileTime.fromMillis(System.currentTimeMillis() - CfrClassCache.maxAge() - 1000));
+        CfrClassCache.prune(dir);
+        assertFalse(Files.exists(old));
+        assertTrue(Files.exists(recent));
+        PathUtil.deleteDirectory(dir);
+    }
+
+    static Map<String, String> entries(Path jar) throws Exception {
+        TreeMap<String, String> r = new TreeMap<>();
+        try (ZipFile zip = new ZipFile(jar.toFile())) {
+            for (ZipEntry entry : Collections.list(zip.entries())) {
+                try (InputStream in = zip.getInputStream(entry)) {
+                    r.put(entry.getName(), Base64.getEncoder().encodeToString(StreamUtil.readFullyAsBytes(in)));
+                }
+            }
+        }
+        assertFalse(r.isEmpty());
+        return r;
+    }
+}
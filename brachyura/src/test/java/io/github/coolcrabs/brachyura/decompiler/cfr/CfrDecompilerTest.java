@@ -0,0 +1,57 @@
+package io.github.coolcrabs.brachyura.decompiler.cfr;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+
+import io.github.coolcrabs.brachyura.decompiler.BrachyuraDecompiler.DecompileResult;
+import io.github.coolcrabs.brachyura.util.PathUtil;
+import io.github.coolcrabs.brachyura.util.StreamUtil;
+
+class CfrDecompilerTest {
+    @Test
+    void classFileSharing() throws Exception {
+        Path dir = Files.createTempDirectory("brachyuracfr");
+        Path jar = dir.resolve("in.jar");
+        jar(jar, "io/github/coolcrabs/brachyura/decompiler/cfr/", "CfrClassCache", "CfrClassCache$Entry", "CfrDecompiler", "BrachyuraCfrClassFileSource", "BrachyuraCfrClassFileSource$1", "BrachyuraCfrClassFileSource$ClassBytes");
+        Path lib = dir.resolve("lib.jar");
+        jar(lib, "io/github/coolcrabs/brachyura/util/", "AtomicFile", "JvmUtil", "MessageDigestUtil", "PathUtil", "RandomAccessZipFile", "RandomAccessZipFile$Entry", "StreamUtil", "Util");
+        // Every thread looks at these, with sharing they're parsed once and used by all of them
+        List<Path> classpath = Arrays.asList(lib, Paths.get(ClassReader.class.getProtectionDomain().getCodeSource().getLocation().toURI()));
+        CfrDecompiler shared = new CfrDecompiler(4, true);
+        shared.classCacheDir = dir.resolve("cache-shared");
+        DecompileResult a = shared.getDecompiled(jar, classpath, dir.resolve("shared"));
+        CfrDecompiler unshared = new CfrDecompiler(4, true);
+        unshared.classCacheDir = dir.resolve("cache-unshared");
+        unshared.shareClassFiles = false;
+        DecompileResult b = unshared.getDecompiled(jar, classpath, dir.resolve("unshared"));
+        assertEquals(0, shared.reused);
+        assertEquals(0, unshared.reused);
+        assertEquals(CfrClassCacheTest.entries(a.sourcesJar), CfrClassCacheTest.entries(b.sourcesJar));
+        assertEquals(CfrClassCacheTest.entries(a.jar), CfrClassCacheTest.entries(b.jar));
+        PathUtil.deleteDirectory(dir);
+    }
+
+    void jar(Path jar, String pkg, String... classes) throws Exception {
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar))) {
+            for (String c : classes) {
+                String path = pkg + c + ".class";
+                out.putNextEntry(new ZipEntry(path));
+                try (InputStream in = getClass().getClassLoader().getResourceAsStream(path)) {
+                    out.write(StreamUtil.readFullyAsBytes(in));
+                }
+                out.closeEntry();
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package io.github.coolcrabs.brachyura.fabric;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+import io.github.coolcrabs.brachyura.util.PathUtil;
+
+class ModDependencyIndexTest {
+    @Test
+    void onlyBumpedModIsRemapped() throws Exception {
+        Path dir = Files.createTempDirectory("brachyura");
+        // c extends a, b is unrelated
+        List<ModDependencyIndex> indices = Arrays.asList(
+            ModDependencyIndex.of(jar(dir.resolve("a.jar"), "a/A", "java/lang/Object")),
+            ModDependencyIndex.of(jar(dir.resolve("b.jar"), "b/B", "java/lang/Object")),
+            ModDependencyIndex.of(jar(dir.resolve("c.jar"), "c/C", "a/A"))
+        );
+        assertTrue(indices.get(2).references.contains("a/A"));
+        assertFalse(indices.get(2).references.contains("c/C"));
+        byte[] common = bytes("common");
+        String[] keys = ModDependencyIndex.keys(common, Arrays.asList(bytes("a1"), bytes("b1"), bytes("c1")), indices);
+        String[] bumpB = ModDependencyIndex.keys(common, Arrays.asList(bytes("a1"), bytes("b2"), bytes("c1")), indices);
+        assertEquals(keys[0], bumpB[0]);
+        assertFalse(keys[1].equals(bumpB[1]));
+        assertEquals(keys[2], bumpB[2]);
+        // c is remapped against a's hierarchy
+        String[] bumpA = ModDependencyIndex.keys(common, Arrays.asList(bytes("a2"), bytes("b1"), bytes("c1")), indices);
+        assertFalse(keys[0].equals(bumpA[0]));
+        assertEquals(keys[1], bumpA[1]);
+        assertFalse(keys[2].equals(bumpA[2]));
+        assertFalse(keys[0].equals(ModDependencyIndex.keys(bytes("other"), Arrays.asList(bytes("a1"), bytes("b1"), bytes("c1")), indices)[0]));
+        PathUtil.deleteDirectory(dir);
+    }
+
+    @Test
+    void cached() throws Exception {
+        Path dir = Files.createTempDirectory("brachyura");
+        Path jar = jar(dir.resolve("a.jar"), "a/A", "java/lang/Object");
+        Path file = dir.resolve("index").resolve("a.json");
+        ModDependencyIndex index = ModDependencyIndex.cached(file, jar);
+        assertTrue(Files.isRegularFile(file));
+        Files.delete(jar);
+        ModDependencyIndex read = ModDependencyIndex.cached(file, jar);
+        assertEquals(index.classes, read.classes);
+        assertEquals(index.references, read.references);
+        PathUtil.deleteDirectory(dir);
+    }
+
+    static Path jar(Path jar, String name, String superName) throws Exception {
+        ClassWriter w = new ClassWriter(0);
+        w.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, name, null, superName, null);
+        w.visitEnd();
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar))) {
+            out.putNextEntry(new ZipEntry(name + ".class"));
+            out.write(w.toByteArray());
+            out.closeEntry();
+        }
+        return jar;
+    }
+
+    static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
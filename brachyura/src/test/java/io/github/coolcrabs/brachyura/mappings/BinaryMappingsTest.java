@@ -0,0 +1,43 @@
+package io.github.coolcrabs.brachyura.mappings;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.tinylog.Logger;
+
+import io.github.coolcrabs.brachyura.fabric.FabricMaven;
+import io.github.coolcrabs.brachyura.fabric.Yarn;
+import net.fabricmc.mappingio.tree.MemoryMappingTree;
+
+class BinaryMappingsTest {
+    @Test
+    void roundTripYarn() throws Exception {
+        Yarn yarn = Yarn.ofMaven(FabricMaven.URL, FabricMaven.yarn("1.17+build.13"));
+        Path file = Files.createTempFile("brachyura", ".brmp");
+        BinaryMappings.write(yarn.tree, file);
+        long start = System.currentTimeMillis();
+        MemoryMappingTree tree = new MemoryMappingTree(true);
+        BinaryMappings.read(file, tree);
+        long time = System.currentTimeMillis() - start;
+        Logger.info("Read binary yarn in " + time + "ms");
+        assertEquals(MappingHasher.hashSha256(yarn.tree), MappingHasher.hashSha256(tree));
+        assertEquals("5FD5BBD59CF36860ABEFF50A73916A981E400A88D2902E4695513B5272387C2D", MappingHasher.hashSha256(tree));
+        Files.delete(file);
+    }
+
+    @Test
+    void cachedHash() {
+        Yarn.ofMaven(FabricMaven.URL, FabricMaven.yarn("1.17+build.13"));
+        // Second load comes from the binary cache along with its hash
+        Yarn yarn = Yarn.ofMaven(FabricMaven.URL, FabricMaven.yarn("1.17+build.13"));
+        assertEquals("5FD5BBD59CF36860ABEFF50A73916A981E400A88D2902E4695513B5272387C2D", yarn.hash);
+        assertEquals(yarn.hash, MappingHasher.hashSha256(yarn.tree));
+        // The stored hash must not hide changes to the tree
+        yarn.tree.getClasses().iterator().next().setComment("brachyura");
+        assertNotEquals(yarn.hash, MappingHasher.hashSha256(yarn.tree));
+    }
+}
@@ -0,0 +1,68 @@
+package io.github.coolcrabs.brachyura.mappings.tinyremapper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import io.github.coolcrabs.brachyura.util.StreamUtil;
+
+class ClasspathIndexTest {
+    @Test
+    void index() throws Exception {
+        Path jar = Files.createTempFile("brachyura", ".jar");
+        try (
+            ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar));
+            InputStream in = ClasspathIndexTest.class.getResourceAsStream("ClasspathIndexTest.class");
+        ) {
+            out.putNextEntry(new ZipEntry("io/github/coolcrabs/brachyura/mappings/tinyremapper/ClasspathIndexTest.class"));
+            out.write(StreamUtil.readFullyAsBytes(in));
+            out.putNextEntry(new ZipEntry("META-INF/MANIFEST.MF"));
+        }
+        ClasspathIndex index = ClasspathIndex.of(jar);
+        assertSame(index, ClasspathIndex.of(jar));
+        ClasspathIndex.loaded.clear();
+        ClasspathIndex fromDisk = ClasspathIndex.of(jar);
+        assertNotSame(index, fromDisk);
+        ArrayList<String> paths = new ArrayList<>();
+        AtomicInteger methods = new AtomicInteger();
+        AtomicInteger code = new AtomicInteger();
+        fromDisk.getInputs((in, id) -> {
+            paths.add(id.path);
+            try (InputStream is = in.get()) {
+                new ClassReader(StreamUtil.readFullyAsBytes(is)).accept(new ClassVisitor(Opcodes.ASM9) {
+                    @Override
+                    public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                        methods.incrementAndGet();
+                        return new MethodVisitor(Opcodes.ASM9) {
+                            @Override
+                            public void visitCode() {
+                                code.incrementAndGet();
+                            }
+                        };
+                    }
+                }, 0);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        assertEquals(1, paths.size());
+        assertTrue(methods.get() > 0);
+        assertEquals(0, code.get());
+        Files.delete(jar);
+    }
+}
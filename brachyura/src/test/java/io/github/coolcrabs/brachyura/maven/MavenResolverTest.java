@@ -0,0 +1,57 @@
+package io.github.coolcrabs.brachyura.maven;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import io.github.coolcrabs.brachyura.dependency.JavaJarDependency;
+import io.github.coolcrabs.brachyura.exception.IncorrectHashException;
+import io.github.coolcrabs.brachyura.util.MessageDigestUtil;
+
+class MavenResolverTest {
+    @Test
+    void resolve() throws Exception {
+        Path repo = Files.createTempDirectory("brachyurarepo");
+        MavenId a = new MavenId("test.group", "a", "1.0");
+        MavenId b = new MavenId("test.group", "b", "2.0");
+        publish(repo, a, ".jar", new byte[] {1});
+        publish(repo, a, "-sources.jar", new byte[] {2});
+        publish(repo, b, ".jar", new byte[] {3});
+        for (int i = 0; i < 2; i++) { // Second time is from cache
+            List<JavaJarDependency> deps = new MavenResolver().add(repo.toUri().toString(), a).add(repo.toUri().toString(), b).add(repo.toUri().toString(), a).resolve();
+            assertEquals(3, deps.size());
+            assertEquals(a, deps.get(0).mavenId);
+            assertArrayEquals(new byte[] {1}, Files.readAllBytes(deps.get(0).jar));
+            assertArrayEquals(new byte[] {2}, Files.readAllBytes(deps.get(0).sourcesJar));
+            assertEquals(b, deps.get(1).mavenId);
+            assertArrayEquals(new byte[] {3}, Files.readAllBytes(deps.get(1).jar));
+            assertNull(deps.get(1).sourcesJar);
+            assertEquals(deps.get(0).jar, deps.get(2).jar);
+        }
+    }
+
+    @Test
+    void badHash() throws Exception {
+        Path repo = Files.createTempDirectory("brachyurarepo");
+        MavenId a = new MavenId("test.group", "a", "1.0");
+        publish(repo, a, ".jar", new byte[] {1});
+        Files.write(repo.resolve(Maven.relative(a, ".jar")), new byte[] {2});
+        assertThrows(IncorrectHashException.class, () -> new MavenResolver().add(repo.toUri().toString(), a).resolve());
+    }
+
+    static void publish(Path repo, MavenId id, String suffix, byte[] bytes) throws Exception {
+        Path file = repo.resolve(Maven.relative(id, suffix));
+        Files.createDirectories(file.getParent());
+        Files.write(file, bytes);
+        String hash = MessageDigestUtil.toHexHash(MessageDigestUtil.messageDigest(MessageDigestUtil.SHA1).digest(bytes));
+        Files.write(file.resolveSibling(file.getFileName() + ".sha1"), hash.getBytes(StandardCharsets.UTF_8));
+    }
+}
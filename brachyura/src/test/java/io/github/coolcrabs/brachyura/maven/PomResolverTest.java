@@ -0,0 +1,105 @@
+package io.github.coolcrabs.brachyura.maven;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+import io.github.coolcrabs.brachyura.dependency.JavaJarDependency;
+
+class PomResolverTest {
+    @Test
+    void resolve() throws Exception {
+        Path repo = Files.createTempDirectory("brachyurarepo");
+        pom(repo, "p", "1", "<packaging>pom</packaging>"
+            + "<properties><b.version>1.0</b.version></properties>"
+            + "<dependencyManagement><dependencies>" + dep("c", "2.0", "") + "</dependencies></dependencyManagement>"
+        );
+        pom(repo, "a", "1", "<parent><groupId>test</groupId><artifactId>p</artifactId><version>1</version></parent>"
+            + "<dependencies>"
+            + dep("b", "${b.version}", "<exclusions><exclusion><groupId>test</groupId><artifactId>d</artifactId></exclusion></exclusions>")
+            + "<dependency><groupId>test</groupId><artifactId>c</artifactId></dependency>"
+            + dep("t", "1.0", "<scope>test</scope>")
+            + dep("o", "1.0", "<optional>true</optional>")
+            + "</dependencies>"
+        );
+        pom(repo, "b", "1.0", "<dependencies>" + dep("c", "1.0", "") + dep("d", "1.0", "") + dep("f", "1.0", "<scope>runtime</scope>") + "</dependencies>");
+        pom(repo, "c", "1.0", "");
+        pom(repo, "c", "2.0", "");
+        pom(repo, "f", "1.0", "");
+        List<String> expected = Arrays.asList("test:a:1", "test:b:1.0", "test:c:2.0", "test:f:1.0");
+        String repoUrl = repo.toUri().toString();
+        assertEquals(expected, ids(new PomResolver(repoUrl).resolveArtifacts(Arrays.asList(new MavenId("test:a:1")))));
+        // Cached graph doesn't need the poms
+        deletePoms(repo);
+        deletePoms(Maven.repoPath(new URI(Maven.addTrailSlash(repoUrl))));
+        List<JavaJarDependency> jars = new PomResolver(repoUrl).resolve(new MavenId("test:a:1"));
+        ArrayList<String> jarIds = new ArrayList<>();
+        for (JavaJarDependency j : jars) jarIds.add(j.mavenId.toString());
+        assertEquals(expected, jarIds);
+    }
+
+    @Test
+    void rootManagement() throws Exception {
+        Path repo = Files.createTempDirectory("brachyurarepo");
+        pom(repo, "r", "1", "<dependencyManagement><dependencies>" + dep("c", "2.0", "") + dep("d", "1.0", "<scope>test</scope>") + "</dependencies></dependencyManagement>"
+            + "<dependencies>" + dep("b", "1.0", "") + "</dependencies>"
+        );
+        pom(repo, "b", "1.0", "<dependencies>" + dep("c", "1.0", "") + dep("d", "1.0", "") + "</dependencies>");
+        pom(repo, "c", "1.0", "");
+        pom(repo, "c", "2.0", "");
+        pom(repo, "d", "1.0", "");
+        assertEquals(Arrays.asList("test:r:1", "test:b:1.0", "test:c:2.0"), ids(new PomResolver(repo.toUri().toString()).resolveArtifacts(Arrays.asList(new MavenId("test:r:1")))));
+        // Only for the root's own graph
+        assertEquals(Arrays.asList("test:b:1.0", "test:c:1.0", "test:d:1.0"), ids(new PomResolver(repo.toUri().toString()).resolveArtifacts(Arrays.asList(new MavenId("test:b:1.0")))));
+    }
+
+    @Test
+    void inheritedInterpolation() throws Exception {
+        Path repo = Files.createTempDirectory("brachyurarepo");
+        pom(repo, "p", "1", "<packaging>pom</packaging>"
+            + "<properties><c.version>1.0</c.version></properties>"
+            + "<dependencies>" + dep("c", "${c.version}", "") + dep("d", "${project.version}", "") + "</dependencies>"
+        );
+        pom(repo, "a", "2.0", "<parent><groupId>test</groupId><artifactId>p</artifactId><version>1</version></parent>"
+            + "<properties><c.version>2.0</c.version></properties>"
+        );
+        pom(repo, "c", "2.0", "");
+        pom(repo, "d", "2.0", "");
+        assertEquals(Arrays.asList("test:a:2.0", "test:c:2.0", "test:d:2.0"), ids(new PomResolver(repo.toUri().toString()).resolveArtifacts(Arrays.asList(new MavenId("test:a:2.0")))));
+    }
+
+    static void deletePoms(Path dir) throws Exception {
+        List<Path> poms;
+        try (Stream<Path> s = Files.walk(dir)) {
+            poms = s.filter(p -> p.toString().endsWith(".pom")).collect(Collectors.toList());
+        }
+        for (Path p : poms) Files.delete(p);
+    }
+
+    static List<String> ids(List<PomResolver.Artifact> artifacts) {
+        ArrayList<String> r = new ArrayList<>();
+        for (PomResolver.Artifact a : artifacts) r.add(a.id);
+        return r;
+    }
+
+    static String dep(String artifactId, String version, String extra) {
+        return "<dependency><groupId>test</groupId><artifactId>" + artifactId + "</artifactId><version>" + version + "</version>" + extra + "</dependency>";
+    }
+
+    static void pom(Path repo, String artifactId, String version, String body) throws Exception {
+        MavenId id = new MavenId("test", artifactId, version);
+        String pom = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><project><modelVersion>4.0.0</modelVersion><groupId>test</groupId><artifactId>" + artifactId + "</artifactId><version>" + version + "</version>" + body + "</project>";
+        MavenResolverTest.publish(repo, id, ".pom", pom.getBytes(StandardCharsets.UTF_8));
+        MavenResolverTest.publish(repo, id, ".jar", new byte[] {1});
+    }
+}
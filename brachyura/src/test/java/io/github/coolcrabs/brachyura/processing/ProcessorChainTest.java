@@ -0,0 +1,47 @@
+package io.github.coolcrabs.brachyura.processing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class ProcessorChainTest {
+    final List<String> events = new ArrayList<>();
+
+    final ProcessingSource source = new ProcessingSource() {
+        @Override
+        public void getInputs(ProcessingSink sink) {
+            for (String path : new String[] {"a", "b"}) {
+                events.add("read " + path);
+                sink.sink(() -> new ByteArrayInputStream(new byte[0]), new ProcessingId(path, this));
+            }
+        }
+    };
+
+    final StreamingProcessor rename = (e, sink) -> sink.sink(e.in, new ProcessingId(e.id.path + "1", e.id.source));
+
+    final Processor barrier = (inputs, sink) -> {
+        events.add("barrier " + inputs.size());
+        for (ProcessingEntry e : inputs) {
+            sink.sink(e.in, e.id);
+        }
+    };
+
+    final ProcessingSink out = (in, id) -> events.add("write " + id.path);
+
+    @Test
+    void streaming() {
+        new ProcessorChain(rename, rename).apply(out, source);
+        assertEquals(Arrays.asList("read a", "write a11", "read b", "write b11"), events);
+    }
+
+    @Test
+    void barrier() {
+        new ProcessorChain(rename, barrier, rename).apply(out, source);
+        assertEquals(Arrays.asList("read a", "read b", "barrier 2", "write a11", "write b11"), events);
+    }
+}
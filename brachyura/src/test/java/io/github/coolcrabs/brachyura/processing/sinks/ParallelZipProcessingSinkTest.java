@@ -0,0 +1,98 @@
+package io.github.coolcrabs.brachyura.processing.sinks;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.junit.jupiter.api.Test;
+
+import io.github.coolcrabs.brachyura.processing.ProcessingId;
+import io.github.coolcrabs.brachyura.util.StreamUtil;
+
+class ParallelZipProcessingSinkTest {
+    @Test
+    void roundTrip() throws Exception {
+        Path zip = Files.createTempFile("brachyura", ".zip");
+        byte[] random = new byte[100000];
+        new Random(0).nextBytes(random);
+        byte[] compressible = new byte[100000];
+        try (ParallelZipProcessingSink sink = new ParallelZipProcessingSink(zip, 4, false, -1)) {
+            sink.sink(() -> new ByteArrayInputStream(random), new ProcessingId("a/b/random.bin", null));
+            sink.sink(() -> new ByteArrayInputStream(compressible), new ProcessingId("a/zeros.bin", null));
+            sink.sink(() -> new ByteArrayInputStream(new byte[0]), new ProcessingId("empty", null));
+            for (int i = 0; i < 1000; i++) {
+                byte[] b = ("entry " + i).getBytes();
+                sink.sink(() -> new ByteArrayInputStream(b), new ProcessingId("many/" + i + ".txt", null));
+            }
+            assertThrows(FileAlreadyExistsException.class, () -> sink.sink(() -> new ByteArrayInputStream(new byte[0]), new ProcessingId("empty", null)));
+        }
+        try (ZipFile f = new ZipFile(zip.toFile())) {
+            assertEquals(1003 + 3, f.size());
+            assertNotNull(f.getEntry("a/"));
+            assertNotNull(f.getEntry("a/b/"));
+            assertArrayEquals(random, read(f, "a/b/random.bin"));
+            assertArrayEquals(compressible, read(f, "a/zeros.bin"));
+            assertTrue(f.getEntry("a/zeros.bin").getCompressedSize() < 1000);
+            assertEquals(0, read(f, "empty").length);
+            assertEquals("entry 567", new String(read(f, "many/567.txt")));
+        }
+        Files.delete(zip);
+    }
+
+    @Test
+    void deterministic() throws Exception {
+        Path zip0 = Files.createTempFile("brachyura", ".zip");
+        Path zip1 = Files.createTempFile("brachyura", ".zip");
+        write(zip0, false);
+        write(zip1, true);
+        assertArrayEquals(Files.readAllBytes(zip0), Files.readAllBytes(zip1));
+        try (ZipFile f = new ZipFile(zip0.toFile())) {
+            long time = LocalDateTime.of(1980, 2, 1, 0, 0).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            List<String> names = new ArrayList<>();
+            Enumeration<? extends ZipEntry> e = f.entries();
+            while (e.hasMoreElements()) {
+                ZipEntry entry = e.nextElement();
+                names.add(entry.getName());
+                assertEquals(time, entry.getTime());
+            }
+            List<String> sorted = new ArrayList<>(names);
+            Collections.sort(sorted);
+            assertEquals(sorted, names);
+        }
+        Files.delete(zip0);
+        Files.delete(zip1);
+    }
+
+    static void write(Path zip, boolean reverse) {
+        try (ParallelZipProcessingSink sink = new ParallelZipProcessingSink(zip, 3, true, ParallelZipProcessingSink.REPRODUCIBLE_TIME)) {
+            for (int j = 0; j < 200; j++) {
+                int i = reverse ? 199 - j : j;
+                byte[] b = ("entry " + i).getBytes();
+                sink.sink(() -> new ByteArrayInputStream(b), new ProcessingId("dir" + (i % 7) + "/" + i, null));
+            }
+        }
+    }
+
+    static byte[] read(ZipFile f, String name) throws Exception {
+        try (InputStream i = f.getInputStream(f.getEntry(name))) {
+            return StreamUtil.readFullyAsBytes(i);
+        }
+    }
+}
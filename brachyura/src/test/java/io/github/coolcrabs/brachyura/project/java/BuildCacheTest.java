@@ -0,0 +1,83 @@
+package io.github.coolcrabs.brachyura.project.java;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import io.github.coolcrabs.brachyura.processing.ProcessingId;
+import io.github.coolcrabs.brachyura.processing.sources.ProcessingSponge;
+import io.github.coolcrabs.brachyura.util.PathUtil;
+import io.github.coolcrabs.brachyura.util.StreamUtil;
+
+class BuildCacheTest {
+    @Test
+    void key() throws Exception {
+        Path dir = Files.createTempDirectory("brachyura");
+        Files.write(dir.resolve("A.java"), "class A { }".getBytes(StandardCharsets.UTF_8));
+        String a = BuildCache.key().add(Arrays.asList("-g")).addDir(dir).get();
+        assertEquals(a, BuildCache.key().add(Arrays.asList("-g")).addDir(dir).get());
+        assertFalse(a.equals(BuildCache.key().add(Arrays.asList("-g:none")).addDir(dir).get()));
+        Files.write(dir.resolve("A.java"), "class A { int a; }".getBytes(StandardCharsets.UTF_8));
+        assertFalse(a.equals(BuildCache.key().add(Arrays.asList("-g")).addDir(dir).get()));
+        assertEquals(64, a.length());
+        PathUtil.deleteDirectory(dir);
+    }
+
+    @Test
+    void classLocation() throws Exception {
+        Path dir = Files.createTempDirectory("brachyura");
+        String name = BuildCacheTest.class.getName().replace('.', '/') + ".class";
+        Files.createDirectories(dir.resolve(name).getParent());
+        try (InputStream in = BuildCacheTest.class.getResourceAsStream("/" + name)) {
+            Files.copy(in, dir.resolve(name));
+        }
+        try (URLClassLoader loader = new URLClassLoader(new URL[] {dir.toUri().toURL()}, null)) {
+            Class<?> clazz = loader.loadClass(BuildCacheTest.class.getName());
+            String a = BuildCache.key().addClass(clazz).get();
+            assertEquals(a, BuildCache.key().addClass(clazz).get());
+            // Other classes next to it, like buildscript helpers, are part of the key too
+            Files.write(dir.resolve("Helper.class"), new byte[] {1});
+            assertFalse(a.equals(BuildCache.key().addClass(clazz).get()));
+        }
+        PathUtil.deleteDirectory(dir);
+    }
+
+    @Test
+    void store() throws Exception {
+        Path dir = Files.createTempDirectory("brachyura");
+        BuildCache cache = new BuildCache(dir.resolve("cache"));
+        String key = BuildCache.key().add("test").get();
+        assertNull(cache.get(key));
+        ProcessingSponge sponge = new ProcessingSponge();
+        sponge.sink(() -> new ByteArrayInputStream("hello".getBytes(StandardCharsets.UTF_8)), new ProcessingId("a/b.class", null));
+        cache.put(key, sponge);
+        assertNotNull(cache.get(key));
+        ProcessingSponge read = new ProcessingSponge();
+        cache.get(key).getInputs(read);
+        assertEquals("hello", StreamUtil.readFullyAsString(read.popEntry("a/b.class").in.get()));
+
+        Path out = dir.resolve("out.jar");
+        assertFalse(cache.isUpToDate(out, key));
+        Files.write(out, new byte[] {1});
+        cache.markUpToDate(out, key);
+        assertTrue(cache.isUpToDate(out, key));
+        assertFalse(cache.isUpToDate(out, BuildCache.key().add("other").get()));
+        Files.setLastModifiedTime(out, FileTime.fromMillis(Files.getLastModifiedTime(out).toMillis() + 5000));
+        assertFalse(cache.isUpToDate(out, key));
+        PathUtil.deleteDirectory(dir);
+    }
+}
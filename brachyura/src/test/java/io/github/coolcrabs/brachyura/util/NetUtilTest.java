@@ -0,0 +1,54 @@
+package io.github.coolcrabs.brachyura.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+import io.github.coolcrabs.brachyura.exception.OfflineException;
+
+class NetUtilTest {
+    @Test
+    void negativeCache() throws Exception {
+        AtomicInteger requests = new AtomicInteger();
+        HttpServer server = ParallelDownloaderTest.server(new HashMap<>(), path -> {
+            requests.incrementAndGet();
+            return 404;
+        });
+        try {
+            URL url = ParallelDownloaderTest.url(server, "/missing/" + System.nanoTime());
+            assertThrows(FileNotFoundException.class, () -> NetUtil.inputStream(url));
+            assertThrows(FileNotFoundException.class, () -> NetUtil.inputStream(url));
+            assertEquals(1, requests.get());
+            Files.delete(NetUtil.negativePath(url));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void offline() throws Exception {
+        Path file = Files.createTempFile("brachyura", ".txt");
+        Files.write(file, new byte[] {1, 2, 3});
+        boolean old = NetUtil.isOffline();
+        NetUtil.setOffline(true);
+        try {
+            assertThrows(OfflineException.class, () -> NetUtil.inputStream(NetUtil.url("https://example.com/")));
+            try (InputStream in = NetUtil.inputStream(file.toUri().toURL())) {
+                assertEquals(3, StreamUtil.readFullyAsBytes(in).length);
+            }
+        } finally {
+            NetUtil.setOffline(old);
+        }
+    }
+}
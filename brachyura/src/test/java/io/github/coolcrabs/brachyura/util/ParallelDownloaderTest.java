@@ -0,0 +1,106 @@
+package io.github.coolcrabs.brachyura.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+import io.github.coolcrabs.brachyura.exception.IncorrectHashException;
+
+class ParallelDownloaderTest {
+    @Test
+    void download() throws Exception {
+        HashMap<String, byte[]> files = new HashMap<>();
+        Random random = new Random(0);
+        for (int i = 0; i < 200; i++) {
+            byte[] b = new byte[random.nextInt(20000)];
+            random.nextBytes(b);
+            files.put("/" + i, b);
+        }
+        // Fail the first request for every file to exercise retries
+        ConcurrentHashMap<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+        HttpServer server = server(files, path -> requests.computeIfAbsent(path, k -> new AtomicInteger()).getAndIncrement() == 0 ? 503 : 200);
+        try {
+            Path dir = Files.createTempDirectory("brachyuradownload");
+            ParallelDownloader downloader = new ParallelDownloader(8).backoff(1);
+            for (String path : files.keySet()) {
+                downloader.add(url(server, path), dir.resolve(path.substring(1)), sha1(files.get(path)), files.get(path).length);
+            }
+            downloader.download();
+            for (String path : files.keySet()) {
+                assertArrayEquals(files.get(path), Files.readAllBytes(dir.resolve(path.substring(1))));
+                assertEquals(2, requests.get(path).get());
+            }
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void badHash() throws Exception {
+        HashMap<String, byte[]> files = new HashMap<>();
+        files.put("/a", new byte[] {1, 2, 3});
+        HttpServer server = server(files, path -> 200);
+        try {
+            Path target = Files.createTempDirectory("brachyuradownload").resolve("a");
+            ParallelDownloader downloader = new ParallelDownloader().backoff(1).add(url(server, "/a"), target, sha1(new byte[] {1, 2, 4}), 3);
+            assertThrows(IncorrectHashException.class, downloader::download);
+            assertFalse(Files.exists(target));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void notFound() throws Exception {
+        HttpServer server = server(new HashMap<>(), path -> 404);
+        try {
+            Path target = Files.createTempDirectory("brachyuradownload").resolve("a");
+            ParallelDownloader downloader = new ParallelDownloader().add(url(server, "/a"), target, null, -1);
+            assertEquals(404, assertThrows(ParallelDownloader.HttpStatusException.class, downloader::download).code);
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    interface Status {
+        int get(String path);
+    }
+
+    static HttpServer server(HashMap<String, byte[]> files, Status status) throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            String path = exchange.getRequestURI().getPath();
+            int code = status.get(path);
+            byte[] body = code == 200 ? files.get(path) : new byte[0];
+            exchange.sendResponseHeaders(code, body.length == 0 ? -1 : body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        return server;
+    }
+
+    static URL url(HttpServer server, String path) {
+        return NetUtil.url("http://127.0.0.1:" + server.getAddress().getPort() + path);
+    }
+
+    static String sha1(byte[] bytes) {
+        return MessageDigestUtil.toHexHash(MessageDigestUtil.messageDigest(MessageDigestUtil.SHA1).digest(bytes));
+    }
+}
@@ -0,0 +1,60 @@
+package io.github.coolcrabs.brachyura.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.Test;
+
+class RandomAccessZipFileTest {
+    @Test
+    void read() throws Exception {
+        Path zip = Files.createTempFile("brachyura", ".zip");
+        byte[] random = new byte[50000];
+        new Random(0).nextBytes(random);
+        byte[] text = new byte[50000];
+        for (int i = 0; i < text.length; i++) text[i] = (byte) ('a' + i % 26);
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip))) {
+            out.putNextEntry(new ZipEntry("dir/"));
+            out.closeEntry();
+            ZipEntry stored = new ZipEntry("dir/random.bin");
+            stored.setMethod(ZipEntry.STORED);
+            stored.setSize(random.length);
+            CRC32 crc = new CRC32();
+            crc.update(random);
+            stored.setCrc(crc.getValue());
+            out.putNextEntry(stored);
+            out.write(random);
+            out.closeEntry();
+            out.putNextEntry(new ZipEntry("text.txt"));
+            out.write(text);
+            out.closeEntry();
+        }
+        RandomAccessZipFile zipFile = new RandomAccessZipFile(zip);
+        try (RandomAccessZipFile z = zipFile) {
+            assertEquals(3, z.entries().size());
+            assertTrue(z.getEntry("dir/").isDirectory());
+            assertNull(z.getEntry("missing"));
+            assertArrayEquals(random, z.readAllBytes(z.getEntry("dir/random.bin")));
+            assertEquals(random.length, z.rawData(z.getEntry("dir/random.bin")).remaining());
+            assertArrayEquals(text, z.readAllBytes(z.getEntry("text.txt")));
+            assertTrue(z.rawData(z.getEntry("text.txt")).remaining() < text.length);
+            try (InputStream in = z.getInputStream(z.getEntry("text.txt"))) {
+                assertArrayEquals(text, StreamUtil.readFullyAsBytes(in));
+            }
+        }
+        // Nothing may keep the file open once closed
+        assertFalse(zipFile.channel.isOpen());
+        Files.delete(zip);
+    }
+}
@@ -0,0 +1,91 @@
+package org.benf.cfr.reader.state;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.benf.cfr.reader.api.ClassFileSource;
+import org.benf.cfr.reader.bytecode.analysis.parse.utils.Pair;
+import org.benf.cfr.reader.entities.ClassFile;
+import org.benf.cfr.reader.entities.Method;
+import org.benf.cfr.reader.util.getopt.OptionsImpl;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+
+import io.github.coolcrabs.brachyura.util.StreamUtil;
+
+// In CFR's package to reach the shared cache without a driver
+class SharedClassFileCacheTest {
+    @Test
+    void lomemFreesEvictedClasses() throws Exception {
+        List<String> paths = new ArrayList<>();
+        Path asm = Paths.get(ClassReader.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        try (ZipFile zip = new ZipFile(asm.toFile())) {
+            for (ZipEntry e : Collections.list(zip.entries())) {
+                if (e.getName().startsWith("org/objectweb/asm/") && e.getName().endsWith(".class") && !e.getName().contains("module-info")) paths.add(e.getName());
+            }
+        }
+        HashMap<String, String> options = new HashMap<>();
+        options.put("lomem", "true");
+        options.put("lomemsharedbytes", "1"); // Keeps only the last class
+        SharedClassFileCache cache = new SharedClassFileCache(new OptionsImpl(options), new ClassFileSourceWrapper(new Source()), path -> true);
+        ArrayList<WeakReference<ClassFile>> loaded = new ArrayList<>();
+        OverloadMethodSetCache overloads = null;
+        for (String path : paths) {
+            ClassFile classFile = cache.get(path);
+            for (Method m : classFile.getMethods()) {
+                classFile.getOverloadMethodSet(m.getMethodPrototype());
+            }
+            overloads = classFile.getConstantPool().getDCCommonState().getOverloadMethodSetCache();
+            loaded.add(new WeakReference<>(classFile));
+        }
+        assertTrue(paths.size() > 10);
+        // Overload sets live in the class files, nothing central keeps evicted ones alive
+        assertEquals(0, overloads.size());
+        int freed = 0;
+        for (int i = 0; i < 10 && freed == 0; i++) {
+            System.gc();
+            for (WeakReference<ClassFile> r : loaded) {
+                if (r.get() == null) freed++;
+            }
+        }
+        assertTrue(freed > 0);
+    }
+
+    static class Source implements ClassFileSource {
+        @Override
+        public void informAnalysisRelativePathDetail(String usePath, String classFilePath) {
+            // noop
+        }
+
+        @Override
+        public Collection<String> addJar(String jarPath) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public String getPossiblyRenamedPath(String path) {
+            return path;
+        }
+
+        @Override
+        public Pair<byte[], String> getClassFileContent(String path) throws IOException {
+            try (InputStream in = SharedClassFileCacheTest.class.getClassLoader().getResourceAsStream(path)) {
+                if (in == null) throw new IOException("No such class " + path);
+                return Pair.make(StreamUtil.readFullyAsBytes(in), path);
+            }
+        }
+    }
+}
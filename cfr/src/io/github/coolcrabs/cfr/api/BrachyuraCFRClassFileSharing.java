@@ -0,0 +1,10 @@
+package io.github.coolcrabs.cfr.api;
+
+/**
+ * Decides which class files may be parsed once and shared between every class a CfrDriver analyses
+ * Shared class files are only ever inspected, so classes which are being decompiled must not be shared
+ * Paths are in class file format (slashed, ending in .class)
+ */
+public interface BrachyuraCFRClassFileSharing {
+    boolean isShared(String path);
+}
@@ -8,6 +8,7 @@ import org.benf.cfr.reader.state.ClassFileSourceChained;
 import org.benf.cfr.reader.state.ClassFileSourceImpl;
 import org.benf.cfr.reader.state.ClassFileSourceWrapper;
 import org.benf.cfr.reader.state.DCCommonState;
+import org.benf.cfr.reader.state.SharedClassFileCache;
 import org.benf.cfr.reader.util.AnalysisType;
 import org.benf.cfr.reader.util.collections.ListFactory;
 import org.benf.cfr.reader.util.getopt.Options;
@@ -16,6 +17,7 @@ import org.benf.cfr.reader.util.output.DumperFactory;
 import org.benf.cfr.reader.util.output.InternalDumperFactoryImpl;
 import org.benf.cfr.reader.util.output.SinkDumperFactory;
 
+import io.github.coolcrabs.cfr.api.BrachyuraCFRClassFileSharing;
 import io.github.coolcrabs.cfr.api.BrachyuraCFRJavadocProvider;
 
 import java.util.Arrays;
@@ -28,8 +30,13 @@ public class CfrDriverImpl implements CfrDriver {
     private final ClassFileSource2 classFileSource;
     private final OutputSinkFactory outputSinkFactory;
     private final BrachyuraCFRJavadocProvider javadocProvider;
+    private final SharedClassFileCache sharedClassFileCache;
 
     public CfrDriverImpl(ClassFileSource source, OutputSinkFactory outputSinkFactory, Options options, boolean fallbackToDefaultSource, BrachyuraCFRJavadocProvider javadocProvider) {
+        this(source, outputSinkFactory, options, fallbackToDefaultSource, javadocProvider, null);
+    }
+
+    public CfrDriverImpl(ClassFileSource source, OutputSinkFactory outputSinkFactory, Options options, boolean fallbackToDefaultSource, BrachyuraCFRJavadocProvider javadocProvider, BrachyuraCFRClassFileSharing classFileSharing) {
         if (options == null) {
             options = new OptionsImpl(new HashMap<String, String>());
         }
@@ -46,6 +53,8 @@ public class CfrDriverImpl implements CfrDriver {
         this.options = options;
         this.classFileSource = tmpSource;
         this.javadocProvider = javadocProvider;
+        // Lives as long as this driver, so shared class files are reused by every analyse call.
+        this.sharedClassFileCache = classFileSharing == null ? null : new SharedClassFileCache(options, tmpSource, classFileSharing);
     }
 
     @Override
@@ -66,7 +75,7 @@ public class CfrDriverImpl implements CfrDriver {
             // it causes test fails.  (used class name table retains useful symbols).
             classFileSource.informAnalysisRelativePathDetail(null, null);
             // Note - both of these need to be reset, as they have caches.
-            DCCommonState dcCommonState = new DCCommonState(options, classFileSource);
+            DCCommonState dcCommonState = new DCCommonState(options, classFileSource, sharedClassFileCache);
             dcCommonState.javadocProvider = javadocProvider;
             DumperFactory dumperFactory = outputSinkFactory != null ?
                     new SinkDumperFactory(outputSinkFactory, options) :
@@ -4,6 +4,7 @@ import org.benf.cfr.reader.CfrDriverImpl;
 import org.benf.cfr.reader.util.getopt.Options;
 import org.benf.cfr.reader.util.getopt.OptionsImpl;
 
+import io.github.coolcrabs.cfr.api.BrachyuraCFRClassFileSharing;
 import io.github.coolcrabs.cfr.api.BrachyuraCFRJavadocProvider;
 
 import java.util.List;
@@ -34,6 +35,7 @@ public interface CfrDriver {
         OutputSinkFactory output = null;
         boolean fallbackToDefaultSource = false;
         BrachyuraCFRJavadocProvider javadocProvider = null;
+        BrachyuraCFRClassFileSharing classFileSharing = null;
 
         /**
          * Overrides where CFR searches for bytecode.
@@ -109,6 +111,18 @@ public interface CfrDriver {
             return this;
         }
 
+        /**
+         * Parse the class files accepted by {@code classFileSharing} once, and share them between every
+         * {@link CfrDriver#analyse(List)} call, including concurrent ones.
+         *
+         * @param classFileSharing decides which class files are shared, see {@link BrachyuraCFRClassFileSharing}.
+         * @return this builder.
+         */
+        public Builder withClassFileSharing(BrachyuraCFRClassFileSharing classFileSharing) {
+            this.classFileSharing = classFileSharing;
+            return this;
+        }
+
         /**
          * Given provided artifacts, build an instance of {@link CfrDriver}.
          * Note that if artifacts are not provided, you will get default CFR behaviour.
@@ -116,7 +130,7 @@ public interface CfrDriver {
          * @return Constructed instance of {@link CfrDriver}
          */
         public CfrDriver build() {
-            return new CfrDriverImpl(source, output, builtOptions, fallbackToDefaultSource, javadocProvider);
+            return new CfrDriverImpl(source, output, builtOptions, fallbackToDefaultSource, javadocProvider, classFileSharing);
         }
     }
 }
@@ -127,6 +127,8 @@ public class ClassFile implements Dumpable, TypeUsageCollectable {
     private boolean hiddenInnerClass;
 
     private BindingSuperContainer boundSuperClasses;
+    // Only for shared class files, whose overload sets have to go when a SharedClassFileCache drops them.  Guarded by itself.
+    private Map<MethodPrototype, OverloadMethodSet> sharedOverloadMethodSets;
 
     private ClassFileDumper dumpHelper;
 
@@ -642,6 +644,23 @@ public class ClassFile implements Dumpable, TypeUsageCollectable {
     }
 
     public OverloadMethodSet getOverloadMethodSet(MethodPrototype prototype) {
+        Map<MethodPrototype, OverloadMethodSet> shared = sharedOverloadMethodSets;
+        if (shared != null) {
+            OverloadMethodSet res;
+            synchronized (shared) {
+                res = shared.get(prototype);
+            }
+            if (res == null) {
+                // Not under the lock, this looks at other class files.  Racing threads compute equivalent sets.
+                res = getOverloadMethodSetInner(prototype);
+                synchronized (shared) {
+                    OverloadMethodSet prev = shared.get(prototype);
+                    if (prev != null) return prev;
+                    shared.put(prototype, res);
+                }
+            }
+            return res;
+        }
         OverloadMethodSetCache cache = constantPool.getDCCommonState().getOverloadMethodSetCache();
         OverloadMethodSet res = cache.get(this, prototype);
         if (res == null) {
@@ -1247,6 +1266,23 @@ public class ClassFile implements Dumpable, TypeUsageCollectable {
         getFormalParametersText(getClassSignature(), typeAnnotations, typeAnnPredicateFact, typeBoundAnnPredicateFact, d);
     }
 
+    /*
+     * Populate everything that would otherwise be lazily populated on interrogation, so that once this has been
+     * published to other threads (see SharedClassFileCache) they only ever read it.
+     */
+    public void prepareForSharing() {
+        // Kept here rather than in the (single, long lived) OverloadMethodSetCache of the shared state, so they're
+        // freed along with this class file.
+        sharedOverloadMethodSets = MapFactory.newIdentityMap();
+        ensureFieldsByName();
+        getMethodsByNameOrNull("");
+        try {
+            getBindingSupers();
+        } catch (RuntimeException ignore) {
+            // Leave it to whoever asks - they'd have seen this failure anyway.
+        }
+    }
+
     /*
      * Go from a bound instance of this class to a bound instance of the super class.  superType is currently partially unbound.
      */
@@ -8,21 +8,36 @@ import org.benf.cfr.reader.util.collections.MapFactory;
 import org.benf.cfr.reader.util.collections.SetFactory;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class ClassCache {
 
-    private final Map<String, JavaRefTypeInstance> refClassTypeCache = MapFactory.newMap();
+    private final Map<String, JavaRefTypeInstance> refClassTypeCache;
     // We want to avoid generating names which collide with classes.
     // This is a nice simple check.
-    private final Set<String> simpleClassNamesSeen = SetFactory.newSet();
-    private final Map<String, String> renamedClasses = MapFactory.newMap();
+    private final Set<String> simpleClassNamesSeen;
+    private final Map<String, String> renamedClasses;
 
     private final DCCommonState dcCommonState;
 
-    ClassCache(DCCommonState dcCommonState) {
+    /*
+     * A concurrent cache backs the class files of a SharedClassFileCache, which many threads look up types through.
+     */
+    ClassCache(DCCommonState dcCommonState, boolean concurrent) {
         this.dcCommonState = dcCommonState;
+        if (concurrent) {
+            this.refClassTypeCache = new ConcurrentHashMap<String, JavaRefTypeInstance>();
+            this.simpleClassNamesSeen = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+            this.renamedClasses = new ConcurrentHashMap<String, String>();
+        } else {
+            this.refClassTypeCache = MapFactory.newMap();
+            this.simpleClassNamesSeen = SetFactory.newSet();
+            this.renamedClasses = MapFactory.newMap();
+        }
         // TODO:  Not sure I need to do this any more.
         add(TypeConstants.ASSERTION_ERROR.getRawName(), TypeConstants.ASSERTION_ERROR);
         add(TypeConstants.OBJECT.getRawName(), TypeConstants.OBJECT);
@@ -45,22 +60,36 @@ public class ClassCache {
             originalName = ClassNameUtils.convertFromPath(originalRawClassName);
         }
         if (typeInstance == null) {
-            typeInstance = JavaRefTypeInstance.create(name, dcCommonState);
-            add(name, originalName, typeInstance);
+            ClassCache owner = dcCommonState.getClassCacheFor(rawClassName + ".class");
+            if (owner != this) {
+                typeInstance = owner.getRefClassFor(rawClassName);
+            } else {
+                typeInstance = JavaRefTypeInstance.create(name, dcCommonState);
+            }
+            typeInstance = add(name, originalName, typeInstance);
         }
         return typeInstance;
     }
 
-    private void add(String name, JavaRefTypeInstance typeInstance) {
-        add(name, null, typeInstance);
+    private JavaRefTypeInstance add(String name, JavaRefTypeInstance typeInstance) {
+        return add(name, null, typeInstance);
     }
 
-    private void add(String name, String originalName, JavaRefTypeInstance typeInstance) {
-        refClassTypeCache.put(name, typeInstance);
+    /*
+     * Returns the instance which ended up in the cache - if another thread beat us to it, that's theirs.
+     */
+    private JavaRefTypeInstance add(String name, String originalName, JavaRefTypeInstance typeInstance) {
+        if (refClassTypeCache instanceof ConcurrentMap) {
+            JavaRefTypeInstance existing = ((ConcurrentMap<String, JavaRefTypeInstance>) refClassTypeCache).putIfAbsent(name, typeInstance);
+            if (existing != null) return existing;
+        } else {
+            refClassTypeCache.put(name, typeInstance);
+        }
         simpleClassNamesSeen.add(typeInstance.getRawShortName());
         if (originalName != null) {
             renamedClasses.put(name, originalName);
         }
+        return typeInstance;
     }
 
     public boolean isClassName(String name) {
@@ -73,14 +102,19 @@ public class ClassCache {
         JavaRefTypeInstance inner = refClassTypeCache.get(innerName);
         JavaRefTypeInstance outer = refClassTypeCache.get(outerName);
         if (inner != null && outer != null) return Pair.make(inner, outer);
+        ClassCache owner = dcCommonState.getClassCacheFor(ClassNameUtils.convertToPath(rawInnerName) + ".class");
+        if (owner != this) {
+            Pair<JavaRefTypeInstance, JavaRefTypeInstance> pair = owner.getRefClassForInnerOuterPair(rawInnerName, rawOuterName);
+            if (inner == null) inner = add(innerName, pair.getFirst());
+            if (outer == null) outer = add(outerName, pair.getSecond());
+            return Pair.make(inner, outer);
+        }
         Pair<JavaRefTypeInstance, JavaRefTypeInstance> pair = JavaRefTypeInstance.createKnownInnerOuter(innerName, outerName, outer, dcCommonState);
         if (inner == null) {
-            add(innerName, pair.getFirst());
-            inner = pair.getFirst();
+            inner = add(innerName, pair.getFirst());
         }
         if (outer == null) {
-            add(outerName, pair.getSecond());
-            outer = pair.getSecond();
+            outer = add(outerName, pair.getSecond());
         }
         return Pair.make(inner, outer);
 
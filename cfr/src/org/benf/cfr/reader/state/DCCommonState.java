@@ -25,6 +25,7 @@ import org.benf.cfr.reader.util.getopt.Options;
 import io.github.coolcrabs.cfr.api.BrachyuraCFRJavadocProvider;
 
 import java.io.File;
+import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -39,16 +40,23 @@ public class DCCommonState {
     private final Options options;
     private final Map<String, ClassFile> classFileCache;
     private Set<JavaTypeInstance> versionCollisions;
-    private transient LinkedHashSet<String> couldNotLoadClasses = new LinkedHashSet<String>();
+    private transient Set<String> couldNotLoadClasses = new LinkedHashSet<String>();
     private final ObfuscationMapping obfuscationMapping;
     private final OverloadMethodSetCache overloadMethodSetCache;
+    private final SharedClassFileCache sharedClassFileCache;
+    // Shared class files this state has seen, if the shared cache may drop them.
+    private final Map<String, ClassFile> sharedClassFilesSeen;
 
     public BrachyuraCFRJavadocProvider javadocProvider = null;
 
     public DCCommonState(Options options, ClassFileSource2 classFileSource) {
+        this(options, classFileSource, (SharedClassFileCache) null);
+    }
+
+    public DCCommonState(Options options, ClassFileSource2 classFileSource, SharedClassFileCache sharedClassFileCache) {
         this.options = options;
         this.classFileSource = classFileSource;
-        this.classCache = new ClassCache(this);
+        this.classCache = new ClassCache(this, false);
         this.classFileCache = MapFactory.newExceptionRetainingLazyMap(new UnaryFunction<String, ClassFile>() {
             @Override
             public ClassFile invoke(String arg) {
@@ -58,12 +66,30 @@ public class DCCommonState {
         this.versionCollisions = SetFactory.newSet();
         this.obfuscationMapping = NullMapping.INSTANCE;
         this.overloadMethodSetCache = new OverloadMethodSetCache();
+        this.sharedClassFileCache = sharedClassFileCache;
+        this.sharedClassFilesSeen = newSharedClassFilesSeen(sharedClassFileCache);
+    }
+
+    /*
+     * The state owning the class files of a SharedClassFileCache - everything it touches may be hit from many threads.
+     */
+    DCCommonState(SharedClassFileCache owner, Options options, ClassFileSource2 classFileSource) {
+        this.options = options;
+        this.classFileSource = classFileSource;
+        this.classCache = new ClassCache(this, true);
+        this.classFileCache = null; // Every lookup goes through the owner.
+        this.versionCollisions = SetFactory.newSet();
+        this.couldNotLoadClasses = Collections.synchronizedSet(new LinkedHashSet<String>());
+        this.obfuscationMapping = NullMapping.INSTANCE;
+        this.overloadMethodSetCache = new OverloadMethodSetCache();
+        this.sharedClassFileCache = owner;
+        this.sharedClassFilesSeen = null; // Used from many threads, always asks the owner.
     }
 
     public DCCommonState(DCCommonState dcCommonState, final BinaryFunction<String, DCCommonState, ClassFile> cacheAccess) {
         this.options = dcCommonState.options;
         this.classFileSource = dcCommonState.classFileSource;
-        this.classCache = new ClassCache(this);
+        this.classCache = new ClassCache(this, false);
         this.classFileCache = MapFactory.newExceptionRetainingLazyMap(new UnaryFunction<String, ClassFile>() {
             @Override
             public ClassFile invoke(String arg) {
@@ -73,6 +99,8 @@ public class DCCommonState {
         this.versionCollisions = dcCommonState.versionCollisions;
         this.obfuscationMapping = dcCommonState.obfuscationMapping;
         this.overloadMethodSetCache = dcCommonState.overloadMethodSetCache;
+        this.sharedClassFileCache = dcCommonState.sharedClassFileCache;
+        this.sharedClassFilesSeen = newSharedClassFilesSeen(sharedClassFileCache);
         this.javadocProvider = dcCommonState.javadocProvider;
     }
 
@@ -80,7 +108,7 @@ public class DCCommonState {
     public DCCommonState(DCCommonState dcCommonState, ObfuscationMapping mapping) {
         this.options = dcCommonState.options;
         this.classFileSource = dcCommonState.classFileSource;
-        this.classCache = new ClassCache(this);
+        this.classCache = new ClassCache(this, false);
         this.classFileCache = MapFactory.newExceptionRetainingLazyMap(new UnaryFunction<String, ClassFile>() {
             @Override
             public ClassFile invoke(String arg) {
@@ -90,9 +118,15 @@ public class DCCommonState {
         this.versionCollisions = dcCommonState.versionCollisions;
         this.obfuscationMapping = mapping;
         this.overloadMethodSetCache = dcCommonState.overloadMethodSetCache;
+        this.sharedClassFileCache = dcCommonState.sharedClassFileCache;
+        this.sharedClassFilesSeen = newSharedClassFilesSeen(sharedClassFileCache);
         this.javadocProvider = dcCommonState.javadocProvider;
     }
 
+    private static Map<String, ClassFile> newSharedClassFilesSeen(SharedClassFileCache sharedClassFileCache) {
+        return sharedClassFileCache != null && sharedClassFileCache.evicts() ? MapFactory.<String, ClassFile>newMap() : null;
+    }
+
     public void setCollisions(Set<JavaTypeInstance> versionCollisions) {
         this.versionCollisions = versionCollisions;
     }
@@ -114,6 +148,16 @@ public class DCCommonState {
         return couldNotLoadClasses;
     }
 
+    /*
+     * CFR compares types by identity in places, so types of shared class files must come from the shared class cache.
+     */
+    ClassCache getClassCacheFor(String path) {
+        if (sharedClassFileCache != null && sharedClassFileCache.handles(this, path)) {
+            return sharedClassFileCache.getClassCache();
+        }
+        return classCache;
+    }
+
     public ClassFile loadClassFileAtPath(final String path) {
         try {
             Pair<byte[], String> content = classFileSource.getClassFileContent(path);
@@ -182,6 +226,16 @@ public class DCCommonState {
     }
 
     public ClassFile getClassFile(String path) throws CannotLoadClassException {
+        if (sharedClassFileCache != null && sharedClassFileCache.handles(this, path)) {
+            if (sharedClassFilesSeen == null) return sharedClassFileCache.get(path);
+            // Keep handing out the same instance, even if the shared cache has since dropped it.
+            ClassFile res = sharedClassFilesSeen.get(path);
+            if (res == null) {
+                res = sharedClassFileCache.get(path);
+                sharedClassFilesSeen.put(path, res);
+            }
+            return res;
+        }
         return classFileCache.get(path);
     }
 
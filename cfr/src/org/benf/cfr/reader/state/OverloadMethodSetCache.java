@@ -10,6 +10,8 @@ import java.util.Map;
 
 // The cost of retaining all overload information may become large.  Keeping it centrally allows us to flush it if in low
 // memory mode.
+// Synchronized, as states of many threads may share one.  Class files of a SharedClassFileCache keep their own overload
+// sets instead (see ClassFile.prepareForSharing), as this would keep evicted ones reachable.
 public class OverloadMethodSetCache {
     private final Map<ClassFile, Map<MethodPrototype, OverloadMethodSet>> content = MapFactory.newLazyMap(new UnaryFunction<ClassFile, Map<MethodPrototype, OverloadMethodSet>>() {
         @Override
@@ -18,11 +20,15 @@ public class OverloadMethodSetCache {
         }
     });
 
-    public OverloadMethodSet get(ClassFile classFile, MethodPrototype methodPrototype) {
+    public synchronized OverloadMethodSet get(ClassFile classFile, MethodPrototype methodPrototype) {
         return content.get(classFile).get(methodPrototype);
     }
 
-    public void set(ClassFile classFile, MethodPrototype methodPrototype, OverloadMethodSet overloadMethodSet) {
+    synchronized int size() {
+        return content.size();
+    }
+
+    public synchronized void set(ClassFile classFile, MethodPrototype methodPrototype, OverloadMethodSet overloadMethodSet) {
         content.get(classFile).put(methodPrototype, overloadMethodSet);
     }
 }
@@ -0,0 +1,115 @@
+package org.benf.cfr.reader.state;
+
+import org.benf.cfr.reader.apiunreleased.ClassFileSource2;
+import org.benf.cfr.reader.entities.ClassFile;
+import org.benf.cfr.reader.util.getopt.Options;
+import org.benf.cfr.reader.util.getopt.OptionsImpl;
+
+import io.github.coolcrabs.cfr.api.BrachyuraCFRClassFileSharing;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/*
+ * Read mostly cache of class files (libraries, the jdk) which are referenced by many analysed classes, but never
+ * analysed themselves.  Every DCCommonState of a driver shares one of these, so each of them is only parsed once
+ * rather than once per analysed class.
+ *
+ * The class files are owned by a state of their own, whose class cache is thread safe, and they are fully
+ * interrogated before they are published so that other threads only ever read them.
+ *
+ * With lomem, only the most recently used class files are kept, weighed by the size of their constant pool.
+ * An evicted class is simply parsed again by whoever asks next.
+ */
+public class SharedClassFileCache {
+    private final DCCommonState sharedState;
+    private final BrachyuraCFRClassFileSharing sharing;
+    // ClassFile, or the RuntimeException thrown trying to load it.
+    private final ConcurrentMap<String, Object> classFiles;
+    // Access ordered, only used with lomem.  Guarded by itself.
+    private final LinkedHashMap<String, Object> recentClassFiles;
+    private final long maxWeight;
+    private long weight;
+
+    public SharedClassFileCache(Options options, ClassFileSource2 classFileSource, BrachyuraCFRClassFileSharing sharing) {
+        this.sharing = sharing;
+        if (options.getOption(OptionsImpl.LOMEM)) {
+            this.classFiles = null;
+            this.recentClassFiles = new LinkedHashMap<String, Object>(16, 0.75f, true);
+            this.maxWeight = options.getOption(OptionsImpl.LOMEM_SHARED_BYTES);
+        } else {
+            this.classFiles = new ConcurrentHashMap<String, Object>();
+            this.recentClassFiles = null;
+            this.maxWeight = Long.MAX_VALUE;
+        }
+        this.sharedState = new DCCommonState(this, options, classFileSource);
+    }
+
+    /*
+     * If this is true, asking twice for the same path may give two different (but equivalent) class files.
+     */
+    boolean evicts() {
+        return recentClassFiles != null;
+    }
+
+    boolean handles(DCCommonState dcCommonState, String path) {
+        // Anything the shared state refers to has to stay shared, even if it would normally be analysed.
+        return dcCommonState == sharedState || sharing.isShared(path);
+    }
+
+    ClassCache getClassCache() {
+        return sharedState.getClassCache();
+    }
+
+    ClassFile get(String path) {
+        Object res = lookup(path);
+        if (res == null) {
+            try {
+                ClassFile classFile = sharedState.loadClassFileAtPath(path);
+                classFile.prepareForSharing();
+                res = classFile;
+            } catch (RuntimeException e) {
+                res = e;
+            }
+            // Two threads may have raced to load the same class; both are equivalent, first one wins.
+            res = publish(path, res);
+        }
+        if (res instanceof RuntimeException) throw (RuntimeException) res;
+        return (ClassFile) res;
+    }
+
+    private Object lookup(String path) {
+        if (recentClassFiles == null) return classFiles.get(path);
+        synchronized (recentClassFiles) {
+            return recentClassFiles.get(path);
+        }
+    }
+
+    private Object publish(String path, Object res) {
+        if (recentClassFiles == null) {
+            Object prev = classFiles.putIfAbsent(path, res);
+            return prev == null ? res : prev;
+        }
+        synchronized (recentClassFiles) {
+            Object prev = recentClassFiles.get(path);
+            if (prev != null) return prev;
+            recentClassFiles.put(path, res);
+            weight += weigh(res);
+            // Always keep the class we just loaded, however big it is.
+            Iterator<Map.Entry<String, Object>> it = recentClassFiles.entrySet().iterator();
+            while (weight > maxWeight && recentClassFiles.size() > 1) {
+                weight -= weigh(it.next().getValue());
+                it.remove();
+            }
+        }
+        return res;
+    }
+
+    private static long weigh(Object res) {
+        // Failures are cheap, but still cost an entry.
+        return res instanceof ClassFile ? ((ClassFile) res).getConstantPool().getRawByteLength() : 1;
+    }
+}
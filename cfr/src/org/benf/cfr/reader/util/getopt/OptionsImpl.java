@@ -554,6 +554,9 @@ public class OptionsImpl implements Options {
     public static final PermittedOptionProvider.Argument<Boolean> LOMEM = register(new PermittedOptionProvider.Argument<Boolean>(
             "lomem", defaultFalseBooleanDecoder,
             "Be more agressive about uncaching in order to reduce memory footprint"));
+    public static final PermittedOptionProvider.Argument<Integer> LOMEM_SHARED_BYTES = register(new PermittedOptionProvider.Argument<Integer>(
+            "lomemsharedbytes", new DefaultingIntDecoder(32 * 1024 * 1024),
+            "With lomem, constant pool bytes of shared class files to keep parsed before the least recently used are dropped"));
     public static final PermittedOptionProvider.Argument<String> IMPORT_FILTER = register(new PermittedOptionProvider.Argument<String>(
             "importfilter", defaultNullStringDecoder,
             "Substring regex - import classes only when fqn matches this pattern. (VNegate with !, eg !lang)"));
@@ -2,6 +2,7 @@ package io.github.coolmineman.trieharder;
 
 import java.io.IOException;
 import java.io.Reader;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -9,17 +10,19 @@ import java.util.Map.Entry;
 /**
  * Maps old -> replacement strings
  * Prefers longer keys
- * 
- * Relevant: 
+ * The trie is compiled into flat arrays on first use so matching doesn't box or chase pointers
+ * Safe to use from multiple threads once all replacements are added
+ *
+ * Relevant:
  * https://stackoverflow.com/questions/1326682/java-replacing-multiple-different-substring-in-a-string-at-once-or-in-the-most (Didn't use their impl but gave idea)
  * https://www.baeldung.com/trie-java
  */
 public final class FastMultiSubstringReplacer {
-    Trie trie;
+    final HashMap<String, String> replacements = new HashMap<>();
+    volatile Trie trie;
     boolean ignoreComments;
 
     public FastMultiSubstringReplacer() {
-        trie = new Trie();
     }
 
     public FastMultiSubstringReplacer(Map<String, String> replacements) {
@@ -27,14 +30,15 @@ public final class FastMultiSubstringReplacer {
         addReplacements(replacements);
     }
 
-    public void addReplacements(Map<String, String> replacements) {
+    public synchronized void addReplacements(Map<String, String> replacements) {
         for (Entry<String, String> entry : replacements.entrySet()) {
-            trie.insert(entry.getKey(), entry.getValue());
+            addReplacement(entry.getKey(), entry.getValue());
         }
     }
 
-    public void addReplacement(String a, String b) {
-        trie.insert(a, b);
+    public synchronized void addReplacement(String a, String b) {
+        replacements.put(a, b);
+        trie = null;
     }
 
     public void replace(Reader in, Appendable out) {
@@ -43,126 +47,213 @@ public final class FastMultiSubstringReplacer {
 
     public void replace(ReplacerCharIn in, Appendable out) {
         try {
-            trie.doReplacement(in, out);
+            getTrie().doReplacement(in, out);
         } catch (IOException e) {
             throw Util.sneak(e);
         }
     }
 
-    // Simple buffer
-    static class ReaderBuffer {
-        ReplacerCharIn reader;
-        int[] buffer;
-        int bufferPointer;
-        int bufferSize;
-        int mark;
-
-        ReaderBuffer(ReplacerCharIn reader, int maxSize) {
-            buffer = new int[maxSize];
-            this.reader = reader;
+    Trie getTrie() {
+        Trie r = trie;
+        if (r == null) {
+            synchronized (this) {
+                r = trie;
+                if (r == null) {
+                    r = new Trie(replacements);
+                    trie = r;
+                }
+            }
         }
+        return r;
+    }
 
-        int read() throws IOException {
-            if (bufferSize > bufferPointer) {
-                return buffer[bufferPointer++];
-            } else {
-                int r = reader.read();
-                buffer[bufferPointer] = r;
-                bufferPointer++;
-                bufferSize++;
-                return r;
-            }
+    // Ring buffer of lookahead chars, index 0 is the next char that hasn't been output
+    static final class Lookahead {
+        final ReplacerCharIn reader;
+        final int[] buffer;
+        final int mask;
+        int head;
+        int size;
+
+        Lookahead(ReplacerCharIn reader, int maxSize) {
+            this.reader = reader;
+            this.buffer = new int[Integer.highestOneBit(Math.max(maxSize, 1) * 2 - 1)];
+            this.mask = buffer.length - 1;
         }
 
-        void mark() {
-            mark = bufferPointer;
+        int peek(int i) throws IOException {
+            if (i < size) return buffer[(head + i) & mask];
+            int r = reader.read();
+            push(r);
+            return r;
         }
 
-        void reset() {
-            bufferPointer = mark;
+        void push(int c) {
+            buffer[(head + size) & mask] = c;
+            size++;
         }
 
         int pop() throws IOException {
-            if (bufferSize > 0) {
-                int r = buffer[0];
-                System.arraycopy(buffer, 1, buffer, 0, buffer.length - 1);
-                bufferSize--;
-                bufferPointer = Math.max(0, bufferPointer - 1);
-                return r;
-            } else {
-                return reader.read();
-            }
+            if (size == 0) return reader.read();
+            int r = buffer[head];
+            head = (head + 1) & mask;
+            size--;
+            return r;
         }
 
-        void clear(int amount) throws IOException {
-            for (int i = 0; i < amount; i++) pop(); //TODO optimize?
+        void skip(int amount) {
+            head = (head + amount) & mask;
+            size -= amount;
         }
     }
-    
-    static class Trie {
-        TrieNode root = new TrieNode();
-        int maxDepth = 0;
-
-        void insert(String key, String value) {
-            TrieNode[] current = new TrieNode[] {root}; // Dumb lambda rules
-            
-            char[] chars = key.toCharArray();
-            for (int i = 0; i < chars.length; i++) {
-                current[0] = current[0].children.computeIfAbsent(chars[i], c -> {
-                    TrieNode n = new TrieNode();
-                    n.parent = current[0];
-                    return n;
-                });
-                current[0].depth = i + 1;
+
+    /**
+     * Nodes are numbered breadth first so the children of a node are contiguous and sorted by char
+     */
+    static final class Trie {
+        final char[] chars; // Char of the edge into each node
+        final int[] firstChild;
+        final int[] childCount;
+        final String[] replacement;
+        final int maxDepth;
+
+        Trie(Map<String, String> replacements) {
+            String[] keys = replacements.keySet().toArray(new String[0]);
+            int maxDepth0 = 0;
+            for (String key : keys) maxDepth0 = Math.max(maxDepth0, key.length());
+            maxDepth = maxDepth0;
+            // Keys are sorted one char at a time as their nodes are built, sorting primitives is far cheaper than comparing whole strings
+            int[] order = new int[keys.length];
+            for (int i = 0; i < order.length; i++) order[i] = i;
+            long[] sortBuffer = new long[keys.length];
+            Builder b = new Builder();
+            b.add('\0', 0, keys.length, 0);
+            for (int node = 0; node < b.count; node++) {
+                int lo = b.lo[node];
+                int hi = b.hi[node];
+                int depth = b.depth[node];
+                int n = 0;
+                for (int i = lo; i < hi; i++) {
+                    String key = keys[order[i]];
+                    if (key.length() == depth) {
+                        b.replacement[node] = replacements.get(key);
+                    } else {
+                        sortBuffer[n++] = ((long) key.charAt(depth) << 32) | order[i];
+                    }
+                }
+                Arrays.sort(sortBuffer, 0, n);
+                int start = hi - n;
+                for (int i = 0; i < n; i++) order[start + i] = (int) sortBuffer[i];
+                b.firstChild[node] = b.count;
+                lo = start;
+                while (lo < hi) {
+                    char c = keys[order[lo]].charAt(depth);
+                    int end = lo + 1;
+                    while (end < hi && keys[order[end]].charAt(depth) == c) end++;
+                    b.add(c, lo, end, depth + 1);
+                    lo = end;
+                }
+                b.childCount[node] = b.count - b.firstChild[node];
             }
-            current[0].isWord = true;
-            current[0].replacement = value;
-            if (chars.length > maxDepth) maxDepth = chars.length;
+            chars = Arrays.copyOf(b.chars, b.count);
+            firstChild = Arrays.copyOf(b.firstChild, b.count);
+            childCount = Arrays.copyOf(b.childCount, b.count);
+            replacement = Arrays.copyOf(b.replacement, b.count);
+        }
+
+        int child(int node, char c) {
+            int lo = firstChild[node];
+            int hi = lo + childCount[node] - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                char m = chars[mid];
+                if (m < c) {
+                    lo = mid + 1;
+                } else if (m > c) {
+                    hi = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -1;
         }
 
         void doReplacement(ReplacerCharIn in, Appendable out) throws IOException {
-            ReaderBuffer in2 = new ReaderBuffer(in, maxDepth);
+            // A failed match reads one char past the longest key
+            Lookahead in2 = new Lookahead(in, maxDepth + 1);
             while (true) {
-                in2.mark();
-                TrieNode current = root;
+                if (in2.size == 0) {
+                    // Most chars don't start a key, copy those straight through
+                    int c = in.read();
+                    if (c == -1) return;
+                    if (c < 0) continue; // Chars CommentStringSkipper already wrote
+                    if (child(0, (char) c) < 0) {
+                        out.append((char) c);
+                        continue;
+                    }
+                    in2.push(c);
+                }
+                int current = 0;
                 int depth = 0;
+                int match = -1;
+                int matchDepth = 0;
                 int read;
                 boolean readChars = false;
-                while ((read = in2.read()) != -1) {
+                while ((read = in2.peek(depth)) != -1) {
                     readChars = true;
-                    char c = (char) read;
-                    TrieNode node = current.children.get((Character) c);
-                    if (node == null) {
+                    int node = child(current, (char) read);
+                    if (node < 0) {
                         break;
                     }
                     current = node;
                     depth++;
+                    if (replacement[node] != null) {
+                        match = node;
+                        matchDepth = depth;
+                    }
                 }
                 if (!readChars) return;
-                
-                while (current != null && !current.isWord) {
-                    current = current.parent;
-                    depth--;
-                }
-                in2.reset();
-                if (current == null) {
+
+                if (match < 0) {
                     int o = in2.pop();
                     if (o >= 0) {
                         out.append((char)o);
                     }
                 } else {
-                    in2.clear(depth);
-                    out.append(current.replacement);
+                    in2.skip(matchDepth);
+                    out.append(replacement[match]);
                 }
             }
         }
     }
 
-    static class TrieNode {
-        TrieNode parent = null;
-        int depth = 0;
-        HashMap<Character, TrieNode> children = new HashMap<>();
-        String replacement = null;
-        boolean isWord = false;
+    static final class Builder {
+        char[] chars = new char[16];
+        int[] firstChild = new int[16];
+        int[] childCount = new int[16];
+        String[] replacement = new String[16];
+        // Range of sorted keys under each node, only needed while building
+        int[] lo = new int[16];
+        int[] hi = new int[16];
+        int[] depth = new int[16];
+        int count = 0;
+
+        void add(char c, int lo0, int hi0, int depth0) {
+            if (count == chars.length) {
+                int size = count * 2;
+                chars = Arrays.copyOf(chars, size);
+                firstChild = Arrays.copyOf(firstChild, size);
+                childCount = Arrays.copyOf(childCount, size);
+                replacement = Arrays.copyOf(replacement, size);
+                lo = Arrays.copyOf(lo, size);
+                hi = Arrays.copyOf(hi, size);
+                depth = Arrays.copyOf(depth, size);
+            }
+            chars[count] = c;
+            lo[count] = lo0;
+            hi[count] = hi0;
+            depth[count] = depth0;
+            count++;
+        }
     }
 }
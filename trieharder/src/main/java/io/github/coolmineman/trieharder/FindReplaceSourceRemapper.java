@@ -1,19 +1,29 @@
 package io.github.coolmineman.trieharder;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.Writer;
-import java.nio.file.FileSystem;
-import java.nio.file.FileVisitResult;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.SimpleFileVisitor;
-import java.nio.file.attribute.BasicFileAttributes;
-import java.util.HashMap;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
 
 import net.fabricmc.mappingio.tree.MappingTree;
 import net.fabricmc.mappingio.tree.MappingTree.ClassMapping;
@@ -66,33 +76,105 @@ public final class FindReplaceSourceRemapper {
     }
 
     public void remapSourcesJar(Path in, Path out) {
+        remapSourcesJar(in, out, ForkJoinPool.commonPool());
+    }
+
+    public void remapSourcesJar(Path in, Path out, Executor executor) {
         try {
             try (
-                FileSystem infs = Util.newJarFileSystem(in);
-                FileSystem outfs = Util.newJarFileSystem(out);
+                InputStream is = Files.newInputStream(in);
+                OutputStream os = Files.newOutputStream(out);
             ) {
-                Files.walkFileTree(infs.getPath("/"), new SimpleFileVisitor<Path>() {
-                    @Override
-                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-                        if (file.toString().endsWith(".java")) {
-                            Path target = outfs.getPath(file.toString());
-                            Files.createDirectories(target.getParent());
-                            try (
-                                BufferedReader in = Files.newBufferedReader(file);
-                                BufferedWriter out = Files.newBufferedWriter(target);
-                            ) {
-                                remap(in, out);
-                            }
-                        }
-                        return FileVisitResult.CONTINUE;
-                    }
-                });
+                remapSourcesJar(is, os, executor);
+            }
+        } catch (Exception e) {
+            throw Util.sneak(e);
+        }
+    }
+
+    public void remapSourcesJar(InputStream in, OutputStream out) {
+        remapSourcesJar(in, out, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Remaps the .java files of a sources jar, other entries are dropped
+     * Files are remapped on the executor and written in the order they were read
+     */
+    public void remapSourcesJar(InputStream in, OutputStream out, Executor executor) {
+        ArrayDeque<RemappedEntry> pending = new ArrayDeque<>();
+        try {
+            ZipInputStream zipIn = new ZipInputStream(new BufferedInputStream(in));
+            ZipOutputStream zipOut = new ZipOutputStream(new BufferedOutputStream(out));
+            ZipEntry entry;
+            while ((entry = zipIn.getNextEntry()) != null) {
+                if (entry.isDirectory() || !entry.getName().endsWith(".java")) continue;
+                byte[] bytes = readFully(zipIn);
+                pending.add(new RemappedEntry(entry, CompletableFuture.supplyAsync(() -> remapBytes(bytes), executor)));
+                // Bound memory use on big jars
+                if (pending.size() >= MAX_IN_FLIGHT) pending.poll().write(zipOut);
             }
+            while (!pending.isEmpty()) pending.poll().write(zipOut);
+            zipOut.finish();
+            zipOut.flush();
         } catch (Exception e) {
+            for (RemappedEntry p : pending) p.remapped.cancel(false);
+            throw Util.sneak(e);
+        }
+    }
+
+    static final int MAX_IN_FLIGHT = 256;
+    static final ThreadLocal<ByteArrayOutputStream> buffers = ThreadLocal.withInitial(ByteArrayOutputStream::new);
+
+    byte[] remapBytes(byte[] in) {
+        try {
+            ByteArrayOutputStream buffer = buffers.get();
+            buffer.reset();
+            try (Writer w = new OutputStreamWriter(buffer, StandardCharsets.UTF_8)) {
+                remap(new InputStreamReader(new ByteArrayInputStream(in), StandardCharsets.UTF_8), w);
+            }
+            return buffer.toByteArray();
+        } catch (IOException e) {
             throw Util.sneak(e);
         }
     }
 
+    static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream r = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            r.write(buffer, 0, read);
+        }
+        return r.toByteArray();
+    }
+
+    static final class RemappedEntry {
+        final ZipEntry source;
+        final CompletableFuture<byte[]> remapped;
+
+        RemappedEntry(ZipEntry source, CompletableFuture<byte[]> remapped) {
+            this.source = source;
+            this.remapped = remapped;
+        }
+
+        void write(ZipOutputStream out) throws IOException {
+            byte[] bytes;
+            try {
+                bytes = remapped.get();
+            } catch (ExecutionException e) {
+                throw Util.sneak(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw Util.sneak(e);
+            }
+            ZipEntry entry = new ZipEntry(source.getName());
+            if (source.getTime() != -1) entry.setTime(source.getTime());
+            out.putNextEntry(entry);
+            out.write(bytes);
+            out.closeEntry();
+        }
+    }
+
     public String remapString(String in) {
         StringWriter stringWriter = new StringWriter();
         StringReader stringReader = new StringReader(in);
@@ -5,6 +5,10 @@ import java.io.Reader;
 
 public class ReaderCharIn implements ReplacerCharIn {
     Reader reader;
+    // Reading a char at a time takes a lock per char in most readers
+    final char[] buffer = new char[8192];
+    int pos = 0;
+    int limit = 0;
 
     public ReaderCharIn(Reader reader) {
         this.reader = reader;
@@ -12,8 +16,16 @@ public class ReaderCharIn implements ReplacerCharIn {
 
     @Override
     public int read() {
+        if (pos < limit) return buffer[pos++];
         try {
-            return reader.read();
+            int read;
+            do {
+                read = reader.read(buffer, 0, buffer.length);
+            } while (read == 0);
+            if (read < 0) return -1;
+            pos = 1;
+            limit = read;
+            return buffer[0];
         } catch (IOException e) {
             throw Util.sneak(e);
         }
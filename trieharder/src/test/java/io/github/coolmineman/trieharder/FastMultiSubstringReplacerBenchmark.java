@@ -0,0 +1,89 @@
+package io.github.coolmineman.trieharder;
+
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Run with the main method from the test classpath
+ * Remaps the test resources with a replacement count around the size of intermediary
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class FastMultiSubstringReplacerBenchmark {
+    static final String[] RESOURCES = {"/PlantInAJar1_16_Intermediary.java", "/ModNioResourcePack.java", "/Bruh.java"};
+    static final Pattern INTERMEDIARY = Pattern.compile("(class|method|field)_\\d+");
+
+    String source;
+    FastMultiSubstringReplacer replacer;
+    LegacyFastMultiSubstringReplacer legacy;
+
+    @Setup
+    public void setup() throws Exception {
+        StringBuilder b = new StringBuilder();
+        for (String resource : RESOURCES) {
+            try (Reader r = new InputStreamReader(FastMultiSubstringReplacerBenchmark.class.getResourceAsStream(resource), StandardCharsets.UTF_8)) {
+                char[] buffer = new char[4096];
+                int read;
+                while ((read = r.read(buffer)) != -1) b.append(buffer, 0, read);
+            }
+        }
+        source = b.toString();
+        HashMap<String, String> replacements = new HashMap<>();
+        for (int i = 0; i < 20000; i++) {
+            replacements.put("net.minecraft.class_" + i, "net.minecraft.named.Named" + i);
+            replacements.put("class_" + i, "Named" + i);
+            replacements.put("method_" + i, "namedMethod" + i);
+            replacements.put("field_" + i, "namedField" + i);
+        }
+        Matcher m = INTERMEDIARY.matcher(source);
+        while (m.find()) replacements.put(m.group(), "named_" + m.group());
+        replacer = new FastMultiSubstringReplacer(replacements);
+        legacy = new LegacyFastMultiSubstringReplacer(replacements);
+        // The legacy trie overflows its buffer when the longest key is followed by another char
+        legacy.addReplacement("zzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzz", "z");
+        // Compile the array trie outside of the measurement
+        arrayTrie();
+    }
+
+    @Benchmark
+    public String arrayTrie() {
+        StringBuilder out = new StringBuilder(source.length());
+        replacer.replace(new CommentStringSkipper(new UnicodeEscapeYeeterCharIn(new ReaderCharIn(new StringReader(source))), out, false), out);
+        return out.toString();
+    }
+
+    @Benchmark
+    public String legacyTrie() {
+        StringBuilder out = new StringBuilder(source.length());
+        legacy.replace(new CommentStringSkipper(new UnicodeEscapeYeeterCharIn(new ReaderCharIn(new StringReader(source))), out, false), out);
+        return out.toString();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(FastMultiSubstringReplacerBenchmark.class.getSimpleName()).build()).run();
+    }
+}
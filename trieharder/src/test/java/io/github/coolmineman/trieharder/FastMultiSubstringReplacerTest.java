@@ -0,0 +1,66 @@
+package io.github.coolmineman.trieharder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class FastMultiSubstringReplacerTest {
+    @Test
+    void longestMatch() {
+        HashMap<String, String> replacements = new HashMap<>();
+        replacements.put("class_1", "A");
+        replacements.put("class_12", "B");
+        replacements.put("class_123", "C");
+        replacements.put("method_1", "d");
+        FastMultiSubstringReplacer replacer = new FastMultiSubstringReplacer(replacements);
+        assertEquals("A B C A3 class_ d() C4", replace(replacer, "class_1 class_12 class_123 class_13 class_ method_1() class_1234"));
+    }
+
+    @Test
+    void matchesLegacy() {
+        Random random = new Random(1234);
+        String alphabet = "ab_1\"/* \n\\'";
+        for (int run = 0; run < 200; run++) {
+            HashMap<String, String> replacements = new HashMap<>();
+            int keys = 1 + random.nextInt(20);
+            for (int i = 0; i < keys; i++) {
+                replacements.put(randomString(random, "ab_1", 1 + random.nextInt(5)), "<" + i + ">");
+            }
+            // The legacy trie overflows its buffer when the longest key is followed by another char
+            replacements.put("zzzzzzzzzz", "z");
+            FastMultiSubstringReplacer replacer = new FastMultiSubstringReplacer(replacements);
+            LegacyFastMultiSubstringReplacer legacy = new LegacyFastMultiSubstringReplacer(replacements);
+            for (int i = 0; i < 20; i++) {
+                String input = randomString(random, alphabet, random.nextInt(60));
+                StringBuilder a = new StringBuilder();
+                StringBuilder b = new StringBuilder();
+                replacer.replace(new CommentStringSkipper(new ReaderCharIn(new StringReader(input)), a, false), a);
+                legacy.replace(new CommentStringSkipper(new ReaderCharIn(new StringReader(input)), b, false), b);
+                assertEquals(b.toString(), a.toString(), input);
+                assertEquals(replace(legacy, input), replace(replacer, input), input);
+            }
+        }
+    }
+
+    static String replace(FastMultiSubstringReplacer replacer, String in) {
+        StringBuilder out = new StringBuilder();
+        replacer.replace(new StringReader(in), out);
+        return out.toString();
+    }
+
+    static String replace(LegacyFastMultiSubstringReplacer replacer, String in) {
+        StringBuilder out = new StringBuilder();
+        replacer.replace(new StringReader(in), out);
+        return out.toString();
+    }
+
+    static String randomString(Random random, String alphabet, int length) {
+        StringBuilder r = new StringBuilder();
+        for (int i = 0; i < length; i++) r.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        return r.toString();
+    }
+}
@@ -3,13 +3,19 @@ package io.github.coolmineman.trieharder;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.StringWriter;
 import java.nio.charset.StandardCharsets;
 import java.util.Base64;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
 
 import org.junit.jupiter.api.Test;
 
@@ -88,4 +94,34 @@ class RemapTest {
         System.out.println(bruh);
         assertFalse(bruh.contains("method_"));
     }
+
+    @Test
+    void sourcesJar() throws IOException {
+        String[] files = {"PlantInAJar1_16_Intermediary.java", "Bruh.java", "ModNioResourcePack.java"};
+        ByteArrayOutputStream jar = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(jar)) {
+            out.putNextEntry(new ZipEntry("META-INF/MANIFEST.MF"));
+            out.closeEntry();
+            for (int i = 0; i < 100; i++) {
+                for (String file : files) {
+                    out.putNextEntry(new ZipEntry(i + "/" + file));
+                    out.write(FindReplaceSourceRemapper.readFully(RemapTest.class.getResourceAsStream("/" + file)));
+                    out.closeEntry();
+                }
+            }
+        }
+        ByteArrayOutputStream remappedJar = new ByteArrayOutputStream();
+        remapper.remapSourcesJar(new ByteArrayInputStream(jar.toByteArray()), remappedJar);
+        try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(remappedJar.toByteArray()))) {
+            for (int i = 0; i < 100; i++) {
+                for (String file : files) {
+                    ZipEntry entry = in.getNextEntry();
+                    assertEquals(i + "/" + file, entry.getName());
+                    String expected = remapper.remapString(new String(FindReplaceSourceRemapper.readFully(RemapTest.class.getResourceAsStream("/" + file)), StandardCharsets.UTF_8));
+                    assertEquals(expected, new String(FindReplaceSourceRemapper.readFully(in), StandardCharsets.UTF_8));
+                }
+            }
+            assertNull(in.getNextEntry());
+        }
+    }
 }